@@ -0,0 +1,250 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * purpose This program measures the speed of each phase of the assembler,
+ *         so that changes made for performance can be checked against a
+ *         baseline.  It measures:
+ *             FirstPassParser.parseFile
+ *             SecondPassParser.parseFile
+ *             the parse method of each InstructionParser parser
+ *             intStringToHexString and shortStringToHexString
+ *             Assembler.assemble, from file to file
+ *         on small, medium and huge programs.
+ *
+ * Procedure
+ *          Each benchmark is run for a number of warmup iterations, which
+ *          are not counted, and then for a number of measured iterations.
+ *          Each iteration calls the benchmark as many times as it can in
+ *          the iteration time.  The results are the average time per call,
+ *          with the error of the mean over the iterations, and the bytes
+ *          allocated per call, the allocation rate, and the number and time
+ *          of garbage collections, from the management beans.  The result
+ *          of each call is kept in sink so the JIT cannot remove the call.
+ *
+ *         Usage: java AssemblerBenchmark [-wi n] [-i n] [-t ms] [filter]
+ *         Only benchmarks whose names contain filter are run.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Programs are built by the ProgramGenerator
+ */
+public class AssemblerBenchmark {
+
+	static final int SMALL = 100;
+	static final int MEDIUM = 10000;
+	static final int HUGE = 1000000;
+
+	// results are kept here so the JIT cannot remove the work
+	static volatile Object sink;
+
+	/**
+	 * A benchmark is one operation, called over and over.
+	 */
+	static abstract class Benchmark {
+		final String name;
+
+		Benchmark(String name) {
+			this.name = name;
+		}
+
+		abstract Object run() throws Exception;
+	}
+
+	/**
+	 * A PrintStream that throws its output away.
+	 */
+	static PrintStream nullStream() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+
+	/**
+	 * Builds a program with the given number of lines, with the
+	 * ProgramGenerator's default settings.
+	 */
+	static String program(int lines) throws IOException {
+		ProgramGenerator g = new ProgramGenerator();
+		g.lines = lines;
+		StringWriter out = new StringWriter();
+		g.write(out);
+		return out.toString();
+	}
+
+	static ArrayList<Benchmark> benchmarks() throws Exception {
+		ArrayList<Benchmark> list = new ArrayList<Benchmark>();
+		String[] names = {"small", "medium", "huge"};
+		int[] sizes = {SMALL, MEDIUM, HUGE};
+
+		for (int i = 0; i < sizes.length; i++) {
+			final String source = program(sizes[i]);
+			final HashMap<String, Label> st = FirstPassParser.parseFile(new BufferedReader(new StringReader(source)));
+
+			list.add(new Benchmark("FirstPassParser.parseFile/" + names[i]) {
+				Object run() throws Exception {
+					return FirstPassParser.parseFile(new BufferedReader(new StringReader(source)));
+				}
+			});
+			list.add(new Benchmark("SecondPassParser.parseFile/" + names[i]) {
+				Object run() throws Exception {
+					SecondPassParser.parseFile(st, new BufferedReader(new StringReader(source)),
+							nullStream(), nullStream());
+					return st;
+				}
+			});
+
+			File input = File.createTempFile("bench", ".asm");
+			input.deleteOnExit();
+			PrintStream ps = new PrintStream(input);
+			ps.print(source);
+			ps.close();
+			final String inputName = input.getPath();
+			final String outputName = inputName.substring(0, inputName.length() - 4);
+			new File(outputName + ".mc").deleteOnExit();
+			new File(outputName + ".dat").deleteOnExit();
+			list.add(new Benchmark("Assembler.assemble/" + names[i]) {
+				Object run() throws Exception {
+					Assembler.assemble(inputName, outputName);
+					return inputName;
+				}
+			});
+		}
+
+		// each encode path, with a label operand for the memory instructions
+		final HashMap<String, Label> st = new HashMap<String, Label>();
+		st.put("x", new Label("x", 12, 'd'));
+		String[][] encodes = {{"add", "x"}, {"addi", "-5"}, {"sub", "x"}, {"subi", "7"},
+			{"mul", "x"}, {"muli", "3"}, {"div", "x"}, {"divi", "3"}, {"rem", "x"}, {"remi", "8"},
+			{"and", "x"}, {"andi", "15"}, {"shift", "x"}, {"clac", ""}, {"stor", "x"},
+			{"beqz", "x"}, {"br", "12"}};
+		for (final String[] e : encodes) {
+			final InstructionParser.Parser p = InstructionParser.getParser(e[0]);
+			list.add(new Benchmark("InstructionParser." + e[0]) {
+				Object run() throws Exception {
+					return p.parse(e[1], st, 1);
+				}
+			});
+		}
+
+		list.add(new Benchmark("InstructionParser.intStringToHexString") {
+			Object run() throws Exception {
+				return InstructionParser.intStringToHexString("-1234", 1);
+			}
+		});
+		list.add(new Benchmark("InstructionParser.shortStringToHexString") {
+			Object run() throws Exception {
+				return InstructionParser.shortStringToHexString("-12", 1);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Runs one benchmark, and prints the results.
+	 */
+	static void measure(Benchmark b, int warmups, int iterations, long iterationMillis) throws Exception {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		for (int i = 0; i < warmups; i++)
+			iteration(b, iterationMillis);
+
+		double[] nsPerCall = new double[iterations];
+		long calls = 0;
+		long nanos = 0;
+		long gcStart = gcCount();
+		long gcTimeStart = gcTime();
+		long allocStart = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			long n = iteration(b, iterationMillis);
+			long t = System.nanoTime() - start;
+			nsPerCall[i] = (double) t / n;
+			calls += n;
+			nanos += t;
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - allocStart;
+
+		double mean = 0;
+		for (double v : nsPerCall)
+			mean += v;
+		mean = mean / iterations;
+		double variance = 0;
+		for (double v : nsPerCall)
+			variance += (v - mean) * (v - mean);
+		double error = (iterations > 1) ? Math.sqrt(variance / (iterations - 1) / iterations) : 0;
+
+		System.out.printf("%-45s %14.1f +- %10.1f ns/op %14.1f B/op %10.1f MB/s  gc: %d (%d ms)%n",
+				b.name, mean, error, (double) allocated / calls,
+				allocated / 1048576.0 / (nanos / 1e9), gcCount() - gcStart, gcTime() - gcTimeStart);
+	}
+
+	/**
+	 * Calls the benchmark for iterationMillis, and returns the number of calls.
+	 */
+	static long iteration(Benchmark b, long iterationMillis) throws Exception {
+		long end = System.nanoTime() + iterationMillis * 1000000;
+		long n = 0;
+		do {
+			sink = b.run();
+			n = n + 1;
+		} while (System.nanoTime() < end);
+		return n;
+	}
+
+	static long gcCount() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(gc.getCollectionCount(), 0);
+		return n;
+	}
+
+	static long gcTime() {
+		long t = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			t += Math.max(gc.getCollectionTime(), 0);
+		return t;
+	}
+
+	public static void main(String[] args) {
+		int warmups = 3;
+		int iterations = 5;
+		long iterationMillis = 1000;
+		String filter = "";
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-wi"))
+				warmups = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-i"))
+				iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-t"))
+				iterationMillis = Long.parseLong(args[++i]);
+			else
+				filter = args[i];
+		}
+
+		try {
+			System.out.println("Benchmark: " + warmups + " warmup and " + iterations
+					+ " measured iterations of " + iterationMillis + " ms");
+			for (Benchmark b : benchmarks())
+				if (b.name.contains(filter))
+					measure(b, warmups, iterations, iterationMillis);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
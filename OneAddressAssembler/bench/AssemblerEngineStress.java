@@ -0,0 +1,225 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * purpose This program checks that one AssemblerEngine can serve many
+ *         threads at once: every assembly gives the same result as when
+ *         it is run alone, and the number of assemblies each second grows
+ *         with the number of threads, up to the number of processors.
+ *
+ * Procedure
+ *          1 - A corpus of programs is made with the ProgramGenerator, one
+ *              seed for each program.  Every fourth program has a bad line
+ *              added at the end, so the error path is run too.
+ *          2 - Each program is assembled once on one thread, to get the
+ *              expected images or error message.  The first program is
+ *              also assembled with the Assembler, from file to file, and
+ *              must give the same images as the engine.  A macro that
+ *              uses itself twice must give an error, and not hang.
+ *          3 - For 1, 2, 4, ... threads, all of the threads share one
+ *              engine and assemble the programs of the corpus, each
+ *              starting at a different program, for a fixed time.  Each
+ *              result is compared with the expected one.  A run on one
+ *              thread first, and a short run at each thread count, warm
+ *              up the JIT and are not counted.
+ *          4 - The throughput and speedup over one thread are printed.  The
+ *              speedup can only grow up to the number of processors, so it
+ *              is checked against efficiency * min(threads, processors).
+ *              The exit status is 1 if any result differs, or the speedup
+ *              is too low.
+ *
+ *         Usage: java AssemblerEngineStress [-threads max] [-seconds s]
+ *                [-programs n] [-lines n] [-efficiency e]
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Checks a doubly recursive macro
+ */
+public class AssemblerEngineStress {
+
+	/**
+	 * A program of the corpus, with the result of assembling it alone.
+	 */
+	static class Case {
+		final String source;
+		final String expected;   // the images, or the error message
+
+		Case(String source, String expected) {
+			this.source = source;
+			this.expected = expected;
+		}
+	}
+
+	/**
+	 * Returns the images of a result, or the error message, as one string
+	 * that can be compared.
+	 */
+	static String outcome(AssemblerEngine engine, String source) {
+		try {
+			AssemblerEngine.Result r = engine.assemble(source);
+			return r.getMachineCode() + "\n" + r.getData() + "\n" + r.getSymbols().size();
+		} catch (AssemblerException ae) {
+			return "error: " + ae.getMessage();
+		}
+	}
+
+	static ArrayList<Case> corpus(AssemblerEngine engine, int programs, long lines) throws IOException {
+		ArrayList<Case> cases = new ArrayList<Case>();
+		for (int i = 0; i < programs; i++) {
+			ProgramGenerator g = new ProgramGenerator();
+			g.lines = lines;
+			g.seed = i + 1;
+			StringWriter out = new StringWriter();
+			g.write(out);
+			String source = out.toString();
+			if (i % 4 == 3)
+				source = source + "bogus " + i + "\n";
+			cases.add(new Case(source, outcome(engine, source)));
+		}
+		return cases;
+	}
+
+	/**
+	 * Assembles the first program with the Assembler, and checks the
+	 * engine gives the same images.
+	 */
+	static boolean sameAsAssembler(AssemblerEngine engine, String source) throws Exception {
+		File dir = Files.createTempDirectory("stress").toFile();
+		File asm = new File(dir, "p.asm");
+		Files.write(asm.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		String out = new File(dir, "p").getPath();
+		Assembler.assemble(asm.getPath(), out);
+		File mc = new File(out + ".mc");
+		File dat = new File(out + ".dat");
+		AssemblerEngine.Result r = engine.assemble(source);
+		boolean same = r.getMachineCode().equals(new String(Files.readAllBytes(mc.toPath()), StandardCharsets.UTF_8))
+				&& r.getData().equals(new String(Files.readAllBytes(dat.toPath()), StandardCharsets.UTF_8));
+		mc.delete();
+		dat.delete();
+		asm.delete();
+		dir.delete();
+		return same;
+	}
+
+	/**
+	 * Checks that a macro that uses itself twice is an error.  Each
+	 * level doubles the expansion, so it must stop at the first
+	 * "nested too deeply" error to finish at all.
+	 */
+	static boolean recursiveMacroFails(AssemblerEngine engine) {
+		String source = ".macro r\nr\nr\n.endm\n.text\nr\n";
+		return outcome(engine, source).startsWith("error: Macro r nested too deeply");
+	}
+
+	/**
+	 * Runs threads on one engine for a time, and returns the number of
+	 * assemblies done.  Results that differ are counted in mismatches.
+	 */
+	static long run(final AssemblerEngine engine, final ArrayList<Case> cases, int threads,
+			long millis, final AtomicLong mismatches) throws InterruptedException {
+		final AtomicLong done = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		ArrayList<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			Thread w = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ie) {
+					return;
+				}
+				long n = 0;
+				int i = first;
+				while (System.nanoTime() < end[0]) {
+					Case c = cases.get(i % cases.size());
+					if (!outcome(engine, c.source).equals(c.expected))
+						mismatches.incrementAndGet();
+					n = n + 1;
+					i = i + 1;
+				}
+				done.addAndGet(n);
+			});
+			workers.add(w);
+			w.start();
+		}
+		end[0] = System.nanoTime() + millis * 1000000L;
+		start.countDown();
+		for (Thread w : workers)
+			w.join();
+		return done.get();
+	}
+
+	public static void main(String[] args) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int maxThreads = Math.max(4, 2 * processors);
+		double seconds = 2;
+		int programs = 32;
+		long lines = 2000;
+		double efficiency = 0.6;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length)
+				maxThreads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seconds") && i + 1 < args.length)
+				seconds = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-programs") && i + 1 < args.length)
+				programs = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-lines") && i + 1 < args.length)
+				lines = Long.parseLong(args[++i]);
+			else if (args[i].equals("-efficiency") && i + 1 < args.length)
+				efficiency = Double.parseDouble(args[++i]);
+			else {
+				System.out.println("Usage: java AssemblerEngineStress [-threads max] [-seconds s] "
+						+ "[-programs n] [-lines n] [-efficiency e]");
+				return;
+			}
+		}
+
+		try {
+			AssemblerEngine engine = new AssemblerEngine();
+			ArrayList<Case> cases = corpus(engine, programs, lines);
+			boolean ok = sameAsAssembler(engine, cases.get(0).source);
+			if (!ok)
+				System.out.println("FAIL: the engine and the Assembler give different images");
+			if (!recursiveMacroFails(engine)) {
+				System.out.println("FAIL: a recursive macro did not give an error");
+				ok = false;
+			}
+
+			System.out.printf("%d programs of %d lines, %d processors, %.1f s for each run%n",
+					programs, lines, processors, seconds);
+			System.out.printf("%8s %14s %10s %10s %12s%n", "threads", "assemblies/s", "speedup", "needed", "mismatches");
+			long millis = (long) (seconds * 1000);
+			AtomicLong mismatches = new AtomicLong();
+			run(engine, cases, 1, 2 * millis, mismatches);   // compile the assembler before timing it
+			ok &= mismatches.get() == 0;
+			double single = 0;
+			for (int threads = 1; threads <= maxThreads; threads = threads * 2) {
+				mismatches = new AtomicLong();
+				run(engine, cases, threads, millis / 2, mismatches);   // warm up
+				long done = run(engine, cases, threads, millis, mismatches);
+				double rate = done / seconds;
+				if (threads == 1)
+					single = rate;
+				double speedup = rate / single;
+				double needed = efficiency * Math.min(threads, processors);
+				boolean pass = mismatches.get() == 0 && speedup >= needed;
+				System.out.printf("%8d %14.1f %10.2f %10.2f %12d%s%n", threads, rate, speedup, needed,
+						mismatches.get(), pass ? "" : "  FAIL");
+				ok &= pass;
+			}
+			System.out.println(ok ? "PASS" : "FAIL");
+			if (!ok)
+				System.exit(1);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
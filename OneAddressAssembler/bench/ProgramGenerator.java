@@ -0,0 +1,184 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * purpose This program writes random, valid assembly programs of any size,
+ *         for testing how the assembler scales.  The same seed and
+ *         settings always give the same program.
+ *
+ *         The settings are:
+ *             lines            number of lines in the program
+ *             labelDensity     fraction of text lines that are labels
+ *             dataRatio        .data lines for each .text line
+ *             forwardRatio     fraction of label operands that refer to a
+ *                              label defined later in the file
+ *             commentRatio     fraction of lines that are comments
+ *         Instructions are picked evenly from every mnemonic in the
+ *         InstructionParser table.
+ *
+ * Procedure
+ *          Operands are 8 bits, so only labels at addresses below 128 can
+ *          be used as operands.  Labels after that are still written, so
+ *          the symbol table grows with the program, but they are not used.
+ *          The data segment is written in two parts.  The first part comes
+ *          before the .text segment, and has the labels used by backward
+ *          references.  The second part comes after the .text segment, and
+ *          starts with the labels used by forward references.  Branches in
+ *          the first 128 instructions may also refer forward to text labels.
+ *          The program is written as it is generated, so it can be larger
+ *          than memory.
+ *
+ *         Usage: java ProgramGenerator output.asm lines [seed]
+ *                [-labels d] [-data r] [-forward r] [-comments r]
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class ProgramGenerator {
+
+	static final int MAX_OPERAND = 127;
+	static final int DATA_LABELS = 64;     // labels in each part of .data
+
+	long lines = 1000;
+	long seed = 1;
+	double labelDensity = 0.05;
+	double dataRatio = 0.25;
+	double forwardRatio = 0.25;
+	double commentRatio = 0.05;
+
+	private final String[] mnemonics;
+	private ArrayList<Integer> labelAddresses;
+
+	public ProgramGenerator() {
+		ArrayList<String> list = new ArrayList<String>(InstructionParser.parsers.keySet());
+		Collections.sort(list);   // keySet order is not fixed, and the seed must give the same program
+		mnemonics = list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * Writes the program.
+	 *
+	 * @param out the stream to write the program to
+	 * @throws IOException error writing the program
+	 */
+	public void write(Writer out) throws IOException {
+		Random r = new Random(seed);
+
+		// split the lines between the segments
+		long body = Math.max(lines - 2 * DATA_LABELS * 2 - 3, 1);
+		long dataLines = Math.round(body * dataRatio / (1 + dataRatio));
+		long textLines = body - dataLines;
+
+		// decide which text addresses below 128 have labels
+		labelAddresses = new ArrayList<Integer>();
+		for (int a = 0; a <= MAX_OPERAND; a++)
+			if (a == 0 || r.nextDouble() < labelDensity)
+				labelAddresses.add(a);
+
+		out.write("# generated by ProgramGenerator, seed " + seed + "\n");
+		out.write(".data\n");
+		for (int i = 0; i < DATA_LABELS; i++)
+			out.write(".label back" + i + "\n.number " + (r.nextInt(65536) - 32768) + "\n");
+
+		out.write(".text\n");
+		int address = 0;
+		int nextLabel = 0;       // index in labelAddresses of the next label to write
+		long unusedLabels = 0;
+		for (long line = 0; line < textLines; line++) {
+			double p = r.nextDouble();
+			if (p < commentRatio)
+				out.write("# comment " + line + "\n");
+			else if (nextLabel < labelAddresses.size() && labelAddresses.get(nextLabel) == address) {
+				out.write(".label t" + address + "\n");
+				nextLabel = nextLabel + 1;
+			}
+			else if (address > MAX_OPERAND && p < commentRatio + labelDensity)
+				out.write(".label x" + unusedLabels++ + "\n");   // never used as an operand
+			else {
+				out.write(instruction(r, address));
+				address = address + 1;
+			}
+		}
+		// labels not reached are put at the end of the text segment
+		for (int i = nextLabel; i < labelAddresses.size(); i++)
+			out.write(".label t" + labelAddresses.get(i) + "\n");
+
+		out.write(".data\n");
+		for (int i = 0; i < DATA_LABELS; i++)
+			out.write(".label fwd" + i + "\n.number " + (r.nextInt(65536) - 32768) + "\n");
+		for (long i = 0; i < dataLines; i++) {
+			if (r.nextDouble() < commentRatio)
+				out.write("# data " + i + "\n");
+			else
+				out.write(".number " + (r.nextInt(65536) - 32768) + "\n");
+		}
+	}
+
+	/**
+	 * Returns one random instruction for the given text address.
+	 */
+	private String instruction(Random r, int address) {
+		String op = mnemonics[r.nextInt(mnemonics.length)];
+		if (op.equals("clac"))
+			return "clac\n";
+		if (op.endsWith("i"))
+			return op + " " + (r.nextInt(256) - 128) + "\n";
+
+		boolean forward = r.nextDouble() < forwardRatio;
+		if (op.equals("br") || op.equals("beqz")) {
+			// text labels are t<address>, for the addresses marked with a label
+			return op + " " + textTarget(r, address, forward) + "\n";
+		}
+		if (forward)
+			return op + " fwd" + r.nextInt(DATA_LABELS) + "\n";
+		return op + " back" + r.nextInt(DATA_LABELS) + "\n";
+	}
+
+	/**
+	 * Picks a text label to branch to, one at an address after this one
+	 * for a forward branch, and one at or before it for a backward branch.
+	 * If there is no forward label, a backward label is used.
+	 */
+	private String textTarget(Random r, int address, boolean forward) {
+		int split = 0;
+		while (split < labelAddresses.size() && labelAddresses.get(split) <= address)
+			split = split + 1;
+		if (forward && split < labelAddresses.size())
+			return "t" + labelAddresses.get(split + r.nextInt(labelAddresses.size() - split));
+		return "t" + labelAddresses.get(r.nextInt(Math.max(split, 1)));
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: java ProgramGenerator output.asm lines [seed] "
+					+ "[-labels d] [-data r] [-forward r] [-comments r]");
+			return;
+		}
+		ProgramGenerator g = new ProgramGenerator();
+		g.lines = Long.parseLong(args[1]);
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-labels"))
+				g.labelDensity = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-data"))
+				g.dataRatio = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-forward"))
+				g.forwardRatio = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-comments"))
+				g.commentRatio = Double.parseDouble(args[++i]);
+			else
+				g.seed = Long.parseLong(args[i]);
+		}
+		try {
+			Writer out = new BufferedWriter(new FileWriter(args[0]), 1 << 16);
+			g.write(out);
+			out.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+
+/**
+ * purpose This program assembles generated programs of increasing size,
+ *         and shows how the time and the peak heap grow with the size, so
+ *         it can be seen whether the assembler stays linear and where it
+ *         stops working.
+ *
+ * Procedure
+ *          1 - For each size, from 1K lines by powers of 10 up to the
+ *              largest size asked for (100M by default), a program is
+ *              written with the ProgramGenerator into the corpus directory.
+ *              A program already in the directory is used again.
+ *          2 - Each program is assembled a number of times.  Before each
+ *              run the heap is collected and the peak usage of the heap
+ *              pools is reset, so the peak after the run is the most heap
+ *              the run used.  The best time and the largest peak are kept.
+ *          3 - The results are written to scaling.csv in the corpus
+ *              directory, and plotted as bar charts of the time per line
+ *              and the peak heap.  For a linear assembler the time per line
+ *              stays flat.  A size that fails, e.g. with an
+ *              OutOfMemoryError, is reported and the larger sizes are not run.
+ *
+ *         Usage: java ScalingDriver [corpus-dir] [-max lines] [-runs n] [-seed s]
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class ScalingDriver {
+
+	/**
+	 * The result for one size.
+	 */
+	static class Result {
+		final long lines;
+		final long bytes;
+		final double millis;
+		final long peakHeap;
+
+		Result(long lines, long bytes, double millis, long peakHeap) {
+			this.lines = lines;
+			this.bytes = bytes;
+			this.millis = millis;
+			this.peakHeap = peakHeap;
+		}
+
+		double nanosPerLine() {
+			return millis * 1e6 / lines;
+		}
+	}
+
+	/**
+	 * Writes the program for one size, unless it is already there.
+	 */
+	static File corpusFile(File dir, long lines, long seed) throws IOException {
+		File f = new File(dir, "gen-" + lines + "-" + seed + ".asm");
+		if (!f.exists()) {
+			ProgramGenerator g = new ProgramGenerator();
+			g.lines = lines;
+			g.seed = seed;
+			File tmp = new File(dir, f.getName() + ".tmp");
+			Writer out = new BufferedWriter(new FileWriter(tmp), 1 << 16);
+			try {
+				g.write(out);
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(f))
+				throw new IOException("Cannot rename " + tmp);
+		}
+		return f;
+	}
+
+	/**
+	 * Assembles a program, and returns the time in ms and the peak heap.
+	 */
+	static long[] run(File f) throws Exception {
+		ArrayList<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				heap.add(pool);
+
+		System.gc();
+		for (MemoryPoolMXBean pool : heap)
+			pool.resetPeakUsage();
+
+		String output = f.getPath().substring(0, f.getPath().length() - 4);
+		long start = System.nanoTime();
+		Assembler.assemble(f.getPath(), output);
+		long nanos = System.nanoTime() - start;
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : heap)
+			peak += pool.getPeakUsage().getUsed();
+		new File(output + ".mc").delete();
+		new File(output + ".dat").delete();
+		return new long[] {nanos, peak};
+	}
+
+	/**
+	 * Draws a bar chart, one bar for each size.
+	 */
+	static void chart(String title, ArrayList<Result> results, boolean heap) {
+		double max = 0;
+		for (Result r : results)
+			max = Math.max(max, heap ? r.peakHeap : r.nanosPerLine());
+		System.out.println();
+		System.out.println(title);
+		for (Result r : results) {
+			double v = heap ? r.peakHeap / 1048576.0 : r.nanosPerLine();
+			int width = (max == 0) ? 0 : (int) Math.round(50 * (heap ? r.peakHeap : r.nanosPerLine()) / max);
+			StringBuilder bar = new StringBuilder();
+			for (int i = 0; i < width; i++)
+				bar.append('#');
+			System.out.printf("%12d | %-50s %10.1f%n", r.lines, bar, v);
+		}
+	}
+
+	public static void main(String[] args) {
+		File dir = new File("corpus");
+		long max = 100000000L;
+		int runs = 3;
+		long seed = 1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-max"))
+				max = Long.parseLong(args[++i]);
+			else if (args[i].equals("-runs"))
+				runs = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else
+				dir = new File(args[i]);
+		}
+		dir.mkdirs();
+
+		ArrayList<Result> results = new ArrayList<Result>();
+		System.out.printf("%12s %14s %12s %12s %12s%n", "lines", "bytes", "ms", "ns/line", "peak MB");
+		for (long lines = 1000; lines <= max; lines = lines * 10) {
+			try {
+				File f = corpusFile(dir, lines, seed);
+				long best = Long.MAX_VALUE;
+				long peak = 0;
+				for (int i = 0; i < runs; i++) {
+					long[] r = run(f);
+					best = Math.min(best, r[0]);
+					peak = Math.max(peak, r[1]);
+				}
+				Result r = new Result(lines, f.length(), best / 1e6, peak);
+				results.add(r);
+				System.out.printf("%12d %14d %12.1f %12.1f %12.1f%n", r.lines, r.bytes, r.millis,
+						r.nanosPerLine(), r.peakHeap / 1048576.0);
+			} catch (Throwable t) {
+				System.out.println(lines + " lines failed: " + t);
+				break;
+			}
+		}
+
+		try {
+			PrintStream csv = new PrintStream(new File(dir, "scaling.csv"));
+			csv.println("lines,bytes,ms,ns_per_line,peak_heap_bytes");
+			for (Result r : results)
+				csv.println(r.lines + "," + r.bytes + "," + r.millis + "," + r.nanosPerLine() + "," + r.peakHeap);
+			csv.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+
+		chart("Time per line (ns)", results, false);
+		chart("Peak heap (MB)", results, true);
+	}
+}
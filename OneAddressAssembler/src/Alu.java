@@ -0,0 +1,87 @@
+
+/**
+ * purpose This class models the ALU1 subcircuit in OneAddress.circ, so that
+ *         tools can compute what an instruction does to the accumulator
+ *         without running Logisim.
+ *
+ *         The ALU operation is the low 4 bits of the op code (the ALUopt),
+ *         and is the same for the immediate (1x) and memory (2x) forms
+ *         of an instruction:
+ *
+ *             0000 = add    0011 = div    0110 = shift
+ *             0001 = sub    0100 = rem
+ *             0010 = mul    0101 = and
+ *
+ *         All values are 16 bit words, held in the low 16 bits of an int.
+ *         The circuit uses the Logisim Divider, which is unsigned and
+ *         divides by 1 when the divisor is 0, and the Logisim Shifter,
+ *         which shifts left by the low 4 bits of Y.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class Alu {
+
+	public static final int ADD = 0;
+	public static final int SUB = 1;
+	public static final int MUL = 2;
+	public static final int DIV = 3;
+	public static final int REM = 4;
+	public static final int AND = 5;
+	public static final int SHIFT = 6;
+
+	// mnemonic for the memory form of each ALU operation
+	static final String[] NAMES = {"add", "sub", "mul", "div", "rem", "and", "shift"};
+
+	private Alu() {
+	}
+
+	/**
+	 * Computes the ALU output for the operation aluOp.
+	 *
+	 * @param aluOp the ALU operation, the low 4 bits of the op code
+	 * @param ac the value of the accumulator
+	 * @param y the memory value or sign extended immediate value
+	 * @return the 16 bit result
+	 */
+	public static int compute(int aluOp, int ac, int y) {
+		ac = ac & 0xFFFF;
+		y = y & 0xFFFF;
+		switch (aluOp) {
+		case ADD:
+			return (ac + y) & 0xFFFF;
+		case SUB:
+			return (ac - y) & 0xFFFF;
+		case MUL:
+			return (ac * y) & 0xFFFF;
+		case DIV:
+			return (y == 0) ? ac : ac / y;
+		case REM:
+			return (y == 0) ? 0 : ac % y;
+		case AND:
+			return ac & y;
+		case SHIFT:
+			return (ac << (y & 0xF)) & 0xFFFF;
+		default:
+			return 0;   // unused ALU operations output 0
+		}
+	}
+
+	/**
+	 * Sign extends an 8 bit immediate value, as the SignExtend
+	 * subcircuit does.
+	 *
+	 * @param immediate the low 8 bits of the instruction
+	 * @return the 16 bit value
+	 */
+	public static int signExtend(int immediate) {
+		return ((byte) immediate) & 0xFFFF;
+	}
+
+	/**
+	 * Returns the signed value of a 16 bit word.
+	 */
+	public static int toSigned(int word) {
+		return (short) word;
+	}
+}
@@ -1,7 +1,8 @@
-import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.HashMap;
 
 /**
@@ -21,6 +22,9 @@ import java.util.HashMap;
  *              key being the symbol, and the data be a Label, a data
  *              structure containing the symbol, program address of the 
  *              symbol, and memory segment the symbol should be in.
+ *              Both passes read the file through a MacroExpander, so
+ *              macros and pseudo-instructions (load, inc, neg, bnez, blt)
+ *              are expanded before the parsers see them.
  *          2 - Using the symbol table, call the SecondPassParser to 
  *              create two files, the ".mc" (or machine code) file, which
  *              contains the machine code to include in the text segment,
@@ -35,6 +39,11 @@ import java.util.HashMap;
  *              
  * Program History:
  *     7/6/2016    - CWK - Initial release
+ *     10/18/2026  - Read the input through the MacroExpander
+ *     10/18/2026  - Added --metrics and Flight Recorder events
+ *     10/18/2026  - The pass2 event is only committed when the output was
+ *                   metered, and the input is closed on errors in pass 2
+ *     10/18/2026  - --metrics without a file name is a usage error
  */
 
 public class Assembler {
@@ -46,9 +55,42 @@ public class Assembler {
 		
 	}
 
+	/**
+	 * main - Assembles a file.
+	 *
+	 *        Usage: java Assembler [--metrics file.json] [input.asm [output]]
+	 *        If no input is given, TestAssembler.asm is assembled.  The output
+	 *        name defaults to the input name without .asm.  --metrics writes
+	 *        the counters and phase times for the run to file.json.
+	 */
 	public static void main(String[] args) {
+		String inputFileName = "TestAssembler.asm";
+		String outputFileName = null;
+		String metricsFileName = null;
+		int files = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--metrics")) {
+				if (i + 1 == args.length) {
+					System.err.println("--metrics needs a file name");
+					System.err.println("Usage: java Assembler [--metrics file.json] [input.asm [output]]");
+					return;
+				}
+				metricsFileName = args[++i];
+			}
+			else if (files++ == 0)
+				inputFileName = args[i];
+			else
+				outputFileName = args[i];
+		}
+		if (outputFileName == null)
+			outputFileName = inputFileName.endsWith(".asm") 
+				? inputFileName.substring(0, inputFileName.length() - 4) : inputFileName;
+
 		try {
-		    assemble("TestAssembler.asm", "TestAssembler");
+			AssemblerMetrics metrics = (metricsFileName == null) ? null : new AssemblerMetrics();
+		    assemble(inputFileName, outputFileName, metrics);
+		    if (metrics != null)
+		    	metrics.write(metricsFileName);
 		}  catch (AssemblerException ae) {
 			System.out.println(ae.getMessage());
 		} catch (IOException ioe){
@@ -71,17 +113,102 @@ public class Assembler {
 	 */
 	public static void assemble(String inputFileName, String outputFileName) 
 		throws AssemblerException, IOException {
+		assemble(inputFileName, outputFileName, null);
+	}
+
+	/**
+	 * assemble - This method parses the input file to produce the .mc and .dat
+	 *            files, and fills in metrics for the run.
+	 *
+	 * @param inputFileName The name of the assembly file to assemble
+	 * @param outputFileName The name of the .mc and .dat files.
+	 * @param metrics The counters and times to fill in, or null if metrics
+	 *                are not wanted.
+	 * @throws AssemblerException An exception thrown with an error 
+	 *                       encountered while parsing the assembly program.
+	 * @throws IOException   A exception occurs while processing the file, e.g.
+	 *                       file not found.
+	 */
+	public static void assemble(String inputFileName, String outputFileName,
+			AssemblerMetrics metrics) throws AssemblerException, IOException {
+		long start = System.nanoTime();
+		boolean metered = (metrics != null) || AssemblerPhaseEvent.isRecording();
+		if (metrics != null)
+			metrics.inputFile = inputFileName;
 
 	    // Open the file, and do a first pass to create the symbol table st.
-		BufferedReader br = new BufferedReader(new FileReader(inputFileName));
-		HashMap<String, Label> st = FirstPassParser.parseFile(br);
+		// The file is read through a MacroExpander, so both passes see
+		// the program with macros and pseudo-instructions expanded.
+		MacroExpander br = new MacroExpander(openInput(inputFileName, metrics));
+		HashMap<String, Label> st;
+		AssemblerPhaseEvent event = new AssemblerPhaseEvent("pass1", inputFileName);
+		event.begin();
+		try {
+			st = FirstPassParser.parseFile(br);
+		} finally {
+			br.close();
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.count = br.getSourceLines();
+			event.commit();
+		}
+		if (metrics != null) {
+			metrics.pass1Nanos = System.nanoTime() - start;
+			metrics.lines = br.getSourceLines();
+			metrics.labels = st.size();
+			st = new AssemblerMetrics.CountingSymbolTable(st, metrics);
+		}
 		
 		// reset the file to the start.  Call SecondPassParser with 
 		// file and symbol table to build assembler output files.
-		br = new BufferedReader(new FileReader(inputFileName));
-		PrintStream mc = new PrintStream(outputFileName + ".mc");
-		PrintStream dat = new PrintStream(outputFileName + ".dat");
-		SecondPassParser.parseFile(st, br, mc, dat);
+		long pass2Start = System.nanoTime();
+		PrintStream mc, dat;
+		AssemblerMetrics.MeteredOutputStream mcOut = null, datOut = null;
+		if (metered) {
+			mcOut = new AssemblerMetrics.MeteredOutputStream(
+					new FileOutputStream(outputFileName + ".mc"), metrics, outputFileName + ".mc");
+			datOut = new AssemblerMetrics.MeteredOutputStream(
+					new FileOutputStream(outputFileName + ".dat"), metrics, outputFileName + ".dat");
+			mc = new PrintStream(mcOut);
+			dat = new PrintStream(datOut);
+		}
+		else {
+			mc = new PrintStream(outputFileName + ".mc");
+			dat = new PrintStream(outputFileName + ".dat");
+		}
+		br = new MacroExpander(openInput(inputFileName, metrics));
+		event = new AssemblerPhaseEvent("pass2", inputFileName);
+		event.begin();
+		try {
+			SecondPassParser.parseFile(st, br, mc, dat);
+		} finally {
+			br.close();
+		}
+		event.end();
+		// The instructions are only counted if the output was metered, so
+		// a recording started after pass 1 gets no pass2 event.
+		if (metered && event.shouldCommit()) {
+			event.count = mcOut.lines - 1;   // the first line is the header
+			event.commit();
+		}
+		if (metrics != null) {
+			metrics.pass2Nanos = System.nanoTime() - pass2Start;
+			metrics.instructions = mcOut.lines - 1;
+			metrics.dataWords = datOut.lines - 1;
+			metrics.totalNanos = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Opens the input file, timing the reads if metrics are wanted.
+	 */
+	private static Reader openInput(String inputFileName, AssemblerMetrics metrics) 
+			throws IOException {
+		Reader in = new FileReader(inputFileName);
+		if (metrics != null)
+			in = new AssemblerMetrics.MeteredReader(in, metrics);
+		return in;
 	}
 
 }
@@ -0,0 +1,210 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * purpose This class is an assembler that can be shared by many threads,
+ *         for running the assembler inside a service.  The Assembler
+ *         works on file names and SecondPassParser.parseFile closes its
+ *         streams, so it is hard to use for programs that are not in
+ *         files.  An AssemblerEngine takes the program as a String or a
+ *         Reader, and returns the images as a Result, without touching
+ *         any file or stream it was not given.
+ *
+ * Procedure
+ *          1 - The engine holds only final settings, so one engine can be
+ *              used for any number of assemblies at once, on any number of
+ *              threads.  The tables it uses, InstructionParser.parsers and
+ *              MacroExpander.builtins, are built when their classes are
+ *              loaded and not changed after that.
+ *          2 - Each call to assemble makes its own Request, which holds
+ *              the source, the symbol table and the output buffers.  The
+ *              Request is not seen by any other thread.
+ *          3 - The source is read once into memory, and both passes read
+ *              it through their own MacroExpander, as the Assembler does
+ *              with the file.  A Reader given to assemble is not closed.
+ *          4 - The Result is immutable, and can be written to streams,
+ *              which are not closed, or made into a Program to simulate.
+ *
+ *         The Assembler streams its input and output, so it is still
+ *         the one to use for programs too large to hold in memory.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public final class AssemblerEngine {
+
+	// largest source accepted by default, in characters
+	public static final int DEFAULT_MAX_SOURCE_LENGTH = 16 * 1024 * 1024;
+
+	private final int maxSourceLength;
+
+	/**
+	 * Creates an engine that accepts sources up to DEFAULT_MAX_SOURCE_LENGTH
+	 * characters.
+	 */
+	public AssemblerEngine() {
+		this(DEFAULT_MAX_SOURCE_LENGTH);
+	}
+
+	/**
+	 * Creates an engine.
+	 *
+	 * @param maxSourceLength the largest source accepted, in characters, so
+	 *        a service can limit the memory one request uses
+	 */
+	public AssemblerEngine(int maxSourceLength) {
+		if (maxSourceLength <= 0)
+			throw new IllegalArgumentException("maxSourceLength must be > 0");
+		this.maxSourceLength = maxSourceLength;
+	}
+
+	public int getMaxSourceLength() {
+		return maxSourceLength;
+	}
+
+	/**
+	 * Assembles a program.
+	 *
+	 * @param source the assembly program
+	 * @return the images and symbol table
+	 * @throws AssemblerException error in the program, or the program is
+	 *         longer than the engine accepts
+	 */
+	public Result assemble(String source) throws AssemblerException {
+		if (source.length() > maxSourceLength)
+			throw new AssemblerException("Program is longer than " + maxSourceLength + " characters");
+		try {
+			return new Request(source).run();
+		} catch (IOException ioe) {
+			// StringReader and ByteArrayOutputStream do not throw
+			throw new IllegalStateException(ioe);
+		}
+	}
+
+	/**
+	 * Reads a program and assembles it.  The reader is read to the end,
+	 * but it is not closed.
+	 *
+	 * @param in the assembly program
+	 * @return the images and symbol table
+	 * @throws IOException error reading the program
+	 * @throws AssemblerException error in the program, or the program is
+	 *         longer than the engine accepts
+	 */
+	public Result assemble(Reader in) throws IOException, AssemblerException {
+		StringBuilder sb = new StringBuilder();
+		char[] buffer = new char[8192];
+		int n = in.read(buffer);
+		while (n >= 0) {
+			if (sb.length() + n > maxSourceLength)
+				throw new AssemblerException("Program is longer than " + maxSourceLength + " characters");
+			sb.append(buffer, 0, n);
+			n = in.read(buffer);
+		}
+		return assemble(sb.toString());
+	}
+
+	/**
+	 * The state of one assembly.  A Request is made for each call to
+	 * assemble, and is used by one thread.
+	 */
+	private static class Request {
+		final String source;
+		HashMap<String, Label> st;
+		final ByteArrayOutputStream mc = new ByteArrayOutputStream();
+		final ByteArrayOutputStream dat = new ByteArrayOutputStream();
+
+		Request(String source) {
+			this.source = source;
+		}
+
+		Result run() throws IOException, AssemblerException {
+			BufferedReader br = new MacroExpander(new StringReader(source));
+			st = FirstPassParser.parseFile(br);
+
+			br = new MacroExpander(new StringReader(source));
+			PrintStream mcOut = new PrintStream(mc, false, "UTF-8");
+			PrintStream datOut = new PrintStream(dat, false, "UTF-8");
+			SecondPassParser.translate(st, br, mcOut, datOut);
+			mcOut.flush();
+			datOut.flush();
+			return new Result(new String(mc.toByteArray(), StandardCharsets.UTF_8),
+					new String(dat.toByteArray(), StandardCharsets.UTF_8), st);
+		}
+	}
+
+	/**
+	 * The output of one assembly: the .mc and .dat images, in the format
+	 * the Assembler writes, and the symbol table.
+	 */
+	public static final class Result {
+		private final String machineCode;
+		private final String data;
+		private final Map<String, Label> symbols;
+
+		Result(String machineCode, String data, HashMap<String, Label> symbols) {
+			this.machineCode = machineCode;
+			this.data = data;
+			this.symbols = Collections.unmodifiableMap(symbols);
+		}
+
+		/**
+		 * Returns the text image, as the Assembler writes it to the .mc file.
+		 */
+		public String getMachineCode() {
+			return machineCode;
+		}
+
+		/**
+		 * Returns the data image, as the Assembler writes it to the .dat file.
+		 */
+		public String getData() {
+			return data;
+		}
+
+		/**
+		 * Returns the symbol table, which cannot be changed.
+		 */
+		public Map<String, Label> getSymbols() {
+			return symbols;
+		}
+
+		/**
+		 * Writes the images to streams.  The streams are not closed.
+		 */
+		public void writeTo(OutputStream mcOut, OutputStream datOut) throws IOException {
+			mcOut.write(machineCode.getBytes(StandardCharsets.UTF_8));
+			datOut.write(data.getBytes(StandardCharsets.UTF_8));
+			mcOut.flush();
+			datOut.flush();
+		}
+
+		/**
+		 * Makes a Program from the images, to run on a Simulator.
+		 *
+		 * @return the program
+		 * @throws IllegalArgumentException the program does not fit in
+		 *         the memories of the CPU
+		 */
+		public Program toProgram() {
+			return new Program(words(machineCode), words(data), new HashMap<String, Label>(symbols));
+		}
+
+		private static int[] words(String image) {
+			String[] lines = image.split("\n");
+			int[] words = new int[lines.length - 1];   // the first line is the header
+			for (int i = 1; i < lines.length; i++)
+				words[i - 1] = Integer.parseInt(lines[i].trim(), 16);
+			return words;
+		}
+	}
+}
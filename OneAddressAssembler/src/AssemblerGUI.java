@@ -6,6 +6,10 @@ import java.io.File;
 
 /**
  * @Author: Amrit Dhakal
+ *
+ * Program History:
+ *     10/18/2026  - Added the Debug button, which assembles the program
+ *                   and opens it in a DebuggerPanel
  */
 public class AssemblerGUI extends JFrame {
 
@@ -147,6 +151,25 @@ public class AssemblerGUI extends JFrame {
         });
         buttonsPanel.add(assembleButton);
 
+        JButton debugButton = new JButton("Debug");
+        debugButton.addActionListener(e -> {
+        	textArea.setText("");
+        	String inputFileName = inputField.getText();
+        	try {
+                File f = new File(inputFileName);
+                if(!f.exists() || f.isDirectory()) { 
+                    throw new Exception("You must have a valid file to debug");
+                }
+        		String outputFileName = inputFileName.substring(0, inputFileName.lastIndexOf("."));
+	            Assembler.assemble(inputFileName, outputFileName);
+	            Program program = Program.load(outputFileName + ".mc", outputFileName + ".dat", inputFileName);
+	            DebuggerPanel.open(program, f.getName());
+        	} catch (Exception ex) {
+        		textArea.setText(ex.getMessage());
+        	}
+        });
+        buttonsPanel.add(debugButton);
+
         JButton exitButton = new JButton("Exit");
         exitButton.addActionListener(e -> {
             System.exit(0);
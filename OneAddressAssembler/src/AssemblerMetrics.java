@@ -0,0 +1,194 @@
+import java.io.FilterOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * purpose This class holds the counters and phase times for one run of the
+ *         assembler, and writes them as a JSON summary.  It is only created
+ *         when metrics are asked for (Assembler --metrics file).  When it is
+ *         not, the assembler does not use any of the wrappers below, so the
+ *         metrics cost nothing.
+ *
+ *         The wrappers collect the counts without changing the parsers:
+ *             MeteredReader         time spent reading the input file
+ *             CountingSymbolTable   number of symbol table lookups
+ *             MeteredOutputStream   bytes, lines and time spent writing
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class AssemblerMetrics {
+
+	String inputFile;
+	long lines;
+	long labels;
+	long instructions;
+	long dataWords;
+	long bytesWritten;
+	long symbolLookups;
+	long readNanos;
+	long pass1Nanos;
+	long pass2Nanos;
+	long writeNanos;
+	long totalNanos;
+
+	public AssemblerMetrics() {
+	}
+
+	/**
+	 * Returns the metrics as a JSON object.
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"inputFile\": ").append(quote(inputFile)).append(",\n");
+		sb.append("  \"lines\": ").append(lines).append(",\n");
+		sb.append("  \"labels\": ").append(labels).append(",\n");
+		sb.append("  \"instructions\": ").append(instructions).append(",\n");
+		sb.append("  \"dataWords\": ").append(dataWords).append(",\n");
+		sb.append("  \"bytesWritten\": ").append(bytesWritten).append(",\n");
+		sb.append("  \"symbolLookups\": ").append(symbolLookups).append(",\n");
+		sb.append("  \"readNanos\": ").append(readNanos).append(",\n");
+		sb.append("  \"pass1Nanos\": ").append(pass1Nanos).append(",\n");
+		sb.append("  \"pass2Nanos\": ").append(pass2Nanos).append(",\n");
+		sb.append("  \"writeNanos\": ").append(writeNanos).append(",\n");
+		sb.append("  \"totalNanos\": ").append(totalNanos).append("\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the JSON summary to a file.
+	 *
+	 * @param fileName the file to write
+	 * @throws IOException error writing the file
+	 */
+	public void write(String fileName) throws IOException {
+		PrintStream ps = new PrintStream(fileName);
+		try {
+			ps.print(toJson());
+		} finally {
+			ps.close();
+		}
+	}
+
+	private static String quote(String s) {
+		if (s == null)
+			return "null";
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < ' ')
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * A Reader that adds the time spent reading to readNanos.  The reader
+	 * is read in large blocks by the BufferedReader, so timing each read
+	 * costs little.
+	 */
+	static class MeteredReader extends FilterReader {
+		private final AssemblerMetrics metrics;
+
+		MeteredReader(Reader in, AssemblerMetrics metrics) {
+			super(in);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			int n = super.read(cbuf, off, len);
+			metrics.readNanos += System.nanoTime() - start;
+			return n;
+		}
+	}
+
+	/**
+	 * A symbol table that counts the lookups made by the parsers.
+	 */
+	static class CountingSymbolTable extends HashMap<String, Label> {
+		private static final long serialVersionUID = 1L;
+		private final AssemblerMetrics metrics;
+
+		CountingSymbolTable(Map<String, Label> st, AssemblerMetrics metrics) {
+			super(st);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public Label get(Object key) {
+			metrics.symbolLookups++;
+			return super.get(key);
+		}
+	}
+
+	/**
+	 * An OutputStream that counts the bytes and lines written, and the
+	 * time spent writing them.  When it is closed it writes the output
+	 * phase event, which covers the time the file was open.
+	 */
+	static class MeteredOutputStream extends FilterOutputStream {
+		private final AssemblerMetrics metrics;
+		private final AssemblerPhaseEvent event;
+		long bytes;
+		long lines;
+
+		MeteredOutputStream(OutputStream out, AssemblerMetrics metrics, String fileName) {
+			super(out);
+			this.metrics = metrics;
+			this.event = new AssemblerPhaseEvent("output", fileName);
+			event.begin();
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			out.write(b);
+			account(start, 1, (b == '\n') ? 1 : 0);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			out.write(b, off, len);
+			int newLines = 0;
+			for (int i = off; i < off + len; i++)
+				if (b[i] == '\n')
+					newLines++;
+			account(start, len, newLines);
+		}
+
+		@Override
+		public void close() throws IOException {
+			long start = System.nanoTime();
+			super.close();
+			account(start, 0, 0);
+			event.end();
+			if (event.shouldCommit()) {
+				event.count = bytes;
+				event.commit();
+			}
+		}
+
+		private void account(long start, int n, int newLines) {
+			bytes += n;
+			lines += newLines;
+			if (metrics != null) {
+				metrics.writeNanos += System.nanoTime() - start;
+				metrics.bytesWritten += n;
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+
+/**
+ * purpose This is the Flight Recorder event written for each phase of the
+ *         assembler: pass 1, pass 2, and writing each output file.  When
+ *         no recording has the event enabled, begin, end and shouldCommit
+ *         do almost nothing, so the event is always used.
+ *
+ *         To record the events:
+ *             java -XX:StartFlightRecording=filename=asm.jfr Assembler prog.asm
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+@Name("oneaddress.AssemblerPhase")
+@jdk.jfr.Label("Assembler Phase")
+@Category("OneAddress Assembler")
+@Description("A phase of a run of the 1-Address assembler")
+public class AssemblerPhaseEvent extends Event {
+
+	@jdk.jfr.Label("Phase")
+	@Description("pass1, pass2, or output")
+	String phase;
+
+	@jdk.jfr.Label("File")
+	String file;
+
+	@jdk.jfr.Label("Count")
+	@Description("Lines read for pass1, instructions for pass2, bytes for output")
+	long count;
+
+	public AssemblerPhaseEvent(String phase, String file) {
+		this.phase = phase;
+		this.file = file;
+	}
+
+	/**
+	 * Returns true if a recording has this event enabled.
+	 */
+	public static boolean isRecording() {
+		return new AssemblerPhaseEvent(null, null).isEnabled();
+	}
+}
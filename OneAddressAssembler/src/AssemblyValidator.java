@@ -0,0 +1,364 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * purpose This class checks assembly programs without assembling them.  The
+ *         assembler stops at the first error, so checking a program with
+ *         many errors takes one run for each error.  The validator finds
+ *         all of the errors in a program in one read of the file, and
+ *         returns them as a list of Diagnostics.  No output is written, and
+ *         no exceptions are thrown for errors in the program.
+ *
+ * Procedure
+ *          1 - The file is read once, through a MacroExpander, so the
+ *              validator sees the same lines as the FirstPassParser and
+ *              SecondPassParser.  Labels are added to a symbol table as
+ *              they are found, and duplicate labels, unknown operators,
+ *              bad operands and bad .data lines are reported.
+ *          2 - A label can be used before it is defined, so operands and
+ *              .number values are kept in a list.  When the whole file has
+ *              been read, the .equ names are resolved, and each operand is
+ *              evaluated with the symbol table.  Labels that are not
+ *              defined, bad expressions, and values that do not fit are
+ *              reported.
+ *          3 - The diagnostics are returned in line number order.
+ *
+ *         The checks are the ones made by the parsers, but are done here
+ *         without exceptions, except for the errors of expressions, which
+ *         ConstantExpression makes without a stack trace.  So a file with
+ *         many errors costs no more to check than a file with none.
+ *
+ *         Usage: java AssemblyValidator [-q] file.asm|directory ...
+ *         Directories are searched for .asm files.  The files are checked
+ *         in parallel.  -q only prints the summary.  The exit status is 1
+ *         if any errors were found.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Added .equ and constant expressions
+ *     10/18/2026  - Only one operand is allowed, as in SecondPassParser
+ *     10/18/2026  - Expression errors have no stack trace
+ *     10/18/2026  - The operand of .line is checked
+ *     10/18/2026  - parseNumber moved to Program, its only user
+ */
+public class AssemblyValidator {
+
+	// The kind of operand each operator takes.  The parsers in
+	// InstructionParser accept a constant expression for the memory,
+	// branch and immediate instructions, and ignore the operand of clac.
+	// The Disassembler writes labels only for the ADDRESS operands.
+	static final char ADDRESS = 'a';
+	static final char IMMEDIATE = 'i';
+	static final char NONE = 'n';
+
+	static final HashMap<String, Character> operandKinds = new HashMap<String, Character>();
+
+	static {
+		for (String op : new String[] {"add", "sub", "mul", "div", "rem", "and", "shift",
+				"stor", "beqz", "br"})
+			operandKinds.put(op, ADDRESS);
+		for (String op : new String[] {"addi", "subi", "muli", "divi", "remi", "andi"})
+			operandKinds.put(op, IMMEDIATE);
+		operandKinds.put("clac", NONE);
+
+		// An instruction added to InstructionParser must be added here too.
+		if (!operandKinds.keySet().equals(InstructionParser.parsers.keySet()))
+			throw new IllegalStateException("AssemblyValidator does not match InstructionParser");
+	}
+
+	private AssemblyValidator() {
+	}
+
+	/**
+	 * main - Checks the files and directories given, and prints the
+	 *        diagnostics for each file.
+	 */
+	public static void main(String[] args) {
+		boolean quiet = false;
+		ArrayList<File> files = new ArrayList<File>();
+		for (String arg : args) {
+			if (arg.equals("-q"))
+				quiet = true;
+			else
+				addFiles(new File(arg), files);
+		}
+		if (files.isEmpty()) {
+			System.out.println("Usage: java AssemblyValidator [-q] file.asm|directory ...");
+			return;
+		}
+
+		// Each file is checked on its own, so they can be checked in
+		// parallel.  The results are kept in the order of the files.
+		long start = System.nanoTime();
+		List<List<Diagnostic>> results = files.parallelStream()
+				.map(f -> validateFile(f.getPath()))
+				.collect(Collectors.toList());
+		long nanos = System.nanoTime() - start;
+
+		int errors = 0;
+		int badFiles = 0;
+		for (List<Diagnostic> diagnostics : results) {
+			if (diagnostics.isEmpty())
+				continue;
+			badFiles = badFiles + 1;
+			errors = errors + diagnostics.size();
+			if (!quiet)
+				for (Diagnostic d : diagnostics)
+					System.out.println(d);
+		}
+		System.out.printf("%d files checked, %d errors in %d files, %.1f ms%n",
+				files.size(), errors, badFiles, nanos / 1e6);
+		if (errors > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Adds a file, or the .asm files in a directory, to the list of files
+	 * to check.
+	 */
+	private static void addFiles(File f, List<File> files) {
+		if (f.isDirectory()) {
+			File[] children = f.listFiles();
+			if (children == null)
+				return;
+			Arrays.sort(children);
+			for (File child : children)
+				if (child.isDirectory() || child.getName().endsWith(".asm"))
+					addFiles(child, files);
+		}
+		else
+			files.add(f);
+	}
+
+	/**
+	 * Checks one file.  A file that cannot be read is reported as a
+	 * diagnostic on line 0.
+	 *
+	 * @param fileName the assembly file to check
+	 * @return the problems found, in line number order
+	 */
+	public static List<Diagnostic> validateFile(String fileName) {
+		try {
+			return validate(fileName, new FileReader(fileName));
+		} catch (IOException ioe) {
+			return Collections.singletonList(new Diagnostic(fileName, 0, "cannot read file: " + ioe.getMessage()));
+		}
+	}
+
+	/**
+	 * Checks one program.  The reader is closed when the program has been read.
+	 *
+	 * @param fileName the name to report the diagnostics against
+	 * @param in the assembly program
+	 * @return the problems found, in line number order
+	 * @throws IOException error reading the program
+	 */
+	public static List<Diagnostic> validate(String fileName, Reader in) throws IOException {
+		ArrayList<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+		HashMap<String, Label> st = new HashMap<String, Label>();
+		LinkedHashMap<String, ConstantExpression> equs = new LinkedHashMap<String, ConstantExpression>();
+		ArrayList<OperandUse> uses = new ArrayList<OperandUse>();
+		boolean processingText = true;
+		int currentTextAddress = 0;
+		int currentDataAddress = 0;
+		int lineNumber = 1;
+
+		MacroExpander br = new MacroExpander(in);
+		try {
+			String s = br.readLine();
+			while (s != null) {
+				String s1 = s.trim();
+				String[] tokens = s1.split("\\s+");
+
+				if (tokens[0].equals("#") || tokens[0].equals(""))
+					; // Skip comments and blank lines
+				else if (tokens[0].equals(".line")) {
+					try {
+						lineNumber = MacroExpander.lineDirective(tokens, lineNumber) - 1;
+					} catch (AssemblerException ae) {
+						error(diagnostics, fileName, lineNumber, ae.getMessage());
+					}
+				}
+				else if (tokens[0].equals(".error"))
+					diagnostics.add(new Diagnostic(fileName, lineNumber, s1.substring(6).trim()));
+				else if (tokens[0].equals(".text"))
+					processingText = true;
+				else if (tokens[0].equals(".data"))
+					processingText = false;
+
+				else if (tokens[0].equals(".label")) {
+					if (tokens.length != 2)
+						error(diagnostics, fileName, lineNumber, "syntax is '.label name', nothing can follow name");
+					else {
+						String name = tokens[1];
+						Label l = processingText
+								? new Label(name, currentTextAddress, 'c')
+								: new Label(name, currentDataAddress, 'd');
+						if (st.containsKey(name) || equs.containsKey(name))
+							error(diagnostics, fileName, lineNumber, "duplicate label " + name);
+						else
+							st.put(name, l);
+					}
+				}
+
+				else if (tokens[0].equals(".equ")) {
+					if (tokens.length < 3 || (tokens.length > 3 && !tokens[3].startsWith("#")))
+						error(diagnostics, fileName, lineNumber, "syntax is '.equ name value'");
+					else if (st.containsKey(tokens[1]) || equs.containsKey(tokens[1]))
+						error(diagnostics, fileName, lineNumber, "duplicate label " + tokens[1]);
+					else {
+						try {
+							equs.put(tokens[1], ConstantExpression.compile(tokens[2], lineNumber));
+						} catch (AssemblerException ae) {
+							error(diagnostics, fileName, lineNumber, ae.getMessage());
+						}
+					}
+				}
+
+				else if (!processingText) {
+					if (!tokens[0].equals(".number"))
+						error(diagnostics, fileName, lineNumber,
+								"only .number directives allowed in .data segment, found " + tokens[0]);
+					else if (tokens.length < 2)
+						error(diagnostics, fileName, lineNumber, "syntax is '.number value'");
+					else if (oneOperand(diagnostics, fileName, lineNumber, tokens))
+						uses.add(new OperandUse(".number", tokens[1], lineNumber, -32768, 32767));
+					currentDataAddress = currentDataAddress + 1;
+				}
+
+				else {
+					checkInstruction(diagnostics, uses, fileName, lineNumber, tokens);
+					currentTextAddress = currentTextAddress + 1;
+				}
+
+				lineNumber = lineNumber + 1;
+				s = br.readLine();
+			}
+		} finally {
+			br.close();
+		}
+
+		// Every label is now known, so the .equ names can be resolved and
+		// the operands checked.
+		for (Map.Entry<ConstantExpression, String> e : ConstantExpression.define(equs, st).entrySet())
+			error(diagnostics, fileName, e.getKey().lineNumber, e.getValue());
+		for (OperandUse use : uses)
+			checkOperand(diagnostics, fileName, st, use);
+
+		// The label errors were found after the others, so sort the
+		// diagnostics back into line order.  The sort is stable, so
+		// errors on the same line stay in the order they were found.
+		Collections.sort(diagnostics, new Comparator<Diagnostic>() {
+			public int compare(Diagnostic a, Diagnostic b) {
+				return Integer.compare(a.line, b.line);
+			}
+		});
+		return diagnostics;
+	}
+
+	/**
+	 * Checks the operator of an instruction in the text segment.  The
+	 * operand is added to uses, to be checked when the file has been read.
+	 */
+	private static void checkInstruction(List<Diagnostic> diagnostics, List<OperandUse> uses,
+			String fileName, int lineNumber, String[] tokens) {
+		String op = tokens[0];
+		Character kind = operandKinds.get(op);
+		if (kind == null) {
+			error(diagnostics, fileName, lineNumber, "operator " + op + " not found");
+			return;
+		}
+		if (!oneOperand(diagnostics, fileName, lineNumber, tokens) || kind == NONE)
+			return;
+		if (tokens.length < 2) {
+			error(diagnostics, fileName, lineNumber, op + " needs an operand");
+			return;
+		}
+
+		uses.add(new OperandUse(op, tokens[1], lineNumber, -128, 127));
+	}
+
+	/**
+	 * Checks that nothing but a comment follows the operand.  The parsers
+	 * read only the first token, so an expression with blanks in it would
+	 * be cut short.
+	 *
+	 * @return true if the line has at most one operand
+	 */
+	private static boolean oneOperand(List<Diagnostic> diagnostics, String fileName,
+			int lineNumber, String[] tokens) {
+		if (tokens.length > 2 && !tokens[2].startsWith("#")) {
+			error(diagnostics, fileName, lineNumber, "only one operand allowed, found " + tokens[2]
+					+ ", an expression cannot contain blanks");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that an operand is a valid expression, that its labels are
+	 * defined, and that its value is between min and max, the values
+	 * accepted by InstructionParser.  As in InstructionParser, a name in
+	 * the symbol table is used as is, before it is parsed.
+	 */
+	private static void checkOperand(List<Diagnostic> diagnostics, String fileName,
+			HashMap<String, Label> st, OperandUse use) {
+		long number;
+		Label l = st.get(use.operand);
+		if (l != null)
+			number = l.getAddress();
+		else {
+			try {
+				number = ConstantExpression.compile(use.operand, use.lineNumber).evaluate(st, use.op);
+			} catch (AssemblerException ae) {
+				error(diagnostics, fileName, use.lineNumber, ae.getMessage());
+				return;
+			}
+		}
+		if (number >= use.min && number <= use.max)
+			return;
+		if (l != null && l.getSegment() != 'e')
+			error(diagnostics, fileName, use.lineNumber,
+					"label " + use.operand + " at address " + l.getAddress()
+					+ " does not fit in the operand of " + use.op);
+		else
+			error(diagnostics, fileName, use.lineNumber,
+					"number " + use.operand + " must be " + use.min + " <= n <= " + use.max
+					+ (use.operand.equals(Long.toString(number)) ? "" : ", it is " + number));
+	}
+
+	private static void error(List<Diagnostic> diagnostics, String fileName, int lineNumber,
+			String message) {
+		diagnostics.add(new Diagnostic(fileName, lineNumber, message));
+	}
+
+	/**
+	 * An operand or .number value, checked when the whole file has been read.
+	 */
+	static class OperandUse {
+		final String op;
+		final String operand;
+		final int lineNumber;
+		final int min;
+		final int max;
+
+		OperandUse(String op, String operand, int lineNumber, int min, int max) {
+			this.op = op;
+			this.operand = operand;
+			this.lineNumber = lineNumber;
+			this.min = min;
+			this.max = max;
+		}
+	}
+}
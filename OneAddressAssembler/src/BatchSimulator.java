@@ -0,0 +1,547 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * purpose This class runs one program on many data memories in lockstep.
+ *         Each run is a lane.  While the lanes are at the same PC, each
+ *         instruction is decoded once and done for all of the lanes in a
+ *         simple loop over arrays, which the JIT compiles to vector
+ *         instructions.  This does many more instructions per second than
+ *         running each data memory in its own Simulator.
+ *
+ * Procedure
+ *          1 - The state is kept as structure of arrays: ac[lane], pc[lane],
+ *              and a data memory with the lanes side by side for each
+ *              address, mem[address * lanes + lane].  So an instruction that
+ *              reads one address reads one run of memory for all lanes.
+ *          2 - While all lanes are at the same PC (converged), the PC is
+ *              kept once, and each instruction is a loop over all of the
+ *              running lanes.
+ *          3 - When a beqz goes both ways, the lanes diverge.  Then each
+ *              step runs the lanes at the lowest PC, and the others wait.
+ *              Lanes that branch back wait for the lanes behind them, so
+ *              the lanes meet again at the first PC they all get to, and
+ *              when they are all at one PC they are converged again.
+ *          4 - A lane that halts, or has run maxCycles cycles, is swapped
+ *              to the end of the arrays, so the running lanes are always
+ *              lanes 0 to active-1, and the loops have no tests.
+ *
+ *         The cycles of a lane are the cycles it ran, not counting the
+ *         steps it waited, so each lane ends with the same PC, accumulator,
+ *         memory and cycle count as a Simulator.
+ *
+ *         Usage: java BatchSimulator [-s program.asm] [-max cycles] [-compare]
+ *                    -random n label,... [-seed s] [-range min:max] image.mc
+ *
+ *         -compare also runs each lane in a Simulator, checks the results
+ *         are the same, and prints the speedup.
+ *
+ *         Lockstep pays when the lanes mostly take the same branches.  When
+ *         every lane loops a different number of times, the lanes spend
+ *         most steps waiting, and the SimulationFarm is faster.
+ *
+ *         The JDK Vector API is not used, it is an incubator module that
+ *         is not in the Java 11 the project is built with.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public final class BatchSimulator {
+
+	private final Program program;
+	private final int lanes;
+
+	// By slot.  Slots 0..active-1 are the lanes still running.
+	private final int[] mem;          // mem[address * lanes + slot]
+	private final int[] ac;
+	private final int[] pc;           // only used when the lanes are not converged
+	private final long[] wait;        // steps the slot did not run
+	private final int[] laneOfSlot;
+	private final int[] slotOfLane;
+	private final int[] group;        // slots at the PC being run
+	private int active;
+
+	// By lane, set when the lane stops.
+	private final boolean[] halted;
+	private final long[] cycles;
+
+	private long clock = 0;           // steps run
+	private boolean converged = true;
+	private int convergedPc = 0;      // the PC of all lanes, when converged
+	private long minWait = 0;         // the least wait of the running lanes
+
+	/**
+	 * Creates a batch of lanes, one for each data memory.
+	 *
+	 * @param program the program to run
+	 * @param dataMemories the data memory of each lane
+	 */
+	public BatchSimulator(Program program, List<int[]> dataMemories) {
+		this.program = program;
+		this.lanes = dataMemories.size();
+		mem = new int[Program.MEMORY_SIZE * lanes];
+		ac = new int[lanes];
+		pc = new int[lanes];
+		wait = new long[lanes];
+		laneOfSlot = new int[lanes];
+		slotOfLane = new int[lanes];
+		group = new int[lanes];
+		halted = new boolean[lanes];
+		cycles = new long[lanes];
+		for (int lane = 0; lane < lanes; lane++) {
+			int[] data = dataMemories.get(lane);
+			for (int address = 0; address < data.length; address++)
+				mem[address * lanes + lane] = data[address] & 0xFFFF;
+			laneOfSlot[lane] = lane;
+			slotOfLane[lane] = lane;
+		}
+		active = lanes;
+	}
+
+	public int getLanes() {
+		return lanes;
+	}
+
+	public int getAc(int lane) {
+		return ac[slotOfLane[lane]];
+	}
+
+	public int getPc(int lane) {
+		return pc[slotOfLane[lane]];
+	}
+
+	public long getCycles(int lane) {
+		return cycles[lane];
+	}
+
+	public boolean isHalted(int lane) {
+		return halted[lane];
+	}
+
+	public int read(int lane, int address) {
+		return mem[address * lanes + slotOfLane[lane]];
+	}
+
+	public int[] getData(int lane) {
+		int[] data = new int[Program.MEMORY_SIZE];
+		for (int address = 0; address < data.length; address++)
+			data[address] = read(lane, address);
+		return data;
+	}
+
+	/**
+	 * Runs all of the lanes until each has halted or run maxCycles cycles.
+	 * Can only be called once.
+	 *
+	 * @param maxCycles the most cycles for each lane
+	 */
+	public void run(long maxCycles) {
+		int[] code = program.code;
+		while (active > 0) {
+			if (converged)
+				runConverged(code, maxCycles);
+			else
+				runDiverged(code, maxCycles);
+		}
+	}
+
+	/**
+	 * Runs while the lanes are converged.  Returns when they diverge, or
+	 * all lanes have stopped.
+	 */
+	private void runConverged(int[] code, long maxCycles) {
+		int lanes = this.lanes;
+		int[] mem = this.mem;
+		int[] ac = this.ac;
+
+		while (active > 0) {
+			int n = active;
+			int current = convergedPc;
+			int instruction = code[current];
+			int arg = instruction >>> 8;
+			int op = instruction & 0xFF;
+
+			if (op == Program.HALT || clock - minWait >= maxCycles) {
+				Arrays.fill(pc, 0, n, current);
+				if (op == Program.HALT)
+					retireAll(true);
+				else
+					retireFinished(maxCycles);
+				continue;
+			}
+
+			int next = (current + 1) & 0xFF;
+			int base = arg * lanes;
+			switch (op) {
+			case Program.IMMEDIATE + Alu.ADD:
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] + arg) & 0xFFFF;
+				break;
+			case Program.IMMEDIATE + Alu.SUB:
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] - arg) & 0xFFFF;
+				break;
+			case Program.IMMEDIATE + Alu.MUL:
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] * arg) & 0xFFFF;
+				break;
+			case Program.IMMEDIATE + Alu.AND:
+				for (int i = 0; i < n; i++)
+					ac[i] = ac[i] & arg;
+				break;
+			case Program.IMMEDIATE + Alu.SHIFT: {
+				int shift = arg & 0xF;
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] << shift) & 0xFFFF;
+				break;
+			}
+			case Program.MEMORY + Alu.ADD:
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] + mem[base + i]) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.SUB:
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] - mem[base + i]) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.MUL:
+				for (int i = 0; i < n; i++)
+					ac[i] = (ac[i] * mem[base + i]) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.AND:
+				for (int i = 0; i < n; i++)
+					ac[i] = ac[i] & mem[base + i];
+				break;
+			case Program.IMMEDIATE + Alu.DIV:
+			case Program.IMMEDIATE + Alu.REM:
+				// Division does not vectorize, so use the ALU model.
+				for (int i = 0; i < n; i++)
+					ac[i] = Alu.compute(op & 0x0F, ac[i], arg);
+				break;
+			case Program.MEMORY + Alu.DIV:
+			case Program.MEMORY + Alu.REM:
+			case Program.MEMORY + Alu.SHIFT:
+				for (int i = 0; i < n; i++)
+					ac[i] = Alu.compute(op & 0x0F, ac[i], mem[base + i]);
+				break;
+			case Program.CLAC:
+				Arrays.fill(ac, 0, n, 0);
+				break;
+			case Program.STOR:
+				System.arraycopy(ac, 0, mem, base, n);
+				break;
+			case Program.BEQZ: {
+				int zeros = 0;
+				for (int i = 0; i < n; i++)
+					if (ac[i] == 0)
+						zeros++;
+				if (zeros == n)
+					next = arg;
+				else if (zeros > 0) {
+					// The lanes go both ways, so each lane keeps its own PC.
+					for (int i = 0; i < n; i++)
+						pc[i] = (ac[i] == 0) ? arg : next;
+					clock++;
+					converged = false;
+					return;
+				}
+				break;
+			}
+			case Program.BR:
+				next = arg;
+				break;
+			default:
+				break;   // no operation
+			}
+			convergedPc = next;
+			clock++;
+		}
+	}
+
+	/**
+	 * Runs while the lanes are diverged.  The lanes at the lowest PC are
+	 * the group.  The group is run, and the others wait, until the group
+	 * gets to or past the PC of another lane, splits at a beqz, halts or
+	 * runs out of cycles.  Running the group for many steps like this is
+	 * the same as choosing the lowest PC each step, but the lanes are only
+	 * looked at once for all of the steps.
+	 */
+	private void runDiverged(int[] code, long maxCycles) {
+		// Stop the lanes that have run maxCycles.
+		for (int slot = active - 1; slot >= 0; slot--)
+			if (clock - wait[slot] >= maxCycles)
+				retire(slot, false);
+		if (active == 0)
+			return;
+
+		// Find the group, and the lowest PC of the other lanes.
+		int current = Integer.MAX_VALUE;
+		int others = Integer.MAX_VALUE;
+		for (int slot = 0; slot < active; slot++) {
+			int p = pc[slot];
+			if (p < current) {
+				others = current;
+				current = p;
+			}
+			else if (p > current && p < others)
+				others = p;
+		}
+		int n = 0;
+		long groupWait = Long.MAX_VALUE;
+		for (int slot = 0; slot < active; slot++) {
+			if (pc[slot] == current) {
+				group[n++] = slot;
+				groupWait = Math.min(groupWait, wait[slot]);
+			}
+		}
+
+		if (others == Integer.MAX_VALUE) {
+			// All of the lanes are at one PC, so they are converged again.
+			converged = true;
+			convergedPc = current;
+			minWait = groupWait;
+			return;
+		}
+		if (code[current] == Program.HALT) {
+			for (int k = n - 1; k >= 0; k--)
+				retire(group[k], true);
+			return;
+		}
+
+		long steps = 0;
+		boolean split = false;
+		while (!split) {
+			int instruction = code[current];
+			int arg = instruction >>> 8;
+			int op = instruction & 0xFF;
+			if (op == Program.HALT || clock - groupWait >= maxCycles)
+				break;
+			current = step(op, arg, current, n);
+			if (current < 0)
+				split = true;
+			clock++;
+			steps++;
+			if (current >= others)
+				break;
+		}
+
+		// A split has already set the PCs of the group.
+		if (!split)
+			for (int k = 0; k < n; k++)
+				pc[group[k]] = current;
+		for (int slot = 0; slot < active; slot++)
+			wait[slot] += steps;
+		for (int k = 0; k < n; k++)
+			wait[group[k]] -= steps;
+	}
+
+	/**
+	 * Does one instruction for the slots in group[0..n-1], which are all
+	 * at the PC current.
+	 *
+	 * @return the PC of the group, or -1 if a beqz split the group, in
+	 *         which case the PC of each lane has been set
+	 */
+	private int step(int op, int arg, int current, int n) {
+		int[] group = this.group;
+		int[] ac = this.ac;
+		int next = (current + 1) & 0xFF;
+		int base = arg * lanes;
+		int aluOp = op & 0x0F;
+		switch (op & 0xF0) {
+		case Program.IMMEDIATE:
+			for (int k = 0; k < n; k++) {
+				int slot = group[k];
+				ac[slot] = Alu.compute(aluOp, ac[slot], arg);
+			}
+			return next;
+		case Program.MEMORY:
+			for (int k = 0; k < n; k++) {
+				int slot = group[k];
+				ac[slot] = Alu.compute(aluOp, ac[slot], mem[base + slot]);
+			}
+			return next;
+		case Program.CLAC:
+			for (int k = 0; k < n; k++)
+				ac[group[k]] = 0;
+			return next;
+		case Program.STOR:
+			for (int k = 0; k < n; k++) {
+				int slot = group[k];
+				mem[base + slot] = ac[slot];
+			}
+			return next;
+		case Program.BEQZ: {
+			int zeros = 0;
+			for (int k = 0; k < n; k++)
+				if (ac[group[k]] == 0)
+					zeros++;
+			if (zeros == 0)
+				return next;
+			if (zeros == n)
+				return arg;
+			for (int k = 0; k < n; k++) {
+				int slot = group[k];
+				pc[slot] = (ac[slot] == 0) ? arg : next;
+			}
+			return -1;
+		}
+		case Program.BR:
+			return arg;
+		default:
+			return next;   // no operation
+		}
+	}
+
+	/**
+	 * Stops all of the running lanes.
+	 */
+	private void retireAll(boolean halt) {
+		for (int slot = active - 1; slot >= 0; slot--)
+			retire(slot, halt);
+	}
+
+	/**
+	 * Stops the running lanes that have run maxCycles, while converged.
+	 */
+	private void retireFinished(long maxCycles) {
+		for (int slot = active - 1; slot >= 0; slot--)
+			if (clock - wait[slot] >= maxCycles)
+				retire(slot, false);
+		minWait = Long.MAX_VALUE;
+		for (int slot = 0; slot < active; slot++)
+			minWait = Math.min(minWait, wait[slot]);
+	}
+
+	/**
+	 * Stops a lane, and swaps it with the last running lane, so the running
+	 * lanes stay together at the start of the arrays.
+	 */
+	private void retire(int slot, boolean halt) {
+		int lane = laneOfSlot[slot];
+		halted[lane] = halt;
+		cycles[lane] = clock - wait[slot];
+		active--;
+		int last = active;
+		if (slot != last) {
+			swap(ac, slot, last);
+			swap(pc, slot, last);
+			long w = wait[slot];
+			wait[slot] = wait[last];
+			wait[last] = w;
+			for (int base = 0; base < mem.length; base += lanes)
+				swap(mem, base + slot, base + last);
+			int other = laneOfSlot[last];
+			laneOfSlot[slot] = other;
+			slotOfLane[other] = slot;
+			laneOfSlot[last] = lane;
+			slotOfLane[lane] = last;
+		}
+	}
+
+	private static void swap(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/**
+	 * main - Runs a batch of random inputs, and reports the speed.
+	 */
+	public static void main(String[] args) {
+		String symbolFile = null;
+		String textFile = null;
+		String[] randomLabels = null;
+		int count = 0;
+		long seed = 1;
+		int min = 0;
+		int max = 32767;
+		long maxCycles = 1000000000L;
+		boolean compare = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (args[i].equals("-max") && i + 1 < args.length)
+				maxCycles = Long.parseLong(args[++i]);
+			else if (args[i].equals("-compare"))
+				compare = true;
+			else if (args[i].equals("-random") && i + 2 < args.length) {
+				count = Integer.parseInt(args[++i]);
+				randomLabels = args[++i].split(",");
+			}
+			else if (args[i].equals("-seed") && i + 1 < args.length)
+				seed = Long.parseLong(args[++i]);
+			else if (args[i].equals("-range") && i + 1 < args.length) {
+				String[] range = args[++i].split(":");
+				min = Integer.parseInt(range[0]);
+				max = Integer.parseInt(range[1]);
+			}
+			else
+				textFile = args[i];
+		}
+		if (textFile == null || randomLabels == null) {
+			System.err.println("Usage: java BatchSimulator [-s program.asm] [-max cycles] [-compare]"
+					+ " -random n label,... [-seed s] [-range min:max] image.mc");
+			return;
+		}
+
+		try {
+			String dataFile = textFile.endsWith(".mc")
+					? textFile.substring(0, textFile.length() - 3) + ".dat" : null;
+			if (dataFile != null && !new File(dataFile).exists())
+				dataFile = null;
+			Program program = Program.load(textFile, dataFile, symbolFile);
+			int[] addresses = new int[randomLabels.length];
+			for (int i = 0; i < randomLabels.length; i++) {
+				addresses[i] = program.addressOf(randomLabels[i]);
+				if (addresses[i] < 0)
+					throw new AssemblerException("Label " + randomLabels[i] + " not found");
+			}
+			List<SimulationFarm.Input> inputs =
+					SimulationFarm.randomInputs(program.data, addresses, count, seed, min, max);
+			List<int[]> memories = new ArrayList<int[]>();
+			for (SimulationFarm.Input input : inputs)
+				memories.add(input.data);
+
+			long start = System.nanoTime();
+			BatchSimulator batch = new BatchSimulator(program, memories);
+			batch.run(maxCycles);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			long total = 0;
+			int halted = 0;
+			for (int lane = 0; lane < count; lane++) {
+				total += batch.getCycles(lane);
+				if (batch.isHalted(lane))
+					halted++;
+			}
+			System.out.printf("batch: %d lanes (%d halted), %d cycles in %d steps, %.3f s, "
+					+ "%.1f million cycles/s%n", count, halted, total, batch.clock, seconds, total / seconds / 1e6);
+
+			if (compare) {
+				start = System.nanoTime();
+				int mismatches = 0;
+				for (int lane = 0; lane < count; lane++) {
+					Simulator sim = new Simulator(program, memories.get(lane));
+					sim.run(maxCycles);
+					if (sim.getCycles() != batch.getCycles(lane) || sim.getAc() != batch.getAc(lane)
+							|| sim.getPc() != batch.getPc(lane) || sim.isHalted() != batch.isHalted(lane)
+							|| !Arrays.equals(sim.getData(), batch.getData(lane))) {
+						if (mismatches++ < 10)
+							System.out.println("lane " + lane + " differs: simulator " + sim.getCycles()
+									+ " cycles, AC " + sim.getAc() + ", batch " + batch.getCycles(lane)
+									+ " cycles, AC " + batch.getAc(lane));
+					}
+				}
+				double single = (System.nanoTime() - start) / 1e9;
+				System.out.printf("single: %.3f s, %.1f million cycles/s, batch speedup %.2f, %d lanes differ%n",
+						single, total / single / 1e6, single / seconds, mismatches);
+			}
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+
+/**
+ * purpose This class keeps the snapshots taken during a run, in cycle
+ *         order, so a simulation can be restarted close to any cycle
+ *         instead of from address 0.
+ *
+ *         The number of snapshots kept is limited.  When the log is full,
+ *         every other snapshot is dropped, so the snapshots still cover
+ *         the whole run, twice as far apart.  The first snapshot is always
+ *         kept.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class CheckpointLog {
+
+	private final ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>();
+	private final int limit;
+
+	/**
+	 * @param limit the most snapshots to keep, at least 2
+	 */
+	public CheckpointLog(int limit) {
+		if (limit < 2)
+			throw new IllegalArgumentException("A checkpoint log must hold at least 2 snapshots");
+		this.limit = limit;
+	}
+
+	/**
+	 * Adds a snapshot.  Snapshots must be added in cycle order.
+	 */
+	public void add(Snapshot s) {
+		if (!snapshots.isEmpty() && s.cycles < last().cycles)
+			throw new IllegalArgumentException("Snapshots must be added in cycle order");
+		if (snapshots.size() == limit) {
+			int n = 1;
+			for (int i = 2; i < snapshots.size(); i += 2)
+				snapshots.set(n++, snapshots.get(i));
+			snapshots.subList(n, snapshots.size()).clear();
+		}
+		snapshots.add(s);
+	}
+
+	public int size() {
+		return snapshots.size();
+	}
+
+	public Snapshot get(int i) {
+		return snapshots.get(i);
+	}
+
+	public Snapshot last() {
+		return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+	}
+
+	/**
+	 * Returns the last snapshot taken at or before a cycle, or null if
+	 * there is none.
+	 *
+	 * @param cycle the cycle to find
+	 * @return the snapshot to restore to get to the cycle quickly
+	 */
+	public Snapshot nearest(long cycle) {
+		int low = 0;
+		int high = snapshots.size() - 1;
+		Snapshot found = null;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Snapshot s = snapshots.get(mid);
+			if (s.cycles <= cycle) {
+				found = s;
+				low = mid + 1;
+			}
+			else
+				high = mid - 1;
+		}
+		return found;
+	}
+}
@@ -0,0 +1,973 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * purpose This class reads a Logisim .circ file, such as OneAddress.circ,
+ *         and makes a flat netlist of one of its circuits, with the
+ *         combinational logic put in the order it must be computed.  It is
+ *         used by the CircuitCompiler to make a Java simulator of the
+ *         hardware.
+ *
+ * Procedure
+ *          1 - Each circuit in the file is read from the XML: its wires and
+ *              its components, with their attributes.
+ *          2 - Logisim connects components by where their ports are, so
+ *              the place of each port is worked out from the component's
+ *              location, facing and attributes, as Logisim 2.7 does.  The
+ *              ports of a subcircuit are placed by Logisim's default
+ *              appearance, from the pins in the subcircuit.
+ *          3 - The points that wires join are put in nets, and each net is
+ *              given the width of the ports on it.  A wire end that touches
+ *              nothing is reported, as it most likely means a port was put
+ *              in the wrong place.
+ *          4 - The circuit is flattened into Parts, one for each component
+ *              of the circuit and of the subcircuits in it.  The ports of
+ *              a Part are lists of bits, and bits that are joined by wires,
+ *              splitters or subcircuit pins are the same bit, so splitters
+ *              and pins do not need to be simulated.
+ *          5 - Each bit is driven by one output port.  The combinational
+ *              Parts are levelized: a Part's level is one more than the
+ *              highest level of the Parts driving its inputs, and the
+ *              Parts are sorted by level.  Registers start a new level 0,
+ *              as their outputs only change on the clock.  A loop in the
+ *              combinational logic is an error.
+ *
+ *         The components supported are the ones OneAddress.circ uses: Pin,
+ *         Constant, Clock, Button, Splitter, the gates, Multiplexer, Adder,
+ *         Subtractor, Multiplier, Divider, Comparator, Shifter, Register,
+ *         RAM, ROM and subcircuits with the default appearance.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class Circuit {
+
+	static final int INPUT = 0;
+	static final int OUTPUT = 1;
+
+	/**
+	 * A port of a component.  x and y are from the component's location.
+	 */
+	static class Port {
+		final String name;
+		final int x;
+		final int y;
+		final int width;
+		final int direction;
+
+		Port(String name, int x, int y, int width, int direction) {
+			this.name = name;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.direction = direction;
+		}
+	}
+
+	/**
+	 * A component, as it is in the XML.
+	 */
+	static class Component {
+		final String name;
+		final int x;
+		final int y;
+		final HashMap<String, String> attributes = new HashMap<String, String>();
+		List<Port> ports;
+
+		Component(String name, int x, int y) {
+			this.name = name;
+			this.x = x;
+			this.y = y;
+		}
+
+		String get(String attribute, String value) {
+			String v = attributes.get(attribute);
+			return (v == null) ? value : v;
+		}
+
+		int getInt(String attribute, int value) {
+			String v = attributes.get(attribute);
+			if (v == null)
+				return value;
+			return v.startsWith("0x") ? (int) Long.parseLong(v.substring(2), 16) : Integer.parseInt(v);
+		}
+
+		String where() {
+			return name + " (" + x + "," + y + ")";
+		}
+	}
+
+	/**
+	 * A circuit in the file.
+	 */
+	static class Definition {
+		final String name;
+		final ArrayList<Component> components = new ArrayList<Component>();
+		final ArrayList<int[]> wires = new ArrayList<int[]>();
+		final ArrayList<Component> pins = new ArrayList<Component>();
+		HashMap<Long, Integer> netAt;   // point to net
+		int[] netWidth;
+		List<Port> appearance;           // the ports of an instance, in the order of pins
+
+		Definition(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A component in the flattened netlist.  bits[port] has the bits of
+	 * each of its ports.
+	 */
+	static class Part {
+		final int id;
+		final Component component;
+		final String path;
+		final int[][] bits;
+		int level;
+
+		Part(int id, Component component, String path, int[][] bits) {
+			this.id = id;
+			this.component = component;
+			this.path = path;
+			this.bits = bits;
+		}
+
+		String type() {
+			return component.name;
+		}
+
+		Port port(int i) {
+			return component.ports.get(i);
+		}
+
+		int portIndex(String name) {
+			for (int i = 0; i < component.ports.size(); i++)
+				if (component.ports.get(i).name.equals(name))
+					return i;
+			return -1;
+		}
+
+		@Override
+		public String toString() {
+			return path;
+		}
+	}
+
+	/**
+	 * The output port and bit that drives a bit.
+	 */
+	static class Driver {
+		final Part part;
+		final int port;
+		final int bit;
+
+		Driver(Part part, int port, int bit) {
+			this.part = part;
+			this.port = port;
+			this.bit = bit;
+		}
+	}
+
+	private final HashMap<String, Definition> definitions = new HashMap<String, Definition>();
+	private final ArrayList<String> warnings = new ArrayList<String>();
+	private String main;
+
+	// The flattened netlist
+	private final ArrayList<Part> parts = new ArrayList<Part>();
+	private int[] parent = new int[1024];   // union-find of the bits
+	private int bitCount;
+	private Driver[] drivers;
+	private ArrayList<Part> order;
+	private int levels;
+
+	/**
+	 * Reads a .circ file.
+	 *
+	 * @param file the file name
+	 */
+	public Circuit(String file) throws IOException, AssemblerException {
+		Element project;
+		try {
+			project = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(file)).getDocumentElement();
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new AssemblerException(file + " is not a Logisim file: " + e.getMessage());
+		}
+		NodeList mains = project.getElementsByTagName("main");
+		if (mains.getLength() > 0)
+			main = ((Element) mains.item(0)).getAttribute("name");
+
+		NodeList circuits = project.getElementsByTagName("circuit");
+		for (int i = 0; i < circuits.getLength(); i++) {
+			Element e = (Element) circuits.item(i);
+			Definition def = new Definition(e.getAttribute("name"));
+			NodeList children = e.getChildNodes();
+			for (int j = 0; j < children.getLength(); j++) {
+				if (!(children.item(j) instanceof Element))
+					continue;
+				Element child = (Element) children.item(j);
+				if (child.getTagName().equals("wire")) {
+					int[] from = point(child.getAttribute("from"));
+					int[] to = point(child.getAttribute("to"));
+					def.wires.add(new int[] {from[0], from[1], to[0], to[1]});
+				}
+				else if (child.getTagName().equals("comp")) {
+					int[] loc = point(child.getAttribute("loc"));
+					Component c = new Component(child.getAttribute("name"), loc[0], loc[1]);
+					NodeList attributes = child.getElementsByTagName("a");
+					for (int k = 0; k < attributes.getLength(); k++) {
+						Element a = (Element) attributes.item(k);
+						c.attributes.put(a.getAttribute("name"),
+								a.hasAttribute("val") ? a.getAttribute("val") : a.getTextContent());
+					}
+					if (!c.name.equals("Text"))
+						def.components.add(c);
+					if (c.name.equals("Pin"))
+						def.pins.add(c);
+				}
+			}
+			definitions.put(def.name, def);
+		}
+		for (Definition def : definitions.values())
+			connect(def);
+	}
+
+	private static int[] point(String s) {
+		String[] xy = s.replaceAll("[() ]", "").split(",");
+		return new int[] {Integer.parseInt(xy[0]), Integer.parseInt(xy[1])};
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	public String getMain() {
+		return main;
+	}
+
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public List<Part> getParts() {
+		return parts;
+	}
+
+	/**
+	 * Returns the combinational Parts in the order they must be computed.
+	 */
+	public List<Part> getOrder() {
+		return order;
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	public int getBitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * Returns the output that drives a bit, or null if nothing drives it.
+	 */
+	public Driver driver(int bit) {
+		return drivers[find(bit)];
+	}
+
+	/*
+	 * Port placement
+	 */
+
+	/**
+	 * Works out the ports of a component.  The ports are in the same
+	 * place as Logisim 2.7 puts them.
+	 */
+	private List<Port> ports(Definition def, Component c) throws AssemblerException {
+		ArrayList<Port> ports = new ArrayList<Port>();
+		int width = c.getInt("width", c.name.equals("Register") || isArithmetic(c.name) ? 8 : 1);
+		String facing = c.get("facing", "east");
+
+		Definition sub = definitions.get(c.name);
+		if (sub != null) {
+			for (Port p : appearance(sub)) {
+				int[] xy = rotate(p.x, p.y, facing);
+				ports.add(new Port(p.name, xy[0], xy[1], p.width, p.direction));
+			}
+			return ports;
+		}
+
+		switch (c.name) {
+		case "Pin":
+			ports.add(new Port("", 0, 0, width, c.get("output", "false").equals("true") ? INPUT : OUTPUT));
+			break;
+		case "Constant":
+		case "Clock":
+		case "Button":
+			ports.add(new Port("", 0, 0, width, OUTPUT));
+			break;
+		case "Splitter":
+			splitterPorts(c, ports);
+			break;
+		case "AND Gate":
+		case "OR Gate":
+		case "XOR Gate":
+		case "NAND Gate":
+		case "NOR Gate":
+		case "XNOR Gate":
+			gatePorts(c, width, facing, ports);
+			break;
+		case "NOT Gate": {
+			int[] xy = rotate(c.get("size", "30").equals("20") ? -20 : -30, 0, facing);
+			ports.add(new Port("out", 0, 0, width, OUTPUT));
+			ports.add(new Port("in", xy[0], xy[1], width, INPUT));
+			break;
+		}
+		case "Multiplexer":
+			multiplexerPorts(c, width, facing, ports);
+			break;
+		case "Adder":
+		case "Subtractor":
+		case "Multiplier":
+		case "Divider":
+			ports.add(new Port("a", -40, -10, width, INPUT));
+			ports.add(new Port("b", -40, 10, width, INPUT));
+			ports.add(new Port("out", 0, 0, width, OUTPUT));
+			if (c.name.equals("Divider")) {
+				ports.add(new Port("upper", -20, -20, width, INPUT));
+				ports.add(new Port("rem", -20, 20, width, OUTPUT));
+			}
+			else {
+				ports.add(new Port("carryIn", -20, -20, 1, INPUT));
+				ports.add(new Port("carryOut", -20, 20, (c.name.equals("Multiplier")) ? width : 1, OUTPUT));
+			}
+			break;
+		case "Comparator":
+			ports.add(new Port("a", -40, -10, width, INPUT));
+			ports.add(new Port("b", -40, 10, width, INPUT));
+			ports.add(new Port("gt", 0, -10, 1, OUTPUT));
+			ports.add(new Port("eq", 0, 0, 1, OUTPUT));
+			ports.add(new Port("lt", 0, 10, 1, OUTPUT));
+			break;
+		case "Shifter": {
+			int shiftBits = 32 - Integer.numberOfLeadingZeros(Math.max(width - 1, 1));
+			ports.add(new Port("a", -40, -10, width, INPUT));
+			ports.add(new Port("b", -40, 10, shiftBits, INPUT));
+			ports.add(new Port("out", 0, 0, width, OUTPUT));
+			break;
+		}
+		case "Register":
+			ports.add(new Port("out", 0, 0, width, OUTPUT));
+			ports.add(new Port("in", -30, 0, width, INPUT));
+			ports.add(new Port("clock", -20, 20, 1, INPUT));
+			ports.add(new Port("clear", -10, 20, 1, INPUT));
+			ports.add(new Port("enable", -30, 10, 1, INPUT));
+			break;
+		case "RAM":
+		case "ROM": {
+			int dataWidth = c.getInt("dataWidth", 8);
+			ports.add(new Port("data", 0, 0, dataWidth, OUTPUT));
+			ports.add(new Port("address", -140, 0, c.getInt("addrWidth", 8), INPUT));
+			ports.add(new Port("select", -90, 40, 1, INPUT));
+			if (c.name.equals("RAM")) {
+				String bus = c.get("bus", "combined");
+				ports.add(new Port("load", -50, 40, 1, INPUT));
+				ports.add(new Port("clear", -30, 40, 1, INPUT));
+				if (!bus.equals("asynch"))
+					ports.add(new Port("clock", -70, 40, 1, INPUT));
+				if (bus.equals("separate")) {
+					ports.add(new Port("store", -110, 40, 1, INPUT));
+					ports.add(new Port("in", -140, 20, dataWidth, INPUT));
+				}
+			}
+			break;
+		}
+		default:
+			throw new AssemblerException("Circuit " + def.name + ": " + c.where() + " is not supported");
+		}
+		return ports;
+	}
+
+	private static boolean isArithmetic(String name) {
+		return name.equals("Adder") || name.equals("Subtractor") || name.equals("Multiplier")
+				|| name.equals("Divider") || name.equals("Comparator") || name.equals("Shifter");
+	}
+
+	/**
+	 * Rotates a port from facing east to another facing.
+	 */
+	private static int[] rotate(int x, int y, String facing) {
+		switch (facing) {
+		case "north":
+			return new int[] {y, -x};
+		case "west":
+			return new int[] {-x, -y};
+		case "south":
+			return new int[] {-y, x};
+		default:
+			return new int[] {x, y};
+		}
+	}
+
+	/**
+	 * A gate's output is at its location, and its inputs are spread along
+	 * the back of the gate, by its size and number of inputs.
+	 */
+	private static void gatePorts(Component c, int width, String facing, List<Port> ports) {
+		int inputs = c.getInt("inputs", 5);
+		int size = c.getInt("size", 50);
+		int axis = size + (c.name.startsWith("XOR") || c.name.startsWith("XNOR") ? 10 : 0);
+
+		int skipStart;
+		int skipDistance;
+		int skipLowerEven = 10;
+		if (inputs <= 3) {
+			if (size < 40) {
+				skipStart = -5;
+				skipDistance = 10;
+				skipLowerEven = 10;
+			}
+			else if (size < 60 || inputs <= 2) {
+				skipStart = -10;
+				skipDistance = 20;
+				skipLowerEven = 20;
+			}
+			else {
+				skipStart = -15;
+				skipDistance = 30;
+				skipLowerEven = 30;
+			}
+		}
+		else if (inputs == 4 && size >= 60) {
+			skipStart = -5;
+			skipDistance = 20;
+			skipLowerEven = 0;
+		}
+		else {
+			skipStart = -5;
+			skipDistance = 10;
+		}
+
+		ports.add(new Port("out", 0, 0, width, OUTPUT));
+		for (int i = 0; i < inputs; i++) {
+			int dy;
+			if ((inputs & 1) == 1)
+				dy = skipStart * (inputs - 1) + skipDistance * i;
+			else {
+				dy = skipStart * inputs + skipDistance * i;
+				if (i >= inputs / 2)
+					dy += skipLowerEven;
+			}
+			int dx = axis + (c.get("negate" + i, "false").equals("true") ? 10 : 0);
+			int[] xy;
+			if (facing.equals("north"))
+				xy = new int[] {dy, dx};
+			else if (facing.equals("south"))
+				xy = new int[] {dy, -dx};
+			else if (facing.equals("west"))
+				xy = new int[] {dx, dy};
+			else
+				xy = new int[] {-dx, dy};
+			ports.add(new Port("in" + i, xy[0], xy[1], width, INPUT));
+		}
+	}
+
+	private static void multiplexerPorts(Component c, int width, String facing, List<Port> ports) {
+		int selectBits = c.getInt("select", 1);
+		int inputs = 1 << selectBits;
+		int m = c.get("selloc", "bl").equals("tr") ? -1 : 1;
+		int[] select;
+		if (inputs == 2) {
+			int[][] ends;
+			if (facing.equals("west")) {
+				ends = new int[][] {{30, -10}, {30, 10}};
+				select = new int[] {20, m * 20};
+			}
+			else if (facing.equals("north")) {
+				ends = new int[][] {{-10, 30}, {10, 30}};
+				select = new int[] {-m * 20, 20};
+			}
+			else if (facing.equals("south")) {
+				ends = new int[][] {{-10, -30}, {10, -30}};
+				select = new int[] {-m * 20, -20};
+			}
+			else {
+				ends = new int[][] {{-30, -10}, {-30, 10}};
+				select = new int[] {-20, m * 20};
+			}
+			for (int i = 0; i < 2; i++)
+				ports.add(new Port("in" + i, ends[i][0], ends[i][1], width, INPUT));
+		}
+		else {
+			int dx = -(inputs / 2) * 10;
+			int ddx = 10;
+			int dy = -(inputs / 2) * 10;
+			int ddy = 10;
+			if (facing.equals("west")) {
+				dx = 40;
+				ddx = 0;
+				select = new int[] {20, m * (dy + 10 * inputs)};
+			}
+			else if (facing.equals("north")) {
+				dy = 40;
+				ddy = 0;
+				select = new int[] {-m * dx, 20};
+			}
+			else if (facing.equals("south")) {
+				dy = -40;
+				ddy = 0;
+				select = new int[] {-m * dx, -20};
+			}
+			else {
+				dx = -40;
+				ddx = 0;
+				select = new int[] {-20, m * (dy + 10 * inputs)};
+			}
+			for (int i = 0; i < inputs; i++) {
+				ports.add(new Port("in" + i, dx, dy, width, INPUT));
+				dx += ddx;
+				dy += ddy;
+			}
+		}
+		ports.add(new Port("select", select[0], select[1], selectBits, INPUT));
+		if (c.get("enable", "true").equals("true")) {
+			int[] enable = rotate(10, 0, facing);
+			ports.add(new Port("enable", select[0] + enable[0], select[1] + enable[1], 1, INPUT));
+		}
+		ports.add(new Port("out", 0, 0, width, OUTPUT));
+	}
+
+	/**
+	 * Returns which end each bit of a splitter goes to, or -1 for none.
+	 */
+	static int[] splitterEnds(Component c) {
+		int fanout = c.getInt("fanout", 2);
+		int incoming = c.getInt("incoming", 2);
+		int[] ends = new int[incoming];
+		// Logisim's default: the bits are spread evenly over the ends, with
+		// the extra bits in the first ends.
+		int perEnd = incoming / fanout;
+		int extra = incoming % fanout;
+		int end = -1;
+		int left = 0;
+		for (int i = 0; i < incoming; i++) {
+			if (left == 0) {
+				end++;
+				left = perEnd + ((extra-- > 0) ? 1 : 0);
+			}
+			ends[i] = Math.min(end, fanout - 1);
+			left--;
+		}
+		for (int i = 0; i < incoming; i++) {
+			String v = c.attributes.get("bit" + i);
+			if (v != null)
+				ends[i] = v.equals("none") ? -1 : Integer.parseInt(v);
+		}
+		return ends;
+	}
+
+	/**
+	 * The combined end of a splitter is at its location.  The other ends
+	 * are 20 out, spread 10 apart to the left or right.
+	 */
+	private static void splitterPorts(Component c, List<Port> ports) {
+		int fanout = c.getInt("fanout", 2);
+		String facing = c.get("facing", "east");
+		String appear = c.get("appear", "left");
+		int justify = appear.equals("center") || appear.equals("legacy") ? 0 : appear.equals("right") ? 1 : -1;
+		int[] ends = splitterEnds(c);
+		int[] widths = new int[fanout];
+		for (int end : ends)
+			if (end >= 0)
+				widths[end]++;
+
+		int x;
+		int y;
+		int dx;
+		int dy;
+		if (facing.equals("north") || facing.equals("south")) {
+			int m = facing.equals("north") ? 1 : -1;
+			x = (justify == 0) ? 10 * ((fanout + 1) / 2 - 1) : (m * justify < 0) ? -10 : 10 * fanout;
+			y = -m * 20;
+			dx = -10;
+			dy = 0;
+		}
+		else {
+			int m = facing.equals("west") ? -1 : 1;
+			x = m * 20;
+			y = (justify == 0) ? -10 * (fanout / 2) : (m * justify > 0) ? 10 : -10 * fanout;
+			dx = 0;
+			dy = 10;
+		}
+		ports.add(new Port("combined", 0, 0, c.getInt("incoming", 2), INPUT));
+		for (int i = 0; i < fanout; i++)
+			ports.add(new Port("end" + i, x + dx * i, y + dy * i, widths[i], INPUT));
+	}
+
+	/**
+	 * Places the ports of a subcircuit as Logisim's default appearance
+	 * does.  Input pins face east and go on the west edge, outputs on the
+	 * east edge, and the location of the subcircuit is the first port on
+	 * the east edge.
+	 */
+	private List<Port> appearance(Definition def) throws AssemblerException {
+		if (def.appearance != null)
+			return def.appearance;
+		// edges in the order north, south, east, west
+		String[] facings = {"south", "north", "west", "east"};
+		ArrayList<ArrayList<Component>> edges = new ArrayList<ArrayList<Component>>();
+		for (int e = 0; e < 4; e++) {
+			ArrayList<Component> edge = new ArrayList<Component>();
+			for (Component pin : def.pins)
+				if (pin.get("facing", "east").equals(facings[e]))
+					edge.add(pin);
+			final boolean vertical = e >= 2;
+			edge.sort(new Comparator<Component>() {
+				public int compare(Component a, Component b) {
+					if (vertical)
+						return (a.y != b.y) ? Integer.compare(a.y, b.y) : Integer.compare(a.x, b.x);
+					return (a.x != b.x) ? Integer.compare(a.x, b.x) : Integer.compare(a.y, b.y);
+				}
+			});
+			edges.add(edge);
+		}
+		int north = edges.get(0).size();
+		int south = edges.get(1).size();
+		int east = edges.get(2).size();
+		int west = edges.get(3).size();
+		int maxVertical = Math.max(north, south);
+		int maxHorizontal = Math.max(east, west);
+		int[] offsets = {
+				offset(north, south, maxHorizontal), offset(south, north, maxHorizontal),
+				offset(east, west, maxVertical), offset(west, east, maxVertical)};
+		int width = dimension(maxVertical, maxHorizontal);
+		int height = dimension(maxHorizontal, maxVertical);
+
+		int ax = 0;
+		int ay = 0;
+		if (east > 0) {
+			ax = width;
+			ay = offsets[2];
+		}
+		else if (north > 0)
+			ax = offsets[0];
+		else if (west > 0)
+			ay = offsets[3];
+		else if (south > 0) {
+			ax = offsets[1];
+			ay = height;
+		}
+
+		HashMap<Component, Port> placed = new HashMap<Component, Port>();
+		for (int e = 0; e < 4; e++) {
+			List<Component> edge = edges.get(e);
+			for (int i = 0; i < edge.size(); i++) {
+				int x = (e == 2) ? width : (e == 3) ? 0 : offsets[e] + 10 * i;
+				int y = (e == 0) ? 0 : (e == 1) ? height : offsets[e] + 10 * i;
+				Component pin = edge.get(i);
+				placed.put(pin, new Port(pin.get("label", ""), x - ax, y - ay, pin.getInt("width", 1),
+						pin.get("output", "false").equals("true") ? OUTPUT : INPUT));
+			}
+		}
+		ArrayList<Port> ports = new ArrayList<Port>();
+		for (Component pin : def.pins)
+			ports.add(placed.get(pin));
+		def.appearance = ports;
+		return ports;
+	}
+
+	private static int offset(int facing, int opposite, int maxOthers) {
+		int maxThis = Math.max(facing, opposite);
+		int maxOffset;
+		if (maxThis <= 1)
+			maxOffset = (maxOthers == 0) ? 15 : 10;
+		else if (maxThis == 2)
+			maxOffset = 10;
+		else
+			maxOffset = (maxOthers == 0) ? 5 : 10;
+		return maxOffset + 10 * ((maxThis - facing) / 2);
+	}
+
+	private static int dimension(int maxThis, int maxOthers) {
+		if (maxThis < 3)
+			return 30;
+		return (maxOthers == 0) ? 10 * maxThis : 10 * maxThis + 10;
+	}
+
+	/*
+	 * Nets
+	 */
+
+	/**
+	 * Joins the points of a circuit into nets.  Wire ends join, a wire end
+	 * or port on the middle of a wire joins it, and ports at the same
+	 * point join.
+	 */
+	private void connect(Definition def) throws AssemblerException {
+		HashMap<Long, Integer> points = new HashMap<Long, Integer>();
+		ArrayList<Integer> uses = new ArrayList<Integer>();   // wires and ports at each point
+		ArrayList<int[]> at = new ArrayList<int[]>();
+		for (int[] w : def.wires)
+			for (int e = 0; e < 4; e += 2)
+				use(points, uses, at, w[e], w[e + 1]);
+		for (Component c : def.components) {
+			c.ports = ports(def, c);
+			for (Port port : c.ports)
+				use(points, uses, at, c.x + port.x, c.y + port.y);
+		}
+		int[] p = new int[at.size()];
+		for (int i = 0; i < p.length; i++)
+			p[i] = i;
+
+		for (int[] w : def.wires) {
+			int a = points.get(key(w[0], w[1]));
+			union(p, a, points.get(key(w[2], w[3])));
+			for (int i = 0; i < at.size(); i++) {
+				int[] xy = at.get(i);
+				if (inside(w, xy[0], xy[1])) {
+					union(p, a, i);
+					uses.set(i, uses.get(i) + 1);
+				}
+			}
+		}
+
+		// number the nets
+		HashMap<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+		def.netAt = new HashMap<Long, Integer>();
+		for (int i = 0; i < at.size(); i++) {
+			int root = root(p, i);
+			Integer n = numbers.get(root);
+			if (n == null) {
+				n = numbers.size();
+				numbers.put(root, n);
+			}
+			def.netAt.put(key(at.get(i)[0], at.get(i)[1]), n);
+		}
+
+		def.netWidth = new int[numbers.size()];
+		for (Component c : def.components) {
+			for (Port port : c.ports) {
+				int net = def.netAt.get(key(c.x + port.x, c.y + port.y));
+				if (def.netWidth[net] == 0)
+					def.netWidth[net] = port.width;
+				else if (def.netWidth[net] != port.width && port.width > 0)
+					throw new AssemblerException("Circuit " + def.name + ": " + c.where() + " port " + port.name
+							+ " is " + port.width + " bits, but is joined to " + def.netWidth[net] + " bits");
+			}
+		}
+
+		for (int[] w : def.wires)
+			for (int e = 0; e < 4; e += 2)
+				if (uses.get(points.get(key(w[e], w[e + 1]))) == 1)
+					warnings.add("Circuit " + def.name + ": the wire end at (" + w[e] + "," + w[e + 1]
+							+ ") is not joined to anything");
+	}
+
+	private static void use(HashMap<Long, Integer> points, ArrayList<Integer> uses, ArrayList<int[]> at,
+			int x, int y) {
+		Integer i = points.get(key(x, y));
+		if (i == null) {
+			points.put(key(x, y), at.size());
+			at.add(new int[] {x, y});
+			uses.add(1);
+		}
+		else
+			uses.set(i, uses.get(i) + 1);
+	}
+
+	/**
+	 * Returns true if a point is on a wire, but not at either end.
+	 */
+	private static boolean inside(int[] w, int x, int y) {
+		if (w[0] == w[2] && x == w[0])
+			return y > Math.min(w[1], w[3]) && y < Math.max(w[1], w[3]);
+		if (w[1] == w[3] && y == w[1])
+			return x > Math.min(w[0], w[2]) && x < Math.max(w[0], w[2]);
+		return false;
+	}
+
+	private static int root(int[] p, int i) {
+		while (p[i] != i)
+			i = p[i] = p[p[i]];
+		return i;
+	}
+
+	private static void union(int[] p, int a, int b) {
+		p[root(p, a)] = root(p, b);
+	}
+
+	/*
+	 * Flattening
+	 */
+
+	/**
+	 * Flattens a circuit and levelizes its combinational logic.
+	 *
+	 * @param name the circuit, or null for the main circuit
+	 */
+	public void flatten(String name) throws AssemblerException {
+		if (name == null)
+			name = main;
+		Definition def = definitions.get(name);
+		if (def == null)
+			throw new AssemblerException("There is no circuit " + name);
+		flatten(def, def.name, true, 0);
+
+		drivers = new Driver[bitCount];
+		for (Part part : parts) {
+			for (int port = 0; port < part.bits.length; port++) {
+				if (part.port(port).direction != OUTPUT)
+					continue;
+				for (int bit = 0; bit < part.bits[port].length; bit++) {
+					int root = find(part.bits[port][bit]);
+					if (drivers[root] != null)
+						throw new AssemblerException(part.path + " and " + drivers[root].part.path
+								+ " both drive the same wire");
+					drivers[root] = new Driver(part, port, bit);
+				}
+			}
+		}
+		levelize();
+	}
+
+	/**
+	 * Makes the Parts for a circuit.
+	 *
+	 * @return the bits of each pin of the circuit
+	 */
+	private int[][] flatten(Definition def, String path, boolean top, int depth) throws AssemblerException {
+		if (depth > 32)
+			throw new AssemblerException("Circuit " + def.name + " contains itself");
+		int[][] nets = new int[def.netWidth.length][];
+		for (int n = 0; n < nets.length; n++) {
+			nets[n] = new int[def.netWidth[n]];
+			for (int b = 0; b < nets[n].length; b++)
+				nets[n][b] = newBit();
+		}
+
+		for (Component c : def.components) {
+			int[][] bits = new int[c.ports.size()][];
+			for (int i = 0; i < bits.length; i++) {
+				Port port = c.ports.get(i);
+				int[] net = nets[def.netAt.get(key(c.x + port.x, c.y + port.y))];
+				bits[i] = Arrays.copyOf(net, Math.min(net.length, port.width));
+			}
+
+			Definition sub = definitions.get(c.name);
+			if (sub != null) {
+				int[][] pins = flatten(sub, path + "/" + c.name + "(" + c.x + "," + c.y + ")", false, depth + 1);
+				for (int i = 0; i < pins.length; i++)
+					for (int b = 0; b < Math.min(pins[i].length, bits[i].length); b++)
+						union(pins[i][b], bits[i][b]);
+			}
+			else if (c.name.equals("Splitter")) {
+				int[] ends = splitterEnds(c);
+				int[] next = new int[bits.length];
+				for (int b = 0; b < ends.length && b < bits[0].length; b++) {
+					if (ends[b] < 0)
+						continue;
+					int[] end = bits[1 + ends[b]];
+					if (next[ends[b]] < end.length)
+						union(bits[0][b], end[next[ends[b]]++]);
+				}
+			}
+			else if (!c.name.equals("Pin") || top)
+				parts.add(new Part(parts.size(), c, path + "/" + c.where(), bits));
+		}
+
+		int[][] pins = new int[def.pins.size()][];
+		for (int i = 0; i < pins.length; i++) {
+			Component pin = def.pins.get(i);
+			pins[i] = nets[def.netAt.get(key(pin.x, pin.y))];
+		}
+		return pins;
+	}
+
+	private int newBit() {
+		if (bitCount == parent.length)
+			parent = Arrays.copyOf(parent, 2 * parent.length);
+		parent[bitCount] = bitCount;
+		return bitCount++;
+	}
+
+	int find(int bit) {
+		while (parent[bit] != bit)
+			bit = parent[bit] = parent[parent[bit]];
+		return bit;
+	}
+
+	private void union(int a, int b) {
+		parent[find(a)] = find(b);
+	}
+
+	/**
+	 * Returns true if a Part's outputs are only changed by the clock, or
+	 * never change, so they start the levels.
+	 */
+	static boolean isSource(Part part) {
+		switch (part.type()) {
+		case "Register":
+		case "Constant":
+		case "Clock":
+		case "Button":
+		case "Pin":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Returns true if all the Parts driving a Part's inputs have a level.
+	 */
+	private boolean inputsReady(Part part) {
+		for (int port = 0; port < part.bits.length; port++) {
+			if (part.port(port).direction != INPUT)
+				continue;
+			for (int bit : part.bits[port]) {
+				Driver d = drivers[find(bit)];
+				if (d != null && d.part.level < 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts the combinational Parts by level.
+	 */
+	private void levelize() throws AssemblerException {
+		order = new ArrayList<Part>();
+		ArrayList<Part> left = new ArrayList<Part>();
+		for (Part part : parts) {
+			part.level = isSource(part) ? 0 : -1;
+			if (part.level < 0)
+				left.add(part);
+		}
+		levels = 0;
+		while (!left.isEmpty()) {
+			ArrayList<Part> ready = new ArrayList<Part>();
+			for (Part part : left)
+				if (inputsReady(part))
+					ready.add(part);
+			if (ready.isEmpty())
+				throw new AssemblerException("There is a loop in the combinational logic through " + left.get(0).path);
+			levels++;
+			for (Part part : ready)
+				part.level = levels;
+			order.addAll(ready);
+			left.removeAll(ready);
+		}
+	}
+}
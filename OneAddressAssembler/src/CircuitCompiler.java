@@ -0,0 +1,866 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * purpose This class compiles a circuit in a Logisim .circ file, such as
+ *         CPU-Main in OneAddress.circ, into a Java class that simulates the
+ *         hardware one clock cycle at a time.  The compiled simulator runs
+ *         the .mc and .dat images from the assembler, and can be run in
+ *         lockstep with the Simulator, which is written from the ISA, to
+ *         find where the hardware and the assembler's encodings differ.
+ *
+ * Procedure
+ *          1 - The Circuit reads the file, flattens the circuit and sorts
+ *              its combinational logic by level.
+ *          2 - Each clock cycle is made into straight line Java code.  Each
+ *              output of the combinational logic is a local variable,
+ *              computed in level order from the registers and memories.
+ *              Wires, splitters and subcircuit pins are not simulated, as
+ *              they only pick bits out of the outputs.  An output that only
+ *              goes to one input of a multiplexer is computed in the case
+ *              of the multiplexer that selects it, so the ALU only computes
+ *              the operation the instruction asks for.
+ *          3 - At the end of the cycle the registers and memories driven
+ *              by the Clock are written, as on the rising edge.  If a cycle
+ *              changes nothing, the circuit has stopped (a br to itself)
+ *              and the cycle is not counted, as in the Simulator.
+ *          4 - The source is compiled with the JDK's compiler and loaded,
+ *              or written to a file with -o to be compiled later.
+ *          5 - In lockstep, the compiled simulator and the Simulator each
+ *              do one instruction, and the PC, accumulator and the data
+ *              word stored are compared after every cycle.
+ *
+ *         The registers labeled PC and AC are the PC and accumulator, the
+ *         RAM addressed by PC is the text memory, and the other RAM is the
+ *         data memory.
+ *
+ *         Usage: java CircuitCompiler [-c circuit] [-o directory] [-name class]
+ *                    [-max cycles] [-lockstep] [-s program.asm] [-v]
+ *                    file.circ [image.mc [image.dat]]
+ *
+ *         -c picks the circuit (default the main circuit), -v lists the
+ *         levels and the warnings about wires.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class CircuitCompiler {
+
+	/**
+	 * A simulator made by the CircuitCompiler.
+	 */
+	public interface Model {
+		/**
+		 * Puts the images in the text and data memories, and clears the
+		 * registers.
+		 */
+		void load(int[] text, int[] data);
+
+		/**
+		 * Runs until the circuit stops or maxCycles cycles have run.
+		 *
+		 * @return the number of cycles run
+		 */
+		long run(long maxCycles);
+
+		boolean isHalted();
+
+		long getCycles();
+
+		int getPc();
+
+		int getAc();
+
+		int read(int address);
+
+		/**
+		 * Returns the data address written by the last cycle, or -1.
+		 */
+		int getLastWrite();
+	}
+
+	private final Circuit circuit;
+	private final String className;
+	private final String source;
+
+	// names of the outputs, and the outputs computed in a multiplexer case
+	private final HashMap<String, String> names = new HashMap<String, String>();
+	private final HashMap<String, Integer> consumers = new HashMap<String, Integer>();
+	private final HashMap<String, String> inlined = new HashMap<String, String>();
+
+	private Circuit.Part pcRegister;
+	private Circuit.Part acRegister;
+	private Circuit.Part textMemory;
+	private Circuit.Part dataMemory;
+
+	/**
+	 * Compiles a flattened circuit into Java source.
+	 *
+	 * @param circuit the circuit, flattened
+	 * @param file the name of the .circ file, for the comments
+	 * @param className the name of the class to make
+	 */
+	public CircuitCompiler(Circuit circuit, String file, String className) throws AssemblerException {
+		this.circuit = circuit;
+		this.className = className;
+		findArchitecture();
+		countConsumers();
+		this.source = generate(file);
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Finds the PC and AC registers and the text and data memories.
+	 */
+	private void findArchitecture() throws AssemblerException {
+		ArrayList<Circuit.Part> memories = new ArrayList<Circuit.Part>();
+		for (Circuit.Part part : circuit.getParts()) {
+			if (part.type().equals("Register") && part.component.get("label", "").equals("PC"))
+				pcRegister = part;
+			else if (part.type().equals("Register") && part.component.get("label", "").equals("AC"))
+				acRegister = part;
+			else if (part.type().equals("RAM"))
+				memories.add(part);
+		}
+		if (pcRegister == null || acRegister == null)
+			throw new AssemblerException("The circuit must have registers labeled PC and AC");
+		for (Circuit.Part ram : memories) {
+			Circuit.Driver d = circuit.driver(ram.bits[ram.portIndex("address")][0]);
+			if (d != null && d.part == pcRegister)
+				textMemory = ram;
+			else if (dataMemory == null)
+				dataMemory = ram;
+		}
+		if (textMemory == null || dataMemory == null)
+			throw new AssemblerException("The circuit must have a text RAM addressed by the PC and a data RAM");
+	}
+
+	private static String key(Circuit.Part part, int port) {
+		return part.id + "." + port;
+	}
+
+	/**
+	 * Counts the input ports each output goes to, and picks the outputs
+	 * that are only used by one multiplexer input.
+	 */
+	private void countConsumers() {
+		for (Circuit.Part part : circuit.getParts()) {
+			for (int port = 0; port < part.bits.length; port++) {
+				if (part.port(port).direction != Circuit.INPUT)
+					continue;
+				ArrayList<String> seen = new ArrayList<String>();
+				for (int bit : part.bits[port]) {
+					Circuit.Driver d = circuit.driver(bit);
+					if (d != null && !seen.contains(key(d.part, d.port))) {
+						seen.add(key(d.part, d.port));
+						Integer n = consumers.get(key(d.part, d.port));
+						consumers.put(key(d.part, d.port), (n == null) ? 1 : n + 1);
+					}
+				}
+			}
+		}
+
+		for (Circuit.Part part : circuit.getOrder()) {
+			for (int port = 0; port < part.bits.length; port++) {
+				Circuit.Port p = part.port(port);
+				if (p.direction == Circuit.OUTPUT)
+					names.put(key(part, port), "v" + part.id + (part.bits.length > 1 && countOutputs(part) > 1 ? "_" + p.name : ""));
+			}
+		}
+		for (Circuit.Part part : circuit.getParts())
+			if (part.type().equals("Register"))
+				names.put(key(part, 0), "r" + part.id);
+
+		for (Circuit.Part mux : circuit.getOrder()) {
+			if (!mux.type().equals("Multiplexer"))
+				continue;
+			for (int port = 0; port < mux.bits.length; port++) {
+				if (!mux.port(port).name.startsWith("in"))
+					continue;
+				Circuit.Driver d = circuit.driver(mux.bits[port][0]);
+				if (d == null || d.part.type().equals("Multiplexer") || Circuit.isSource(d.part))
+					continue;
+				String name = names.get(key(d.part, d.port));
+				if (consumers.get(key(d.part, d.port)) == 1 && value(mux.bits[port]).equals(name)
+						&& d.part.bits[d.port].length == mux.bits[port].length)
+					inlined.put(key(d.part, d.port), key(mux, port));
+			}
+		}
+	}
+
+	private static int countOutputs(Circuit.Part part) {
+		int n = 0;
+		for (int port = 0; port < part.bits.length; port++)
+			if (part.port(port).direction == Circuit.OUTPUT)
+				n++;
+		return n;
+	}
+
+	private static String mask(int width) {
+		return (width >= 32) ? "0xffffffff" : "0x" + Long.toHexString((1L << width) - 1);
+	}
+
+	/**
+	 * Returns the value of a constant, clock, button or input pin Part.
+	 * Clocks, buttons and input pins are 0.
+	 */
+	private static long constant(Circuit.Part part) {
+		return part.type().equals("Constant") ? part.component.getInt("value", 1) & 0xFFFFFFFFL : 0;
+	}
+
+	private boolean isFloating(int[] bits) {
+		for (int bit : bits)
+			if (circuit.driver(bit) != null)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns a Java expression for the value of some bits, bit 0 first.
+	 * Runs of bits from the same output are shifted and masked together,
+	 * and a bit that is repeated, as in a sign extension, is copied with
+	 * a negate.  Floating bits are 0.
+	 */
+	private String value(int[] bits) {
+		StringBuilder sb = new StringBuilder();
+		long constant = 0;
+		int i = 0;
+		while (i < bits.length) {
+			Circuit.Driver d = circuit.driver(bits[i]);
+			if (d == null) {
+				i++;
+				continue;
+			}
+			if (Circuit.isSource(d.part) && !d.part.type().equals("Register")) {
+				constant |= ((constant(d.part) >>> d.bit) & 1) << i;
+				i++;
+				continue;
+			}
+			int j = i + 1;
+			boolean repeat = false;
+			while (j < bits.length) {
+				Circuit.Driver e = circuit.driver(bits[j]);
+				if (e == null || e.part != d.part || e.port != d.port)
+					break;
+				if (j == i + 1 && e.bit == d.bit)
+					repeat = true;
+				if (e.bit != (repeat ? d.bit : d.bit + j - i))
+					break;
+				j++;
+			}
+			String name = names.get(key(d.part, d.port));
+			int width = d.part.bits[d.port].length;
+			String term;
+			if (repeat)
+				term = "(-((" + name + " >>> " + d.bit + ") & 1) & " + mask(j - i) + ")";
+			else {
+				term = name;
+				if (d.bit > 0)
+					term = "(" + term + " >>> " + d.bit + ")";
+				if (d.bit + j - i < width)
+					term = "(" + term + " & " + mask(j - i) + ")";
+			}
+			if (i > 0)
+				term = "(" + term + " << " + i + ")";
+			if (sb.length() > 0)
+				sb.append(" | ");
+			sb.append(term);
+			i = j;
+		}
+		if (constant != 0 || sb.length() == 0) {
+			if (sb.length() > 0)
+				sb.append(" | ");
+			sb.append("0x").append(Long.toHexString(constant));
+		}
+		return (sb.indexOf(" | ") >= 0) ? "(" + sb + ")" : sb.toString();
+	}
+
+	/**
+	 * Returns the value of an input port, or the value given if the port
+	 * is floating.
+	 */
+	private String input(Circuit.Part part, String port, String floating) {
+		int i = part.portIndex(port);
+		if (i < 0 || isFloating(part.bits[i]))
+			return floating;
+		return value(part.bits[i]);
+	}
+
+	/**
+	 * Returns a Java expression for an output of a combinational Part.
+	 */
+	private String expression(Circuit.Part part, int port) throws AssemblerException {
+		Circuit.Component c = part.component;
+		String out = part.port(port).name;
+		int width = part.bits[port].length;
+		String a = input(part, "a", "0x0");
+		String b = input(part, "b", "0x0");
+		switch (part.type()) {
+		case "AND Gate":
+		case "OR Gate":
+		case "XOR Gate":
+		case "NAND Gate":
+		case "NOR Gate":
+		case "XNOR Gate": {
+			String op = part.type().startsWith("AND") || part.type().startsWith("NAND") ? " & "
+					: part.type().startsWith("OR") || part.type().startsWith("NOR") ? " | " : " ^ ";
+			if (op.equals(" ^ ") && c.get("xor", "0x1").equals("0x1") && c.getInt("inputs", 5) > 2)
+				throw new AssemblerException(part.path + ": XOR gates with more than 2 inputs must be set to odd parity");
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < part.bits.length; i++) {
+				Circuit.Port p = part.port(i);
+				if (p.direction != Circuit.INPUT || isFloating(part.bits[i]))
+					continue;
+				String v = value(part.bits[i]);
+				if (c.get("negate" + p.name.substring(2), "false").equals("true"))
+					v = "(~" + v + " & " + mask(width) + ")";
+				sb.append((sb.length() > 0) ? op : "").append(v);
+			}
+			if (sb.length() == 0)
+				return "0";
+			if (part.type().startsWith("N") || part.type().startsWith("XN"))
+				return "(~(" + sb + ") & " + mask(width) + ")";
+			return sb.toString();
+		}
+		case "NOT Gate":
+			return "(~" + input(part, "in", "0x0") + " & " + mask(width) + ")";
+		case "Adder":
+		case "Subtractor":
+		case "Multiplier":
+		{
+			String carry = input(part, "carryIn", "0x0");
+			return arithmetic(part.type(), out, a, b, carry.equals("0x0") ? null : carry, width, part.bits[0].length);
+		}
+		case "Divider": {
+			// Logisim divides unsigned, by 1 when the divisor is 0
+			int w = part.bits[0].length;
+			String upper = input(part, "upper", null);
+			String n = (upper == null) ? a : "(((long) " + upper + " << " + w + ") | " + a + ")";
+			String den = (w == 32) ? "((long) " + b + " & 0xffffffffL)" : b;
+			if (upper == null && w < 32)
+				return out.equals("out") ? "(" + b + " == 0 ? " + a + " : " + a + " / " + b + ")"
+						: "(" + b + " == 0 ? 0 : " + a + " % " + b + ")";
+			return out.equals("out") ? "(int) ((" + b + " == 0 ? " + n + " : " + n + " / " + den + ") & " + mask(w) + ")"
+					: "(int) (" + b + " == 0 ? 0 : " + n + " % " + den + ")";
+		}
+		case "Comparator": {
+			int w = part.bits[0].length;
+			String x = a;
+			String y = b;
+			if (c.get("mode", "twosComplement").equals("twosComplement") && w < 32) {
+				x = "(" + a + " << " + (32 - w) + " >> " + (32 - w) + ")";
+				y = "(" + b + " << " + (32 - w) + " >> " + (32 - w) + ")";
+			}
+			else if (w == 32) {
+				x = "(" + a + " ^ 0x80000000)";
+				y = "(" + b + " ^ 0x80000000)";
+			}
+			if (out.equals("eq"))
+				return "(" + a + " == " + b + " ? 1 : 0)";
+			String op = out.equals("gt") ? " > " : " < ";
+			return "(" + x + op + y + " ? 1 : 0)";
+		}
+		case "Shifter": {
+			int w = part.bits[0].length;
+			switch (c.get("shift", "ll")) {
+			case "lr":
+				return "(" + a + " >>> " + b + ")";
+			case "ar":
+				return "((" + a + " << " + (32 - w) + " >> " + (32 - w) + " >> " + b + ") & " + mask(w) + ")";
+			case "rl":
+				return "(((" + a + " << " + b + ") | (" + a + " >>> (" + w + " - " + b + "))) & " + mask(w) + ")";
+			case "rr":
+				return "(((" + a + " >>> " + b + ") | (" + a + " << (" + w + " - " + b + "))) & " + mask(w) + ")";
+			default:
+				return "((" + a + " << " + b + ") & " + mask(w) + ")";
+			}
+		}
+		case "RAM":
+		case "ROM": {
+			String read = "m" + part.id + "[" + input(part, "address", "0x0") + "]";
+			String select = input(part, "select", "0x1");
+			String load = input(part, "load", "0x1");
+			if (!select.equals("0x1") && !select.equals("0x1"))
+				read = "(" + select + " == 0 ? 0 : " + read + ")";
+			if (!load.equals("0x1") && !load.equals("0x1"))
+				read = "(" + load + " == 0 ? 0 : " + read + ")";
+			return read;
+		}
+		default:
+			throw new AssemblerException(part.path + " is not supported in the compiled simulator");
+		}
+	}
+
+	/**
+	 * Returns the output of an Adder, Subtractor or Multiplier.  carry is
+	 * null if the carry in is not used.
+	 */
+	private static String arithmetic(String type, String out, String a, String b, String carry, int width, int w) {
+		String op = type.equals("Adder") ? " + " : type.equals("Subtractor") ? " - " : " * ";
+		String c = (carry == null) ? "" : (type.equals("Subtractor") ? " - " : " + ") + carry;
+		if (out.equals("out"))
+			return "((" + a + op + b + c + ") & " + mask(width) + ")";
+		if (type.equals("Subtractor"))
+			return "(((long) " + a + op + b + c + ") < 0 ? 1 : 0)";
+		return "((int) (((long) " + a + op + b + c + ") >>> " + w + ") & " + mask(width) + ")";
+	}
+
+	/*
+	 * Code generation
+	 */
+
+	private String generate(String file) throws AssemblerException {
+		StringBuilder sb = new StringBuilder();
+		List<Circuit.Part> parts = circuit.getParts();
+		sb.append("/**\n");
+		sb.append(" * purpose This class was made by the CircuitCompiler from ").append(new File(file).getName()).append(",\n");
+		sb.append(" *         circuit ").append(parts.get(0).path.split("/")[0]).append(".  It simulates the circuit one clock\n");
+		sb.append(" *         cycle at a time.  Do not change it; run the CircuitCompiler again.\n");
+		sb.append(" *\n");
+		sb.append(" *         ").append(parts.size()).append(" components, ").append(circuit.getLevels())
+			.append(" levels of combinational logic.\n");
+		sb.append(" */\n");
+		sb.append("public final class ").append(className).append(" implements CircuitCompiler.Model {\n\n");
+
+		// state
+		ArrayList<Circuit.Part> registers = new ArrayList<Circuit.Part>();
+		ArrayList<Circuit.Part> memories = new ArrayList<Circuit.Part>();
+		for (Circuit.Part part : parts) {
+			if (part.type().equals("Register")) {
+				registers.add(part);
+				sb.append("\t// ").append(part.path).append(' ').append(part.component.get("label", "")).append('\n');
+				sb.append("\tprivate int r").append(part.id).append(";\n");
+			}
+			else if (part.type().equals("RAM") || part.type().equals("ROM")) {
+				memories.add(part);
+				int size = 1 << part.bits[part.portIndex("address")].length;
+				sb.append("\t// ").append(part.path).append((part == textMemory) ? ", the text memory"
+						: (part == dataMemory) ? ", the data memory" : "").append('\n');
+				if (part.type().equals("ROM"))
+					sb.append("\tprivate static final int[] m").append(part.id).append(" = ")
+						.append(contents(part, size)).append(";\n");
+				else
+					sb.append("\tprivate final int[] m").append(part.id).append(" = new int[").append(size).append("];\n");
+			}
+		}
+		sb.append("\tprivate long cycles;\n");
+		sb.append("\tprivate boolean halted;\n");
+		sb.append("\tprivate int lastWrite = -1;\n\n");
+
+		// load
+		sb.append("\tpublic void load(int[] text, int[] data) {\n");
+		for (Circuit.Part part : memories) {
+			if (!part.type().equals("RAM"))
+				continue;
+			String m = "m" + part.id;
+			sb.append("\t\tjava.util.Arrays.fill(").append(m).append(", 0);\n");
+			if (part == textMemory || part == dataMemory) {
+				String image = (part == textMemory) ? "text" : "data";
+				sb.append("\t\tfor (int i = 0; i < Math.min(").append(image).append(".length, ").append(m)
+					.append(".length); i++)\n");
+				sb.append("\t\t\t").append(m).append("[i] = ").append(image).append("[i] & ")
+					.append(mask(part.bits[0].length)).append(";\n");
+			}
+		}
+		for (Circuit.Part part : registers)
+			sb.append("\t\tr").append(part.id).append(" = 0;\n");
+		sb.append("\t\tcycles = 0;\n\t\thalted = false;\n\t\tlastWrite = -1;\n\t}\n\n");
+
+		// run
+		sb.append("\tpublic long run(long maxCycles) {\n");
+		for (Circuit.Part part : registers)
+			sb.append("\t\tint r").append(part.id).append(" = this.r").append(part.id).append(";\n");
+		for (Circuit.Part part : memories)
+			if (part.type().equals("RAM"))
+				sb.append("\t\tfinal int[] m").append(part.id).append(" = this.m").append(part.id).append(";\n");
+		sb.append("\t\tint lastWrite = this.lastWrite;\n");
+		sb.append("\t\tboolean halted = false;\n");
+		sb.append("\t\tlong n = 0;\n\n");
+		sb.append("\t\twhile (n < maxCycles) {\n");
+
+		int level = 0;
+		for (Circuit.Part part : circuit.getOrder()) {
+			if (part.level != level) {
+				level = part.level;
+				sb.append("\t\t\t// level ").append(level).append('\n');
+			}
+			emit(part, sb);
+		}
+
+		// the clock edge
+		sb.append("\t\t\t// the clock\n");
+		StringBuilder same = new StringBuilder();
+		StringBuilder commit = new StringBuilder();
+		for (Circuit.Part part : registers) {
+			if (!isClocked(part))
+				continue;
+			String r = "r" + part.id;
+			String next = input(part, "in", "0x0");
+			String enable = input(part, "enable", null);
+			String clear = input(part, "clear", null);
+			if (enable != null && !enable.equals("0x1"))
+				next = "(" + enable + " == 0 ? " + r + " : " + next + ")";
+			if (clear != null && !clear.equals("0x0"))
+				next = "(" + clear + " != 0 ? 0 : " + next + ")";
+			sb.append("\t\t\tint n").append(part.id).append(" = ").append(next).append(";\n");
+			same.append((same.length() > 0) ? " && " : "").append("n").append(part.id).append(" == ").append(r);
+			commit.append("\t\t\t").append(r).append(" = n").append(part.id).append(";\n");
+		}
+		for (Circuit.Part part : memories) {
+			if (!part.type().equals("RAM") || !isClocked(part))
+				continue;
+			String store;
+			String in;
+			if (part.component.get("bus", "combined").equals("separate")) {
+				store = input(part, "store", "0x1");
+				in = input(part, "in", "0x0");
+			}
+			else {
+				if (!input(part, "load", "0x1").equals("0x1"))
+					throw new AssemblerException(part.path + ": RAMs that store from a shared data bus are not supported");
+				continue;
+			}
+			String select = input(part, "select", "0x1");
+			String write = (select.equals("0x1") || select.equals("0x1")) ? store
+					: "(" + store + " & " + select + ")";
+			String m = "m" + part.id;
+			sb.append("\t\t\tboolean w").append(part.id).append(" = ").append(write).append(" != 0;\n");
+			sb.append("\t\t\tint a").append(part.id).append(" = ").append(input(part, "address", "0x0")).append(";\n");
+			sb.append("\t\t\tint d").append(part.id).append(" = ").append(in).append(";\n");
+			same.append((same.length() > 0) ? " && " : "").append("(!w").append(part.id).append(" || ")
+				.append(m).append("[a").append(part.id).append("] == d").append(part.id).append(")");
+			if (part == dataMemory)
+				commit.insert(0, "\t\t\tlastWrite = w" + part.id + " ? a" + part.id + " : -1;\n");
+			commit.append("\t\t\tif (w").append(part.id).append(")\n");
+			commit.append("\t\t\t\t").append(m).append("[a").append(part.id).append("] = d").append(part.id).append(";\n");
+		}
+		if (same.length() > 0) {
+			sb.append("\t\t\tif (").append(same).append(") {\n");
+			sb.append("\t\t\t\thalted = true;   // nothing changes, so the circuit has stopped\n");
+			sb.append("\t\t\t\tbreak;\n\t\t\t}\n");
+		}
+		sb.append(commit);
+		sb.append("\t\t\tn++;\n\t\t}\n\n");
+
+		for (Circuit.Part part : registers)
+			sb.append("\t\tthis.r").append(part.id).append(" = r").append(part.id).append(";\n");
+		sb.append("\t\tthis.lastWrite = lastWrite;\n");
+		sb.append("\t\tthis.halted = halted;\n");
+		sb.append("\t\tthis.cycles += n;\n");
+		sb.append("\t\treturn n;\n\t}\n\n");
+
+		sb.append("\tpublic boolean isHalted() {\n\t\treturn halted;\n\t}\n\n");
+		sb.append("\tpublic long getCycles() {\n\t\treturn cycles;\n\t}\n\n");
+		sb.append("\tpublic int getPc() {\n\t\treturn r").append(pcRegister.id).append(";\n\t}\n\n");
+		sb.append("\tpublic int getAc() {\n\t\treturn r").append(acRegister.id).append(";\n\t}\n\n");
+		sb.append("\tpublic int read(int address) {\n\t\treturn m").append(dataMemory.id).append("[address];\n\t}\n\n");
+		sb.append("\tpublic int getLastWrite() {\n\t\treturn lastWrite;\n\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Returns true if a register or RAM is clocked by a Clock, or false
+	 * if its clock is not joined to anything.
+	 */
+	private boolean isClocked(Circuit.Part part) throws AssemblerException {
+		int port = part.portIndex("clock");
+		if (port < 0 || isFloating(part.bits[port]))
+			return false;
+		Circuit.Driver d = circuit.driver(part.bits[port][0]);
+		if (d == null || !d.part.type().equals("Clock"))
+			throw new AssemblerException(part.path + " is not clocked by a Clock; gated clocks are not supported");
+		return true;
+	}
+
+	/**
+	 * Writes the Java for a combinational Part.
+	 */
+	private void emit(Circuit.Part part, StringBuilder sb) throws AssemblerException {
+		if (part.type().equals("Multiplexer")) {
+			emitMultiplexer(part, sb);
+			return;
+		}
+		for (int port = 0; port < part.bits.length; port++) {
+			if (part.port(port).direction != Circuit.OUTPUT)
+				continue;
+			String key = key(part, port);
+			if (consumers.get(key) == null || inlined.containsKey(key))
+				continue;
+			sb.append("\t\t\tint ").append(names.get(key)).append(" = ").append(expression(part, port))
+				.append(";   // ").append(part.path).append('\n');
+		}
+	}
+
+	private void emitMultiplexer(Circuit.Part mux, StringBuilder sb) throws AssemblerException {
+		int out = mux.portIndex("out");
+		String name = names.get(key(mux, out));
+		if (consumers.get(key(mux, out)) == null)
+			return;
+		String select = input(mux, "select", null);
+		String enable = input(mux, "enable", "0x1");
+		ArrayList<String> cases = new ArrayList<String>();
+		for (int port = 0; port < mux.bits.length; port++) {
+			if (!mux.port(port).name.startsWith("in"))
+				continue;
+			Circuit.Driver d = circuit.driver(mux.bits[port][0]);
+			if (d != null && key(mux, port).equals(inlined.get(key(d.part, d.port))))
+				cases.add(expression(d.part, d.port));
+			else
+				cases.add(value(mux.bits[port]));
+		}
+
+		String indent = "\t\t\t";
+		sb.append(indent).append("int ").append(name).append(";   // ").append(mux.path).append('\n');
+		if (select == null)
+			sb.append(indent).append(name).append(" = 0;\n");
+		else if (cases.size() == 2)
+			sb.append(indent).append(name).append(" = (").append(select).append(" == 0) ? ").append(cases.get(0))
+				.append(" : ").append(cases.get(1)).append(";\n");
+		else {
+			sb.append(indent).append("switch (").append(select).append(") {\n");
+			for (int i = 0; i < cases.size(); i++) {
+				if (cases.get(i).equals("0x0"))
+					continue;
+				sb.append(indent).append("case ").append(i).append(":\n");
+				sb.append(indent).append('\t').append(name).append(" = ").append(cases.get(i)).append(";\n");
+				sb.append(indent).append("\tbreak;\n");
+			}
+			sb.append(indent).append("default:\n");
+			sb.append(indent).append('\t').append(name).append(" = 0;\n");
+			sb.append(indent).append("}\n");
+		}
+		if (!enable.equals("0x1")) {
+			sb.append(indent).append("if (").append(enable).append(" == 0)\n");
+			sb.append(indent).append('\t').append(name).append(" = 0;\n");
+		}
+	}
+
+	/**
+	 * Returns a Java array of the contents of a ROM.  The contents are
+	 * "addr/data: a d" then hex words, where n*w is n copies of w.
+	 */
+	private static String contents(Circuit.Part part, int size) {
+		int[] words = new int[size];
+		String[] tokens = part.component.get("contents", "").trim().split("\\s+");
+		int address = 0;
+		for (int i = 3; i < tokens.length && address < size; i++) {
+			String t = tokens[i];
+			int star = t.indexOf('*');
+			int count = (star < 0) ? 1 : Integer.parseInt(t.substring(0, star));
+			int word = (int) Long.parseLong(t.substring(star + 1), 16);
+			for (int j = 0; j < count && address < size; j++)
+				words[address++] = word;
+		}
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < size; i++)
+			sb.append((i > 0) ? ", " : "").append("0x").append(Integer.toHexString(words[i]));
+		return sb.append("}").toString();
+	}
+
+	/*
+	 * Compiling and running
+	 */
+
+	/**
+	 * Compiles the source with the JDK's compiler and makes a Model.
+	 */
+	public Model newModel() throws IOException, AssemblerException {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null)
+			throw new AssemblerException("There is no Java compiler; run with a JDK, or use -o to write the source");
+		File dir = Files.createTempDirectory("circuit").toFile();
+		File file = new File(dir, className + ".java");
+		write(file);
+		if (javac.run(null, null, System.err, "-classpath", System.getProperty("java.class.path"),
+				"-d", dir.getPath(), file.getPath()) != 0)
+			throw new AssemblerException("The compiled simulator did not compile");
+		URLClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, CircuitCompiler.class.getClassLoader());
+		try {
+			return (Model) loader.loadClass(className).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new AssemblerException("The compiled simulator could not be loaded", e);
+		}
+	}
+
+	public void write(File file) throws IOException {
+		Writer out = new FileWriter(file);
+		try {
+			out.write(source);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Runs a Model and the Simulator in lockstep, and prints the first
+	 * cycle where they differ.
+	 *
+	 * @return true if they did not differ
+	 */
+	public static boolean lockstep(Model model, Program program, long maxCycles, PrintStream out) {
+		Simulator sim = new Simulator(program);
+		Disassembler disassembler = new Disassembler(program.getSymbols(), false);
+		model.load(program.text, program.data);
+		for (long cycle = 0; cycle < maxCycles; cycle++) {
+			int pc = sim.getPc();
+			int ac = sim.getAc();
+			boolean stepped = sim.step();
+			long n = model.run(1);
+			if (n == 0 && (!stepped || (sim.getPc() == pc && sim.getAc() == ac))) {
+				out.println("No differences in " + cycle + " cycles; both stopped at PC = " + pc);
+				return compareData(model, sim, cycle, out);
+			}
+
+			String problem = null;
+			if (!stepped)
+				problem = "the Simulator halted, but the circuit did not";
+			else if (n == 0)
+				problem = "the circuit stopped, but the Simulator did not";
+			else if (model.getPc() != sim.getPc())
+				problem = "PC is " + model.getPc() + " in the circuit, " + sim.getPc() + " in the Simulator";
+			else if (model.getAc() != sim.getAc())
+				problem = "AC is " + Alu.toSigned(model.getAc()) + " in the circuit, "
+						+ Alu.toSigned(sim.getAc()) + " in the Simulator";
+			else {
+				int address = model.getLastWrite();
+				int instruction = program.code[pc];
+				if ((instruction & 0xFF) == Program.STOR && address != instruction >>> 8)
+					problem = "the Simulator stored to " + (instruction >>> 8) + ", the circuit to " + address;
+				else if (address >= 0 && model.read(address) != sim.read(address))
+					problem = "data[" + address + "] is " + Alu.toSigned(model.read(address)) + " in the circuit, "
+							+ Alu.toSigned(sim.read(address)) + " in the Simulator";
+			}
+			if (problem != null) {
+				out.printf("Difference at cycle %d, PC = %d (%s): %s%n", cycle, pc,
+						disassembler.decode(program.text[pc], true), problem);
+				return false;
+			}
+		}
+		out.println("No differences in " + maxCycles + " cycles");
+		return compareData(model, sim, maxCycles, out);
+	}
+
+	private static boolean compareData(Model model, Simulator sim, long cycles, PrintStream out) {
+		for (int address = 0; address < Program.MEMORY_SIZE; address++) {
+			if (model.read(address) != sim.read(address)) {
+				out.printf("After %d cycles data[%d] is %d in the circuit, %d in the Simulator%n", cycles, address,
+						Alu.toSigned(model.read(address)), Alu.toSigned(sim.read(address)));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * main - Compiles the circuit, and runs or checks a program on it.
+	 */
+	public static void main(String[] args) {
+		String circuitName = null;
+		String directory = null;
+		String className = "CompiledCircuit";
+		String symbolFile = null;
+		String circuitFile = null;
+		String textFile = null;
+		String dataFile = null;
+		long maxCycles = 1000000000L;
+		boolean lockstep = false;
+		boolean verbose = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-c") && i + 1 < args.length)
+				circuitName = args[++i];
+			else if (args[i].equals("-o") && i + 1 < args.length)
+				directory = args[++i];
+			else if (args[i].equals("-name") && i + 1 < args.length)
+				className = args[++i];
+			else if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (args[i].equals("-max") && i + 1 < args.length)
+				maxCycles = Long.parseLong(args[++i]);
+			else if (args[i].equals("-lockstep"))
+				lockstep = true;
+			else if (args[i].equals("-v"))
+				verbose = true;
+			else if (circuitFile == null)
+				circuitFile = args[i];
+			else if (textFile == null)
+				textFile = args[i];
+			else
+				dataFile = args[i];
+		}
+		if (circuitFile == null) {
+			System.err.println("Usage: java CircuitCompiler [-c circuit] [-o directory] [-name class] [-max cycles]"
+					+ " [-lockstep] [-s program.asm] [-v] file.circ [image.mc [image.dat]]");
+			return;
+		}
+
+		try {
+			Circuit circuit = new Circuit(circuitFile);
+			circuit.flatten(circuitName);
+			System.out.printf("%s: %d components, %d bits, %d levels of combinational logic%n",
+					(circuitName == null) ? circuit.getMain() : circuitName, circuit.getParts().size(),
+					circuit.getBitCount(), circuit.getLevels());
+			if (verbose) {
+				for (String warning : circuit.getWarnings())
+					System.out.println(warning);
+				for (Circuit.Part part : circuit.getOrder())
+					System.out.println("  level " + part.level + "  " + part.path);
+			}
+
+			CircuitCompiler compiler = new CircuitCompiler(circuit, circuitFile, className);
+			if (directory != null) {
+				File file = new File(directory, className + ".java");
+				compiler.write(file);
+				System.out.println("Wrote " + file.getPath());
+			}
+			if (textFile == null)
+				return;
+
+			Program program = Program.load(textFile, dataFile, symbolFile);
+			Model model = compiler.newModel();
+			if (lockstep) {
+				if (!lockstep(model, program, maxCycles, System.out))
+					System.exit(1);
+				return;
+			}
+
+			model.load(program.text, program.data);
+			model.run(Math.min(maxCycles, 100000));   // warm up the JIT
+			model.load(program.text, program.data);
+			long start = System.nanoTime();
+			long n = model.run(maxCycles);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println((model.isHalted() ? "Halted" : "Stopped") + " after " + n + " cycles: PC = "
+					+ model.getPc() + ", AC = " + Alu.toSigned(model.getAc()));
+			System.out.printf("Circuit:   %.3f s, %.1f million cycles/s%n", seconds, n / seconds / 1e6);
+
+			Simulator sim = new Simulator(program);
+			start = System.nanoTime();
+			long m = sim.run(maxCycles);
+			seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("Simulator: %.3f s, %.1f million cycles/s%n", seconds, m / seconds / 1e6);
+			if (m != n || sim.getPc() != model.getPc() || sim.getAc() != model.getAc())
+				System.out.println("The Simulator ended at PC = " + sim.getPc() + ", AC = "
+						+ Alu.toSigned(sim.getAc()) + " after " + m + " cycles; use -lockstep to find where they differ");
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,456 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * purpose This class implements the constant expressions of the 1-Address
+ *         assembly language.  An expression can be used as the operand of
+ *         an instruction, as the value of a .number, and to define a
+ *         symbol with .equ:
+ *
+ *             .equ SIZE 8
+ *             .equ LAST SIZE-1
+ *             addi SIZE*2
+ *             add table+3
+ *             .number 0x7fff
+ *             .number 'A'
+ *
+ * Procedure
+ *          1 - An expression is compiled once into a compact postfix form,
+ *              an int for each step, with the numbers and symbol names
+ *              kept in tables.  Evaluating it is then a loop over the
+ *              steps, with no parsing.
+ *          2 - Numbers are decimal, hex (0x1f), or a character ('A').
+ *              Symbols are labels and .equ names, and give the label's
+ *              address or the .equ's value.
+ *          3 - The operators, from lowest to highest precedence, are
+ *              |  ^  &  << >>  + -  * / %  and the unary - + ~, as in
+ *              Java.  Parentheses can be used to group.  Expressions
+ *              cannot have blanks, since the parsers split lines on them.
+ *          4 - Values are computed in 64 bits, and an overflow is an
+ *              error, so a value that wraps around is not accepted
+ *              silently.  / and % truncate toward 0, like the ALU.
+ *          5 - .equ names can be used before they are defined.  define
+ *              resolves all of them once the labels are known.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Errors are made without a stack trace, since the
+ *                   AssemblyValidator expects many of them
+ */
+public final class ConstantExpression {
+
+	// The steps.  Each is an operation in the low 8 bits, and for
+	// NUMBER and SYMBOL, the index in numbers or symbols above it.
+	private static final int NUMBER = 0;
+	private static final int SYMBOL = 1;
+	private static final int NEGATE = 2;
+	private static final int NOT = 3;
+	private static final int OR = 4;
+	private static final int XOR = 5;
+	private static final int AND = 6;
+	private static final int SHIFT_LEFT = 7;
+	private static final int SHIFT_RIGHT = 8;
+	private static final int ADD = 9;
+	private static final int SUBTRACT = 10;
+	private static final int MULTIPLY = 11;
+	private static final int DIVIDE = 12;
+	private static final int REMAINDER = 13;
+
+	// binary operators by precedence, lowest first
+	private static final String[][] OPERATORS = {
+		{ "|" }, { "^" }, { "&" }, { "<<", ">>" }, { "+", "-" }, { "*", "/", "%" }
+	};
+	private static final int[][] OPERATIONS = {
+		{ OR }, { XOR }, { AND }, { SHIFT_LEFT, SHIFT_RIGHT }, { ADD, SUBTRACT },
+		{ MULTIPLY, DIVIDE, REMAINDER }
+	};
+
+	final String text;       // the expression as written
+	final int lineNumber;    // line it was written on, for error messages
+	private final int[] code;
+	private final long[] numbers;
+	private final String[] symbols;
+	private final int stackSize;
+
+	private ConstantExpression(String text, int lineNumber, int[] code, long[] numbers,
+			String[] symbols, int stackSize) {
+		this.text = text;
+		this.lineNumber = lineNumber;
+		this.code = code;
+		this.numbers = numbers;
+		this.symbols = symbols;
+		this.stackSize = stackSize;
+	}
+
+	/**
+	 * Compiles an expression.
+	 *
+	 * @param s the expression
+	 * @param lineNumber the line the expression is on, kept for error messages
+	 * @return the compiled expression
+	 * @throws AssemblerException the expression is not valid.  The message
+	 *         does not have the line number.
+	 */
+	public static ConstantExpression compile(String s, int lineNumber) throws AssemblerException {
+		Compiler c = new Compiler(s);
+		if (s.length() == 0)
+			throw fail("missing operand, a number or label must be specified");
+		c.expression(0);
+		if (c.position < s.length())
+			throw c.error("unexpected '" + s.charAt(c.position) + "'");
+
+		int[] code = new int[c.code.size()];
+		for (int i = 0; i < code.length; i++)
+			code[i] = c.code.get(i);
+		long[] numbers = new long[c.numbers.size()];
+		for (int i = 0; i < numbers.length; i++)
+			numbers[i] = c.numbers.get(i);
+		return new ConstantExpression(s, lineNumber, code, numbers,
+				c.symbols.toArray(new String[0]), c.maxDepth);
+	}
+
+	/**
+	 * Returns true if the expression uses no symbols, so its value is
+	 * known before the symbol table is built.
+	 */
+	public boolean isConstant() {
+		return symbols.length == 0;
+	}
+
+	/**
+	 * Returns the symbol if the expression is only a symbol, or null.
+	 */
+	public String getSymbol() {
+		return (code.length == 1 && symbols.length == 1) ? symbols[0] : null;
+	}
+
+	/**
+	 * Returns true if the expression uses the symbol name.
+	 */
+	public boolean uses(String name) {
+		for (String symbol : symbols)
+			if (symbol.equals(name))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Evaluates the expression.
+	 *
+	 * @param st the symbol table, or null if the expression is constant
+	 * @param op the operator or directive the expression is for, used in
+	 *           the error message for a symbol that is not found
+	 * @return the value
+	 * @throws AssemblerException a symbol is not found, a division by 0, or
+	 *         an overflow.  The message does not have the line number.
+	 */
+	public long evaluate(HashMap<String, Label> st, String op) throws AssemblerException {
+		long[] stack = new long[stackSize];
+		int top = -1;
+		for (int step : code) {
+			int operation = step & 0xff;
+			switch (operation) {
+			case NUMBER:
+				stack[++top] = numbers[step >>> 8];
+				break;
+			case SYMBOL: {
+				String name = symbols[step >>> 8];
+				Label l = (st == null) ? null : st.get(name);
+				if (l == null)
+					throw fail("label " + name + " not found for " + op);
+				stack[++top] = l.getAddress();
+				break;
+			}
+			case NEGATE:
+				stack[top] = negate(stack[top]);
+				break;
+			case NOT:
+				stack[top] = ~stack[top];
+				break;
+			default:
+				long b = stack[top--];
+				stack[top] = apply(operation, stack[top], b);
+			}
+		}
+		return stack[0];
+	}
+
+	private long negate(long a) throws AssemblerException {
+		if (a == Long.MIN_VALUE)
+			throw overflow();
+		return -a;
+	}
+
+	private long apply(int operation, long a, long b) throws AssemblerException {
+		try {
+			switch (operation) {
+			case OR:
+				return a | b;
+			case XOR:
+				return a ^ b;
+			case AND:
+				return a & b;
+			case SHIFT_LEFT:
+				if (b < 0 || b > 62 || (a << b) >> b != a)
+					throw overflow();
+				return a << b;
+			case SHIFT_RIGHT:
+				if (b < 0)
+					throw fail("negative shift in " + text);
+				return a >> Math.min(b, 63);
+			case ADD:
+				return Math.addExact(a, b);
+			case SUBTRACT:
+				return Math.subtractExact(a, b);
+			case MULTIPLY:
+				return Math.multiplyExact(a, b);
+			case DIVIDE:
+				if (b == 0)
+					throw fail("division by 0 in " + text);
+				if (a == Long.MIN_VALUE && b == -1)
+					throw overflow();
+				return a / b;
+			default: // REMAINDER
+				if (b == 0)
+					throw fail("division by 0 in " + text);
+				return (b == -1) ? 0 : a % b;
+			}
+		} catch (ArithmeticException ae) {
+			throw overflow();
+		}
+	}
+
+	/**
+	 * Makes the exception for an error in an expression.  The error is in
+	 * the program, not the assembler, so no stack trace is filled in.
+	 * Filling it in would cost more than evaluating the expression.
+	 */
+	static AssemblerException fail(String message) {
+		return new AssemblerException(message, null, false, false);
+	}
+
+	private AssemblerException overflow() {
+		return fail("overflow in " + text);
+	}
+
+	/**
+	 * Resolves .equ definitions, and adds them to the symbol table as
+	 * Labels in segment 'e', with the value as the address.  A definition
+	 * can use labels and other .equ names, in any order, so they are
+	 * resolved in rounds: each round defines the ones whose symbols are
+	 * all known.
+	 *
+	 * @param equs the definitions, by name, in the order they are in the file
+	 * @param st the symbol table with all the labels
+	 * @return the definitions that could not be resolved, with the reason
+	 *         for each, in the order they are in the file.  The reasons do
+	 *         not have the line number.
+	 */
+	public static LinkedHashMap<ConstantExpression, String> define(
+			LinkedHashMap<String, ConstantExpression> equs, HashMap<String, Label> st) {
+		LinkedHashMap<ConstantExpression, String> errors = new LinkedHashMap<ConstantExpression, String>();
+		LinkedHashMap<String, ConstantExpression> pending = new LinkedHashMap<String, ConstantExpression>(equs);
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			Iterator<Map.Entry<String, ConstantExpression>> it = pending.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, ConstantExpression> e = it.next();
+				ConstantExpression x = e.getValue();
+				if (x.waitsFor(pending, st) != null)
+					continue;
+				it.remove();
+				progress = true;
+				try {
+					long value = x.evaluate(st, ".equ");
+					if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+						errors.put(x, "value of " + e.getKey() + " is too large");
+					else
+						st.put(e.getKey(), new Label(e.getKey(), (int) value, 'e'));
+				} catch (AssemblerException ae) {
+					errors.put(x, ae.getMessage());
+				}
+			}
+		}
+
+		// What is left uses a symbol that is not defined, or itself.
+		for (Map.Entry<String, ConstantExpression> e : pending.entrySet()) {
+			ConstantExpression x = e.getValue();
+			String missing = null;
+			for (String name : x.symbols)
+				if (!st.containsKey(name) && !pending.containsKey(name))
+					missing = name;
+			if (missing != null)
+				errors.put(x, "label " + missing + " not found for .equ");
+			else
+				errors.put(x, "circular definition of " + e.getKey() + ", " + x.text
+						+ " uses " + x.waitsFor(pending, st));
+		}
+
+		// Put the errors in file order, since the rounds can find them in any order.
+		ArrayList<ConstantExpression> order = new ArrayList<ConstantExpression>(errors.keySet());
+		order.sort((a, b) -> Integer.compare(a.lineNumber, b.lineNumber));
+		LinkedHashMap<ConstantExpression, String> sorted = new LinkedHashMap<ConstantExpression, String>();
+		for (ConstantExpression x : order)
+			sorted.put(x, errors.get(x));
+		return sorted;
+	}
+
+	/**
+	 * Returns a symbol of this expression that is still pending or not
+	 * defined, or null if all of them are in the symbol table.
+	 */
+	private String waitsFor(HashMap<String, ConstantExpression> pending, HashMap<String, Label> st) {
+		for (String name : symbols)
+			if (pending.containsKey(name) || !st.containsKey(name))
+				return name;
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * A recursive descent compiler, which writes the steps in postfix
+	 * order as it parses.
+	 */
+	private static class Compiler {
+		final String s;
+		int position = 0;
+		int depth = 0;
+		int maxDepth = 0;
+		final ArrayList<Integer> code = new ArrayList<Integer>();
+		final ArrayList<Long> numbers = new ArrayList<Long>();
+		final ArrayList<String> symbols = new ArrayList<String>();
+
+		Compiler(String s) {
+			this.s = s;
+		}
+
+		/**
+		 * Compiles the binary operators of precedence level and higher.
+		 */
+		void expression(int level) throws AssemblerException {
+			if (level == OPERATORS.length) {
+				unary();
+				return;
+			}
+			expression(level + 1);
+			int operation = match(level);
+			while (operation >= 0) {
+				expression(level + 1);
+				emit(OPERATIONS[level][operation], 0);
+				depth = depth - 1;
+				operation = match(level);
+			}
+		}
+
+		/**
+		 * Returns the index of the operator of this level at the position,
+		 * and skips over it, or returns -1 if there is none.
+		 */
+		private int match(int level) {
+			for (int i = 0; i < OPERATORS[level].length; i++) {
+				if (s.startsWith(OPERATORS[level][i], position)) {
+					position = position + OPERATORS[level][i].length();
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private void unary() throws AssemblerException {
+			if (position == s.length())
+				throw error("missing value at the end");
+			char c = s.charAt(position);
+			if (c == '-' || c == '+' || c == '~') {
+				position = position + 1;
+				unary();
+				if (c == '-') {
+					// fold a negative number, so a literal is still one step
+					int last = code.size() - 1;
+					if ((code.get(last) & 0xff) == NUMBER && numbers.get(code.get(last) >>> 8) != Long.MIN_VALUE)
+						numbers.set(code.get(last) >>> 8, -numbers.get(code.get(last) >>> 8));
+					else
+						emit(NEGATE, 0);
+				}
+				else if (c == '~')
+					emit(NOT, 0);
+			}
+			else if (c == '(') {
+				position = position + 1;
+				expression(0);
+				if (position == s.length() || s.charAt(position) != ')')
+					throw error("missing ')'");
+				position = position + 1;
+			}
+			else if (c == '\'') {
+				if (position + 2 >= s.length() || s.charAt(position + 2) != '\'')
+					throw error("a character must be written as 'c'");
+				push(NUMBER, numbers, (long) s.charAt(position + 1));
+				position = position + 3;
+			}
+			else if (Character.isDigit(c))
+				number();
+			else if (Character.isLetter(c) || c == '_') {
+				int start = position;
+				while (position < s.length()
+						&& (Character.isLetterOrDigit(s.charAt(position)) || s.charAt(position) == '_'))
+					position = position + 1;
+				String name = s.substring(start, position);
+				int index = symbols.indexOf(name);
+				if (index < 0) {
+					index = symbols.size();
+					symbols.add(name);
+				}
+				emit(SYMBOL, index);
+				push();
+			}
+			else
+				throw error("unexpected '" + c + "'");
+		}
+
+		private void number() throws AssemblerException {
+			int radix = 10;
+			if (s.startsWith("0x", position) || s.startsWith("0X", position)) {
+				radix = 16;
+				position = position + 2;
+			}
+			int start = position;
+			long value = 0;
+			while (position < s.length() && Character.digit(s.charAt(position), radix) >= 0) {
+				value = value * radix + Character.digit(s.charAt(position), radix);
+				if (value > 0xffffffffL)
+					throw error("number too large");
+				position = position + 1;
+			}
+			if (position == start || (position < s.length() && Character.isLetterOrDigit(s.charAt(position))))
+				throw error("invalid number");
+			push(NUMBER, numbers, value);
+		}
+
+		private void push(int operation, ArrayList<Long> table, long value) {
+			emit(operation, table.size());
+			table.add(value);
+			push();
+		}
+
+		private void push() {
+			depth = depth + 1;
+			maxDepth = Math.max(maxDepth, depth);
+		}
+
+		private void emit(int operation, int index) {
+			code.add((index << 8) | operation);
+		}
+
+		AssemblerException error(String message) {
+			return fail("invalid expression " + s + ", " + message);
+		}
+	}
+}
@@ -0,0 +1,412 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.TreeSet;
+
+/**
+ * purpose This class is a debugger for programs run in the Simulator.  It
+ *         has breakpoints on labels or addresses, watchpoints on data
+ *         words, single step, and commands to look at and change the
+ *         accumulator and memory.  The commands are the same from the
+ *         command line and from the DebuggerPanel in the AssemblerGUI.
+ *
+ * Procedure
+ *          1 - Breakpoints are stops in the Simulator, so the instruction
+ *              at the address is replaced in the Simulator's copy of the
+ *              decoded text.  The program runs at full speed, with no test
+ *              on each instruction, until it gets to one.
+ *          2 - The only instruction that writes the data memory is stor,
+ *              and its address is in the instruction.  So a watchpoint on a
+ *              data word is a stop on each stor to that word.  When one is
+ *              reached, the stor is done and the old and new values are
+ *              reported.
+ *          3 - A snapshot is taken when the debugger starts, so restart
+ *              puts the program back at once.
+ *
+ *         Commands:
+ *             break label|address     set a breakpoint (b)
+ *             watch label|address     set a watchpoint on a data word (w)
+ *             delete label|address    clear a breakpoint or watchpoint (d)
+ *             continue                run to the next stop (c)
+ *             step [n]                do n instructions (s)
+ *             print ac|pc|cycles|label|address   (p)
+ *             x address [n]           print n words of data memory
+ *             set ac|label|address value
+ *             list [address]          disassemble around the PC (l)
+ *             info                    list the breakpoints and watchpoints
+ *             restart                 start the program again
+ *             quit                    leave the debugger (q)
+ *
+ *         Usage: java Debugger program.asm
+ *                java Debugger [-s program.asm] image.mc [image.dat]
+ *         The first form uses the .mc and .dat files made by assembling
+ *         program.asm.  On the command line an empty line repeats the
+ *         last command.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - .equ names are not used as labels
+ */
+public class Debugger {
+
+	// The most cycles for one continue, so a program in a loop comes back.
+	static final long MAX_CYCLES = 1000000000L;
+
+	private final Program program;
+	private final Simulator sim;
+	private final Snapshot start;
+	private final Disassembler disassembler;
+	private final TreeSet<Integer> breakpoints = new TreeSet<Integer>();
+	private final TreeSet<Integer> watchpoints = new TreeSet<Integer>();
+
+	public Debugger(Program program) {
+		this.program = program;
+		this.sim = new Simulator(program);
+		this.start = sim.snapshot();
+		this.disassembler = new Disassembler(program.getSymbols(), false);
+	}
+
+	public Simulator getSimulator() {
+		return sim;
+	}
+
+	public boolean isBreakpoint(int address) {
+		return breakpoints.contains(address);
+	}
+
+	public boolean isWatchpoint(int address) {
+		return watchpoints.contains(address);
+	}
+
+	/**
+	 * Runs one command.
+	 *
+	 * @param line the command and its operands
+	 * @return what the command prints
+	 */
+	public String execute(String line) {
+		String[] tokens = line.trim().split("\\s+");
+		String command = tokens[0];
+		String operand = (tokens.length > 1) ? tokens[1] : null;
+		try {
+			if (command.equals(""))
+				return "";
+			else if (command.equals("break") || command.equals("b"))
+				return setBreakpoint(address(operand));
+			else if (command.equals("watch") || command.equals("w"))
+				return setWatchpoint(address(operand));
+			else if (command.equals("delete") || command.equals("d"))
+				return delete(operand);
+			else if (command.equals("continue") || command.equals("c"))
+				return cont();
+			else if (command.equals("step") || command.equals("s"))
+				return step((operand == null) ? 1 : Long.parseLong(operand));
+			else if (command.equals("print") || command.equals("p"))
+				return print(operand);
+			else if (command.equals("x"))
+				return examine(address(operand), (tokens.length > 2) ? Integer.parseInt(tokens[2]) : 1);
+			else if (command.equals("set") && tokens.length == 3)
+				return set(operand, tokens[2]);
+			else if (command.equals("list") || command.equals("l"))
+				return list((operand == null) ? sim.getPc() : address(operand));
+			else if (command.equals("info"))
+				return info();
+			else if (command.equals("restart")) {
+				sim.restore(start);
+				return "Restarted\n" + where();
+			}
+			else
+				return "Unknown command " + command + "\n";
+		} catch (NumberFormatException nfe) {
+			return "Invalid number: " + nfe.getMessage() + "\n";
+		} catch (IllegalArgumentException iae) {
+			return iae.getMessage() + "\n";
+		}
+	}
+
+	private String setBreakpoint(int address) {
+		breakpoints.add(address);
+		updateStop(address);
+		return "Breakpoint at " + name(address, true) + "\n";
+	}
+
+	private String setWatchpoint(int address) {
+		watchpoints.add(address);
+		int stores = 0;
+		for (int pc = 0; pc < Program.MEMORY_SIZE; pc++) {
+			if (storesTo(pc) == address) {
+				updateStop(pc);
+				stores++;
+			}
+		}
+		return "Watchpoint on " + name(address, false) + ", " + stores + " stor instructions write it\n";
+	}
+
+	private String delete(String operand) {
+		int address = address(operand);
+		Label l = (program.getSymbols() == null) ? null : program.getSymbols().get(operand);
+		boolean data = (l != null && l.getSegment() != 'e') ? l.getSegment() == 'd' : !breakpoints.contains(address);
+		if (!data && breakpoints.contains(address))
+			return deleteBreakpoint(address);
+		if (data && watchpoints.contains(address))
+			return deleteWatchpoint(address);
+		return "No breakpoint or watchpoint at " + operand + "\n";
+	}
+
+	private String deleteBreakpoint(int address) {
+		breakpoints.remove(address);
+		updateStop(address);
+		return "Deleted breakpoint at " + name(address, true) + "\n";
+	}
+
+	private String deleteWatchpoint(int address) {
+		watchpoints.remove(address);
+		for (int pc = 0; pc < Program.MEMORY_SIZE; pc++)
+			if (storesTo(pc) == address)
+				updateStop(pc);
+		return "Deleted watchpoint on " + name(address, false) + "\n";
+	}
+
+	/**
+	 * Sets or clears the breakpoint at a text address.
+	 */
+	public String toggleBreakpoint(int address) {
+		return breakpoints.contains(address) ? deleteBreakpoint(address) : setBreakpoint(address);
+	}
+
+	/**
+	 * Sets or clears the watchpoint on a data address.
+	 */
+	public String toggleWatchpoint(int address) {
+		return watchpoints.contains(address) ? deleteWatchpoint(address) : setWatchpoint(address);
+	}
+
+	/**
+	 * Sets the stop at a text address if there is a breakpoint there, or
+	 * it is a stor to a watched word.
+	 */
+	private void updateStop(int pc) {
+		sim.setStop(pc, breakpoints.contains(pc) || watchpoints.contains(storesTo(pc)));
+	}
+
+	/**
+	 * Returns the address a stor instruction writes, or -1 if the
+	 * instruction is not a stor.
+	 */
+	private int storesTo(int pc) {
+		int instruction = program.code[pc];
+		return ((instruction & 0xFF) == Program.STOR) ? instruction >>> 8 : -1;
+	}
+
+	/**
+	 * Runs to the next breakpoint or watchpoint.
+	 */
+	private String cont() {
+		if (sim.isHalted())
+			return "The program has halted\n";
+
+		// Stopped at a stor to a watched word, so do it and report it.
+		if (watchpoints.contains(storesTo(sim.getPc())))
+			return watch();
+
+		long start = System.nanoTime();
+		long n = sim.run(MAX_CYCLES);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		String ran = String.format("(%d cycles in %.3f s)%n", n, seconds);
+
+		int pc = sim.getPc();
+		if (sim.isHalted())
+			return "Program halted " + ran + where();
+		if (breakpoints.contains(pc))
+			return "Breakpoint at " + name(pc, true) + " " + ran + where();
+		if (watchpoints.contains(storesTo(pc)))
+			return ran + watch();
+		return "Stopped after " + MAX_CYCLES + " cycles\n" + where();
+	}
+
+	/**
+	 * Does the stor at the PC, and reports the change to the watched word.
+	 */
+	private String watch() {
+		int pc = sim.getPc();
+		int address = storesTo(pc);
+		int old = sim.read(address);
+		sim.step();
+		return "Watchpoint " + name(address, false) + ": " + (short) old + " -> "
+				+ (short) sim.read(address) + " at " + name(pc, true) + "\n" + where();
+	}
+
+	private String step(long n) {
+		StringBuilder sb = new StringBuilder();
+		for (long i = 0; i < n; i++) {
+			int pc = sim.getPc();
+			int address = storesTo(pc);
+			int old = (address >= 0) ? sim.read(address) : 0;
+			if (!sim.step()) {
+				sb.append("The program has halted\n");
+				break;
+			}
+			if (n <= 20)
+				sb.append(String.format("%02x  %-18s AC = %d%n", pc,
+						disassembler.decode(program.text[pc], true), (short) sim.getAc()));
+			if (watchpoints.contains(address) && old != sim.read(address))
+				sb.append("Watchpoint " + name(address, false) + ": " + (short) old
+						+ " -> " + (short) sim.read(address) + "\n");
+		}
+		return sb.append(where()).toString();
+	}
+
+	private String print(String operand) {
+		if (operand == null || operand.equals("ac"))
+			return "AC = " + (short) sim.getAc() + "\n";
+		if (operand.equals("pc"))
+			return "PC = " + name(sim.getPc(), true) + "\n";
+		if (operand.equals("cycles"))
+			return "cycles = " + sim.getCycles() + "\n";
+		int address = address(operand);
+		return name(address, false) + " = " + (short) sim.read(address) + "\n";
+	}
+
+	private String examine(int address, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int a = address; a < Math.min(Program.MEMORY_SIZE, address + n); a++)
+			sb.append(String.format("%-16s %6d  %04x%n", name(a, false), (short) sim.read(a), sim.read(a)));
+		return sb.toString();
+	}
+
+	private String set(String operand, String value) {
+		int v = Integer.parseInt(value);
+		if (operand.equals("ac")) {
+			sim.ac = v & 0xFFFF;
+			return "AC = " + (short) sim.getAc() + "\n";
+		}
+		int address = address(operand);
+		sim.write(address, v);
+		return name(address, false) + " = " + (short) sim.read(address) + "\n";
+	}
+
+	/**
+	 * Disassembles the instructions around an address.  => marks the PC,
+	 * and * a breakpoint.
+	 */
+	public String list(int address) {
+		StringBuilder sb = new StringBuilder();
+		int from = Math.max(0, address - 5);
+		int to = Math.min(Program.MEMORY_SIZE, from + 12);
+		for (int pc = from; pc < to; pc++)
+			sb.append(listLine(pc)).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Returns one line of the listing.
+	 */
+	public String listLine(int pc) {
+		String label = disassembler.textLabel(pc);
+		return String.format("%s%s %02x %-12s %s", (pc == sim.getPc()) ? "=>" : "  ",
+				breakpoints.contains(pc) ? "*" : " ", pc, (label == null) ? "" : label,
+				disassembler.decode(program.text[pc], true));
+	}
+
+	private String info() {
+		StringBuilder sb = new StringBuilder();
+		for (int address : breakpoints)
+			sb.append("Breakpoint at ").append(name(address, true)).append('\n');
+		for (int address : watchpoints)
+			sb.append("Watchpoint on ").append(name(address, false)).append('\n');
+		if (sb.length() == 0)
+			sb.append("No breakpoints or watchpoints\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the PC, accumulator and cycles.
+	 */
+	public String where() {
+		return "PC = " + name(sim.getPc(), true) + ", AC = " + (short) sim.getAc()
+				+ ", cycles = " + sim.getCycles() + "\n";
+	}
+
+	/**
+	 * Returns an address with its label, if it has one.
+	 */
+	String name(int address, boolean text) {
+		if (program.getSymbols() != null)
+			for (Label l : program.getSymbols().values())
+				if (l.getAddress() == address && l.getSegment() == (text ? 'c' : 'd'))
+					return l.name + " (" + address + ")";
+		return Integer.toString(address);
+	}
+
+	private int address(String operand) {
+		if (operand == null)
+			throw new IllegalArgumentException("A label or address is needed");
+		int address = program.addressOf(operand);
+		if (address < 0)
+			throw new IllegalArgumentException("Label " + operand + " not found");
+		return address;
+	}
+
+	/**
+	 * Loads the program for a debugger.  program.asm is used with the
+	 * .mc and .dat files assembled from it.
+	 */
+	static Program load(String[] args) throws IOException, AssemblerException {
+		String symbolFile = null;
+		String textFile = null;
+		String dataFile = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (textFile == null)
+				textFile = args[i];
+			else
+				dataFile = args[i];
+		}
+		if (textFile == null)
+			return null;
+		if (textFile.endsWith(".asm")) {
+			symbolFile = textFile;
+			String base = textFile.substring(0, textFile.length() - 4);
+			textFile = base + ".mc";
+			dataFile = base + ".dat";
+		}
+		return Program.load(textFile, dataFile, symbolFile);
+	}
+
+	/**
+	 * main - Runs the debugger on the command line.
+	 */
+	public static void main(String[] args) {
+		try {
+			Program program = load(args);
+			if (program == null) {
+				System.err.println("Usage: java Debugger program.asm | [-s program.asm] image.mc [image.dat]");
+				return;
+			}
+			Debugger debugger = new Debugger(program);
+			System.out.print(debugger.list(0));
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+			String last = "";
+			while (true) {
+				System.out.print("(debug) ");
+				System.out.flush();
+				String line = in.readLine();
+				if (line == null)
+					break;
+				if (line.trim().isEmpty())
+					line = last;
+				String command = line.trim().split("\\s+")[0];
+				if (command.equals("quit") || command.equals("q"))
+					break;
+				System.out.print(debugger.execute(line));
+				last = line;
+			}
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * purpose This class is the panel for the Debugger in the AssemblerGUI.
+ *         It shows the program's text with the PC and the breakpoints, the
+ *         data memory with the watchpoints, and the accumulator and cycles.
+ *
+ * Procedure
+ *          1 - The buttons and the command field run Debugger commands, so
+ *              the panel does the same things as the command line debugger.
+ *          2 - Breakpoint sets or clears a breakpoint on the line picked
+ *              in the text, and Watch a watchpoint on the word picked in
+ *              the data.
+ *          3 - Continue runs on a SwingWorker, so the window still works
+ *              while a long run is going.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class DebuggerPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Debugger debugger;
+	private final Program program;
+	private final int textSize;
+	private final int dataSize;
+
+	private final DefaultListModel<String> textModel = new DefaultListModel<String>();
+	private final DefaultListModel<String> dataModel = new DefaultListModel<String>();
+	private final JList<String> textList = new JList<String>(textModel);
+	private final JList<String> dataList = new JList<String>(dataModel);
+	private final JLabel registers = new JLabel();
+	private final JTextArea output = new JTextArea(8, 60);
+	private final JTextField commandField = new JTextField();
+	private final JPanel buttonsPanel = new JPanel();
+
+	public DebuggerPanel(Program program) {
+		super(new BorderLayout(10, 10));
+		this.program = program;
+		this.debugger = new Debugger(program);
+		this.textSize = used(program.text, program, 'c');
+		this.dataSize = used(program.data, program, 'd');
+		setupPanel();
+		refresh();
+	}
+
+	private void setupPanel() {
+		Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+		setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+		registers.setFont(font);
+		add(registers, BorderLayout.NORTH);
+
+		textList.setFont(font);
+		dataList.setFont(font);
+		textList.setVisibleRowCount(20);
+		dataList.setVisibleRowCount(20);
+		JScrollPane textPane = new JScrollPane(textList);
+		textPane.setBorder(BorderFactory.createTitledBorder("Text"));
+		JScrollPane dataPane = new JScrollPane(dataList);
+		dataPane.setBorder(BorderFactory.createTitledBorder("Data"));
+		add(new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, textPane, dataPane), BorderLayout.CENTER);
+
+		addButton("Step", e -> command("step"));
+		addButton("Continue", e -> cont());
+		addButton("Restart", e -> command("restart"));
+		addButton("Breakpoint", e -> {
+			if (textList.getSelectedIndex() >= 0)
+				show(debugger.toggleBreakpoint(textList.getSelectedIndex()));
+		});
+		addButton("Watch", e -> {
+			if (dataList.getSelectedIndex() >= 0)
+				show(debugger.toggleWatchpoint(dataList.getSelectedIndex()));
+		});
+
+		output.setEditable(false);
+		output.setFont(font);
+		commandField.setFont(font);
+		commandField.addActionListener(e -> {
+			String line = commandField.getText();
+			commandField.setText("");
+			String command = line.trim().split("\\s+")[0];
+			if (command.equals("continue") || command.equals("c"))
+				cont();
+			else if (command.equals("quit") || command.equals("q"))
+				SwingUtilities.getWindowAncestor(this).dispose();
+			else
+				command(line);
+		});
+
+		JPanel bottom = new JPanel(new BorderLayout(5, 5));
+		bottom.add(buttonsPanel, BorderLayout.NORTH);
+		bottom.add(new JScrollPane(output), BorderLayout.CENTER);
+		bottom.add(commandField, BorderLayout.SOUTH);
+		add(bottom, BorderLayout.SOUTH);
+	}
+
+	private void addButton(String name, java.awt.event.ActionListener listener) {
+		JButton button = new JButton(name);
+		button.addActionListener(listener);
+		buttonsPanel.add(button);
+	}
+
+	private void command(String line) {
+		show("> " + line + "\n" + debugger.execute(line));
+	}
+
+	/**
+	 * Runs to the next stop on a SwingWorker.  The buttons are turned off
+	 * until it is done.
+	 */
+	private void cont() {
+		setRunning(true);
+		output.append("> continue\nRunning...\n");
+		new SwingWorker<String, Void>() {
+			@Override
+			protected String doInBackground() {
+				return debugger.execute("continue");
+			}
+
+			@Override
+			protected void done() {
+				setRunning(false);
+				try {
+					show(get());
+				} catch (Exception ex) {
+					show(ex.getMessage() + "\n");
+				}
+			}
+		}.execute();
+	}
+
+	private void setRunning(boolean running) {
+		for (Component c : buttonsPanel.getComponents())
+			c.setEnabled(!running);
+		commandField.setEnabled(!running);
+	}
+
+	private void show(String text) {
+		output.append(text);
+		output.setCaretPosition(output.getDocument().getLength());
+		refresh();
+	}
+
+	/**
+	 * Updates the text, data and registers from the Simulator.
+	 */
+	private void refresh() {
+		Simulator sim = debugger.getSimulator();
+		registers.setText(debugger.where().trim() + (sim.isHalted() ? "  (halted)" : ""));
+
+		int textSelected = textList.getSelectedIndex();
+		textModel.clear();
+		for (int pc = 0; pc < textSize; pc++)
+			textModel.addElement(debugger.listLine(pc));
+		textList.setSelectedIndex(textSelected);
+		if (sim.getPc() < textSize)
+			textList.ensureIndexIsVisible(sim.getPc());
+
+		int dataSelected = dataList.getSelectedIndex();
+		dataModel.clear();
+		for (int address = 0; address < dataSize; address++)
+			dataModel.addElement(String.format("%s %-18s %6d", debugger.isWatchpoint(address) ? "*" : " ",
+					debugger.name(address, false), (short) sim.read(address)));
+		dataList.setSelectedIndex(dataSelected);
+	}
+
+	/**
+	 * Returns the number of words used in a memory, up to the last word
+	 * that is not 0 or has a label.
+	 */
+	private static int used(int[] memory, Program program, char segment) {
+		int n = 0;
+		for (int address = 0; address < memory.length; address++)
+			if (memory[address] != 0)
+				n = address + 1;
+		if (program.getSymbols() != null)
+			for (Label l : program.getSymbols().values())
+				if (l.getSegment() == segment)
+					n = Math.max(n, l.getAddress() + 1);
+		return Math.max(n, 1);
+	}
+
+	/**
+	 * Opens a debugger window for a program.
+	 */
+	public static void open(Program program, String title) {
+		JFrame frame = new JFrame("One-Address Debugger - " + title);
+		frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		frame.add(new DebuggerPanel(program));
+		frame.pack();
+		frame.setLocationRelativeTo(null);
+		frame.setVisible(true);
+	}
+}
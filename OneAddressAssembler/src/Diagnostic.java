@@ -0,0 +1,37 @@
+
+/**
+ * purpose This class is one problem found by the AssemblyValidator.  It is
+ *         a plain value, not an exception, so finding many problems does
+ *         not cost a stack trace for each one.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public final class Diagnostic {
+	final String file;       // the file the problem is in
+	final int line;          // the line number in the file
+	final String message;    // what the problem is
+
+	public Diagnostic(String file, int line, String message) {
+		this.file = file;
+		this.line = line;
+		this.message = message;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return file + ":" + line + ": " + message;
+	}
+}
@@ -0,0 +1,413 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * purpose This class turns the .mc and .dat files written by the assembler
+ *         back into an assembly program.  The program it writes assembles
+ *         to the same .mc and .dat files, so images can be checked against
+ *         their source, and simulator traces can be read.
+ *
+ * Procedure
+ *          1 - Each 16 bit word is an 8 bit opcode and an 8 bit operand.
+ *              The opcode is looked up in a 256 entry table.  The table is
+ *              built from InstructionParser, by assembling each instruction
+ *              with an operand of 0, so it always matches the assembler.
+ *          2 - If the program is given (-s program.asm), its symbol table
+ *              is built with the FirstPassParser.  Labels are written at
+ *              their addresses, and operands that are the address of a
+ *              label are written as the label name.  Branches use the text
+ *              labels, and the other instructions use the data labels.
+ *          3 - The text of each word is only made once, and kept in a
+ *              table of 65536 entries, so a large image costs a table
+ *              lookup and a copy for each word.
+ *          4 - The input is read through memory mapped windows, and the
+ *              words are parsed from the bytes, so files larger than memory
+ *              are read at the speed of the disk.
+ *
+ *         The words 0000 at the end of a text image are the empty memory
+ *         after the program, and are not written.  Words that the assembler
+ *         cannot make (for example 0000 inside the program) are written as
+ *         comments, so the program would not assemble to the same image.
+ *         The number of these words is printed at the end.
+ *
+ *         Usage: java Disassembler [-s program.asm] [-l] [-o output.asm]
+ *                                  image.mc [image.dat]
+ *         -l adds the address and the word to each line, as a comment.
+ *         The program is written to standard output if -o is not given.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Added textLabel for the TraceRecorder
+ *     10/18/2026  - .equ names are not used as labels
+ */
+public class Disassembler {
+
+	// The size of the memory mapped windows of the input file.
+	static final int WINDOW = 1 << 26;
+
+	/**
+	 * The opcode table, indexed by the high byte of a word.  Opcodes that
+	 * are not instructions are null.
+	 */
+	static final Op[] opcodes = new Op[256];
+
+	static {
+		HashMap<String, Label> st = new HashMap<String, Label>();
+		for (Map.Entry<String, InstructionParser.Parser> e : InstructionParser.parsers.entrySet()) {
+			try {
+				String code = e.getValue().parse("0", st, 0);
+				int opcode = Integer.parseInt(code.substring(0, 2), 16);
+				opcodes[opcode] = new Op(e.getKey(), AssemblyValidator.operandKinds.get(e.getKey()));
+			} catch (AssemblerException ae) {
+				throw new IllegalStateException("Cannot build opcode table: " + ae.getMessage());
+			}
+		}
+	}
+
+	// labels to write before each address, and the name to use for an operand
+	private final HashMap<Integer, List<String>> textLabels = new HashMap<Integer, List<String>>();
+	private final HashMap<Integer, List<String>> dataLabels = new HashMap<Integer, List<String>>();
+	private final boolean listing;
+
+	// the text of each word, made the first time the word is seen
+	private final byte[][] textLines = new byte[65536][];
+	private final byte[][] dataLines = new byte[65536][];
+
+	private long unknownWords = 0;
+
+	/**
+	 * Creates a disassembler.
+	 *
+	 * @param st the symbol table of the program, or null to write
+	 *           numbers for all operands
+	 * @param listing true to add the address and word to each line
+	 */
+	public Disassembler(HashMap<String, Label> st, boolean listing) {
+		this.listing = listing;
+		if (st != null) {
+			for (Label l : st.values()) {
+				if (l.getSegment() == 'e')
+					continue;    // a .equ is a value, not an address
+				HashMap<Integer, List<String>> labels = (l.getSegment() == 'c') ? textLabels : dataLabels;
+				List<String> names = labels.get(l.getAddress());
+				if (names == null) {
+					names = new ArrayList<String>();
+					labels.put(l.getAddress(), names);
+				}
+				names.add(l.name);
+			}
+			// Sort the names so the output does not depend on the HashMap order.
+			for (List<String> names : textLabels.values())
+				Collections.sort(names);
+			for (List<String> names : dataLabels.values())
+				Collections.sort(names);
+		}
+	}
+
+	/**
+	 * main - Disassembles an image.
+	 */
+	public static void main(String[] args) {
+		String symbolFile = null;
+		String outputFile = null;
+		String textFile = null;
+		String dataFile = null;
+		boolean listing = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (args[i].equals("-o") && i + 1 < args.length)
+				outputFile = args[++i];
+			else if (args[i].equals("-l"))
+				listing = true;
+			else if (textFile == null)
+				textFile = args[i];
+			else
+				dataFile = args[i];
+		}
+		if (textFile == null) {
+			System.err.println("Usage: java Disassembler [-s program.asm] [-l] [-o output.asm] image.mc [image.dat]");
+			return;
+		}
+
+		try {
+			HashMap<String, Label> st = null;
+			if (symbolFile != null) {
+				MacroExpander br = new MacroExpander(new FileReader(symbolFile));
+				try {
+					st = FirstPassParser.parseFile(br);
+				} finally {
+					br.close();
+				}
+			}
+
+			Disassembler d = new Disassembler(st, listing);
+			OutputStream out = (outputFile == null) ? System.out : new FileOutputStream(outputFile);
+			out = new BufferedOutputStream(out, 1 << 16);
+			try {
+				d.disassemble(textFile, out, true);
+				if (dataFile != null)
+					d.disassemble(dataFile, out, false);
+			} finally {
+				if (outputFile == null)
+					out.flush();
+				else
+					out.close();
+			}
+			if (d.getUnknownWords() > 0)
+				System.err.println(d.getUnknownWords() + " words could not be disassembled");
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the number of words written as comments, because they are
+	 * not instructions the assembler can make.
+	 */
+	public long getUnknownWords() {
+		return unknownWords;
+	}
+
+	/**
+	 * Disassembles one image file.
+	 *
+	 * @param fileName the .mc or .dat file
+	 * @param out where to write the program
+	 * @param text true for a text segment (.mc), false for a data
+	 *             segment (.dat)
+	 * @throws IOException error reading or writing
+	 */
+	public void disassemble(String fileName, OutputStream out, boolean text) throws IOException {
+		HashMap<Integer, List<String>> labels = text ? textLabels : dataLabels;
+		out.write(text ? TEXT : DATA);
+
+		WordReader in = new WordReader(fileName);
+		try {
+			long address = 0;
+			long zeros = 0;     // 0000 text words not written yet
+			int word = in.next();
+			while (word >= 0) {
+				if (word == 0 && text) {
+					zeros = zeros + 1;
+				}
+				else {
+					// The zeros were inside the program, so write them.
+					for (; zeros > 0; zeros--, address++)
+						writeWord(out, labels, address, 0, text);
+					writeWord(out, labels, address, word, text);
+					address = address + 1;
+				}
+				word = in.next();
+			}
+
+			// A label can follow the last word, e.g. the end of the program.
+			for (Map.Entry<Integer, List<String>> e : labels.entrySet())
+				if (e.getKey() >= address)
+					for (String name : e.getValue())
+						writeLabel(out, name);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static final byte[] TEXT = ".text\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] DATA = ".data\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LABEL = ".label ".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Writes one word, with the labels at its address.
+	 */
+	private void writeWord(OutputStream out, HashMap<Integer, List<String>> labels,
+			long address, int word, boolean text) throws IOException {
+		if (!labels.isEmpty() && address < Integer.MAX_VALUE) {
+			List<String> names = labels.get((int) address);
+			if (names != null)
+				for (String name : names)
+					writeLabel(out, name);
+		}
+
+		byte[][] lines = text ? textLines : dataLines;
+		byte[] line = lines[word];
+		if (line == null) {
+			line = decode(word, text).getBytes(StandardCharsets.US_ASCII);
+			lines[word] = line;
+		}
+		if (line[0] == '#')
+			unknownWords = unknownWords + 1;
+
+		if (!listing) {
+			out.write(line);
+			out.write('\n');
+		}
+		else {
+			out.write(line, 0, line.length);
+			out.write(String.format("\t# %02x: %04x\n", address, word).getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	private static void writeLabel(OutputStream out, String name) throws IOException {
+		out.write(LABEL);
+		out.write(name.getBytes(StandardCharsets.US_ASCII));
+		out.write('\n');
+	}
+
+	/**
+	 * Returns the first text label at an address, or null if there is none.
+	 */
+	String textLabel(int address) {
+		List<String> names = textLabels.get(address);
+		return (names == null) ? null : names.get(0);
+	}
+
+	/**
+	 * Returns the assembly language for one word.
+	 *
+	 * @param word the 16 bit word
+	 * @param text true if the word is an instruction, false for data
+	 * @return the line of assembly language
+	 */
+	String decode(int word, boolean text) {
+		if (!text)
+			return ".number " + (short) word;
+
+		Op op = opcodes[word >> 8];
+		int operand = (byte) word;   // the operand is sign extended
+		if (op == null || (op.kind == AssemblyValidator.NONE && operand != 0))
+			return String.format("# unknown word %04x", word);
+		if (op.kind == AssemblyValidator.NONE)
+			return op.name;
+
+		if (op.kind == AssemblyValidator.ADDRESS) {
+			// Branches go to the text segment, the others use the data segment.
+			HashMap<Integer, List<String>> labels =
+					(op.name.equals("beqz") || op.name.equals("br")) ? textLabels : dataLabels;
+			List<String> names = labels.get(operand);
+			if (names != null)
+				return op.name + " " + names.get(0);
+		}
+		return op.name + " " + operand;
+	}
+
+	/**
+	 * An entry in the opcode table.
+	 */
+	static class Op {
+		final String name;
+		final char kind;   // AssemblyValidator.ADDRESS, IMMEDIATE or NONE
+
+		Op(String name, char kind) {
+			this.name = name;
+			this.kind = kind;
+		}
+	}
+
+	/**
+	 * Reads the words of a Logisim "v2.0 raw" image.  The file is mapped
+	 * a window at a time, and the hex digits are parsed from the bytes.
+	 * The run length form count*word, and # comments, are also read.
+	 */
+	static class WordReader {
+		private final FileChannel channel;
+		private final long size;
+		private long position = 0;
+		private MappedByteBuffer window;
+		private long repeat = 0;    // copies of word still to return
+		private int word;
+
+		WordReader(String fileName) throws IOException {
+			channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+			size = channel.size();
+			if (!nextWindow())
+				return;
+			// Skip the "v2.0 raw" header line, if there is one.
+			if (window.get(0) == 'v') {
+				int c = read();
+				while (c >= 0 && c != '\n')
+					c = read();
+			}
+		}
+
+		/**
+		 * Returns the next word, or -1 at the end of the file.
+		 */
+		int next() throws IOException {
+			if (repeat > 0) {
+				repeat = repeat - 1;
+				return word;
+			}
+			int c = read();
+			while (true) {
+				if (c < 0)
+					return -1;
+				if (c == '#') {
+					while (c >= 0 && c != '\n')
+						c = read();
+				}
+				else if (c <= ' ')
+					c = read();
+				else
+					break;
+			}
+
+			// The digits are read as both hex and decimal, because the
+			// count in count*word is decimal.
+			long value = 0;
+			long count = 0;
+			while (c > ' ') {
+				int digit = Character.digit(c, 16);
+				if (c == '*') {
+					repeat = count - 1;
+					value = 0;
+				}
+				else if (digit < 0)
+					throw new IOException("Invalid character '" + (char) c + "' in image");
+				else {
+					value = (value << 4) | digit;
+					count = count * 10 + digit;
+				}
+				c = read();
+			}
+			word = (int) (value & 0xffff);
+			if (repeat < 0) {
+				repeat = 0;
+				return next();
+			}
+			return word;
+		}
+
+		private int read() throws IOException {
+			if (window == null || (!window.hasRemaining() && !nextWindow()))
+				return -1;
+			return window.get() & 0xff;
+		}
+
+		private boolean nextWindow() throws IOException {
+			if (position >= size)
+				return false;
+			long length = Math.min(WINDOW, size - position);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			position = position + length;
+			return true;
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,667 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * purpose This program compiles a small expression language into assembly
+ *         language for the 1-address CPU.  The output is a .asm file that
+ *         is assembled with the Assembler.
+ *
+ *         The language has 16 bit variables, assignment, arithmetic
+ *         expressions, if/else and while:
+ *
+ *             # comment
+ *             var n = 10;              declares n, with a value in .data
+ *             sum = 0;                 variables are declared when used
+ *             while (n > 0) {
+ *                 sum = sum + n * n;
+ *                 n = n - 1;
+ *             }
+ *             if (sum == 385) ok = 1; else ok = 0;
+ *
+ *         The operators are + - * / % & << and unary -, with the usual
+ *         precedence.  Conditions are an expression, which is true if it
+ *         is not 0, or a compare with == != < <= > >=.  / and % are
+ *         unsigned, as they are in the ALU, and < compares the sign of the
+ *         difference, so it is wrong if the subtract overflows.
+ *
+ * Procedure
+ *          1 - The program is parsed into statements and expression trees.
+ *              Expressions with only constants are computed by the compiler.
+ *          2 - Each expression is generated so that its value ends up in
+ *              the accumulator.  The right operand is used directly when it
+ *              is a variable or a constant that fits an immediate opcode
+ *              (addi, muli, ...).  Otherwise it is computed first and saved
+ *              with stor to a temporary, and the operands of commutative
+ *              operators are swapped so that the fewest temporaries are used.
+ *              Unary minus is moved into the expression under it where
+ *              it can be, and is otherwise computed as 0 - e, with clac
+ *              and sub.  A multiply by -1 is one instruction, but takes
+ *              16 cycles on an iterative ALU (see StrengthReducer), so
+ *              it is not used.
+ *          3 - The compiler keeps track of which variable is in the
+ *              accumulator, so a variable that was just stored is not
+ *              loaded again.
+ *          4 - while loops are generated with the test at the bottom, so
+ *              each time around the loop only the test and one branch run.
+ *
+ *         Usage: java ExpressionCompiler input [output.asm] [-a]
+ *         -a also assembles the output into the .mc and .dat files.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Unary minus uses clac and sub, not muli -1
+ */
+public class ExpressionCompiler {
+
+	/**
+	 * A node in an expression tree.  kind is 'n' for a number, 'v' for a
+	 * variable, 'u' for unary minus, and 'b' for a binary operator.
+	 */
+	static class Node {
+		final char kind;
+		final int value;
+		final String name;
+		final String op;
+		final Node left;
+		final Node right;
+
+		Node(char kind, int value, String name, String op, Node left, Node right) {
+			this.kind = kind;
+			this.value = value;
+			this.name = name;
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean isLeaf() {
+			return kind == 'n' || kind == 'v';
+		}
+	}
+
+	// the source, broken into tokens, with the line number of each token
+	private final ArrayList<String> tokens = new ArrayList<String>();
+	private final ArrayList<Integer> tokenLines = new ArrayList<Integer>();
+	private int position = 0;
+
+	// output
+	private final StringBuilder text = new StringBuilder();
+	private final LinkedHashMap<String, Integer> variables = new LinkedHashMap<String, Integer>();
+	private final LinkedHashMap<String, Integer> constants = new LinkedHashMap<String, Integer>();
+	private int temporaries = 0;
+	private int labelCount = 0;
+	private String acVariable = null;   // variable known to be in the accumulator
+
+	public ExpressionCompiler() {
+	}
+
+	/**
+	 * Compiles a program.
+	 *
+	 * @param br the program to compile
+	 * @return the assembly language program
+	 * @throws IOException error reading the program
+	 * @throws AssemblerException error in the program
+	 */
+	public String compile(BufferedReader br) throws IOException, AssemblerException {
+		tokenize(br);
+		while (position < tokens.size())
+			statement();
+		emitLabel("end__");
+		emit("br end__");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("# Generated by ExpressionCompiler\n");
+		sb.append(".text\n");
+		sb.append(text);
+		sb.append(".data\n");
+		for (String name : variables.keySet())
+			sb.append(".label ").append(name).append("\n.number ").append(variables.get(name)).append('\n');
+		for (int i = 0; i < temporaries; i++)
+			sb.append(".label t").append(i).append("__\n.number 0\n");
+		for (String name : constants.keySet())
+			sb.append(".label ").append(name).append("\n.number ").append(constants.get(name)).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Breaks the program into tokens.  A token is a name, a number, or an
+	 * operator.  # and // start comments.
+	 */
+	private void tokenize(BufferedReader br) throws IOException, AssemblerException {
+		int lineNumber = 1;
+		String s = br.readLine();
+		while (s != null) {
+			int i = 0;
+			while (i < s.length()) {
+				char c = s.charAt(i);
+				int start = i;
+				if (c == '#' || s.startsWith("//", i))
+					break;
+				else if (Character.isWhitespace(c)) {
+					i = i + 1;
+					continue;
+				}
+				else if (Character.isLetterOrDigit(c)) {
+					while (i < s.length() && Character.isLetterOrDigit(s.charAt(i)))
+						i = i + 1;
+				}
+				else if (s.startsWith("<<", i) || s.startsWith("==", i) || s.startsWith("!=", i)
+						|| s.startsWith("<=", i) || s.startsWith(">=", i))
+					i = i + 2;
+				else if ("+-*/%&()<>{}=;,".indexOf(c) >= 0)
+					i = i + 1;
+				else
+					throw new AssemblerException("Invalid character " + c + ".  Line Number: " + lineNumber);
+				tokens.add(s.substring(start, i));
+				tokenLines.add(lineNumber);
+			}
+			lineNumber = lineNumber + 1;
+			s = br.readLine();
+		}
+	}
+
+	// ------------------------------------------------------------------
+	// Statements
+	// ------------------------------------------------------------------
+
+	private void statement() throws AssemblerException {
+		String t = next();
+		if (t.equals("{")) {
+			while (!peek().equals("}"))
+				statement();
+			expect("}");
+		}
+		else if (t.equals("var")) {
+			do {
+				String name = name();
+				int value = 0;
+				if (peek().equals("=")) {
+					next();
+					Node e = expression();
+					if (e.kind != 'n')
+						throw error("Initial value of " + name + " must be a constant");
+					value = Alu.toSigned(e.value);
+				}
+				variables.put(name, value);
+			} while (accept(","));
+			expect(";");
+		}
+		else if (t.equals("if")) {
+			expect("(");
+			Node[] cond = condition();
+			expect(")");
+			String elseLabel = newLabel();
+			branchIfFalse(cond, elseLabel);
+			statement();
+			if (accept("else")) {
+				String endLabel = newLabel();
+				emit("br " + endLabel);
+				emitLabel(elseLabel);
+				statement();
+				emitLabel(endLabel);
+			}
+			else
+				emitLabel(elseLabel);
+		}
+		else if (t.equals("while")) {
+			// The test is at the bottom of the loop, so the only branch
+			// taken each time around the loop is the one back to the top.
+			expect("(");
+			Node[] cond = condition();
+			expect(")");
+			String bodyLabel = newLabel();
+			String testLabel = newLabel();
+			emit("br " + testLabel);
+			emitLabel(bodyLabel);
+			statement();
+			emitLabel(testLabel);
+			branchIfTrue(cond, bodyLabel);
+		}
+		else if (isName(t)) {
+			expect("=");
+			Node e = expression();
+			expect(";");
+			declare(t);
+			generate(e, 0);
+			emit("stor " + t);
+			acVariable = t;
+		}
+		else
+			throw error("Statement cannot start with " + t);
+	}
+
+	/**
+	 * Parses a condition.  The result is the value to test, and a node
+	 * that is not null if the condition is true when the value is 0.
+	 * The value is never negative for a true condition: < and >= are
+	 * turned into a test of the sign bit of the difference.
+	 */
+	private Node[] condition() throws AssemblerException {
+		Node left = expression();
+		String op = peek();
+		if (!op.equals("==") && !op.equals("!=") && !op.equals("<") && !op.equals(">")
+				&& !op.equals("<=") && !op.equals(">="))
+			return new Node[] {left, null};
+		next();
+		Node right = expression();
+
+		Node zero = number(0);
+		if (op.equals("=="))
+			return new Node[] {binary("-", left, right), zero};
+		if (op.equals("!="))
+			return new Node[] {binary("-", left, right), null};
+
+		// a < b and b > a are true when the sign bit of a - b is set.
+		// a >= b and b <= a are true when it is not set.
+		Node difference;
+		if (op.equals("<") || op.equals(">="))
+			difference = binary("-", left, right);
+		else
+			difference = binary("-", right, left);
+		Node sign = binary("&", difference, number(0x8000));
+		if (op.equals("<") || op.equals(">"))
+			return new Node[] {sign, null};
+		return new Node[] {sign, zero};
+	}
+
+	// ------------------------------------------------------------------
+	// Expressions
+	// ------------------------------------------------------------------
+
+	private Node expression() throws AssemblerException {
+		Node n = shiftExpression();
+		while (accept("&"))
+			n = binary("&", n, shiftExpression());
+		return n;
+	}
+
+	private Node shiftExpression() throws AssemblerException {
+		Node n = additive();
+		while (accept("<<"))
+			n = binary("<<", n, additive());
+		return n;
+	}
+
+	private Node additive() throws AssemblerException {
+		Node n = multiplicative();
+		while (peek().equals("+") || peek().equals("-")) {
+			String op = next();
+			n = binary(op, n, multiplicative());
+		}
+		return n;
+	}
+
+	private Node multiplicative() throws AssemblerException {
+		Node n = unary();
+		while (peek().equals("*") || peek().equals("/") || peek().equals("%")) {
+			String op = next();
+			n = binary(op, n, unary());
+		}
+		return n;
+	}
+
+	private Node unary() throws AssemblerException {
+		if (accept("-"))
+			return negate(unary());
+		String t = next();
+		if (t.equals("(")) {
+			Node n = expression();
+			expect(")");
+			return n;
+		}
+		if (Character.isDigit(t.charAt(0))) {
+			try {
+				int value = Integer.parseInt(t);
+				if (value > 65535)
+					throw error("Number " + t + " does not fit in 16 bits");
+				return number(value);
+			} catch (NumberFormatException nfe) {
+				throw error("Invalid number " + t);
+			}
+		}
+		if (isName(t)) {
+			declare(t);
+			return new Node('v', 0, t, null, null, null);
+		}
+		throw error("Expected a value, found " + t);
+	}
+
+	/**
+	 * Builds the tree for -e.  The minus is moved into e where that costs
+	 * nothing: -(-e) is e, -(a - b) is b - a, -(a + b) is -a - b, and
+	 * -(e * n) is e * -n.  Otherwise a unary minus node is made.
+	 */
+	static Node negate(Node e) {
+		if (e.kind == 'n')
+			return number(-e.value);
+		if (e.kind == 'u')
+			return e.left;
+		if (e.kind == 'b' && e.op.equals("-"))
+			return binary("-", e.right, e.left);
+		if (e.kind == 'b' && e.op.equals("+"))
+			return binary("-", negate(e.left), e.right);
+		if (e.kind == 'b' && e.op.equals("*") && e.right.kind == 'n')
+			return binary("*", e.left, number(-e.right.value));
+		return new Node('u', 0, null, "-", e, null);
+	}
+
+	private static Node number(int value) {
+		return new Node('n', value & 0xFFFF, null, null, null, null);
+	}
+
+	/**
+	 * Builds a binary operator node.  If both operands are constants the
+	 * value is computed here, and operations that do nothing are removed.
+	 */
+	private static Node binary(String op, Node left, Node right) {
+		int aluOp = aluOp(op);
+		if (left.kind == 'n' && right.kind == 'n')
+			return number(Alu.compute(aluOp, left.value, right.value));
+		if (right.kind == 'n') {
+			int v = right.value;
+			if ((v == 0 && (op.equals("+") || op.equals("-") || op.equals("<<")))
+					|| (v == 1 && (op.equals("*") || op.equals("/")))
+					|| (v == 0xFFFF && op.equals("&")))
+				return left;
+		}
+		if (left.kind == 'n' && isCommutative(op))
+			return binary(op, right, left);
+		return new Node('b', 0, null, op, left, right);
+	}
+
+	// ------------------------------------------------------------------
+	// Code generation
+	// ------------------------------------------------------------------
+
+	/**
+	 * Generates code that leaves the value of e in the accumulator.
+	 *
+	 * @param e the expression
+	 * @param depth the first free temporary
+	 */
+	private void generate(Node e, int depth) {
+		if (e.kind == 'n') {
+			emit("clac");
+			if (e.value != 0)
+				emitOperation("+", e.value);
+		}
+		else if (e.kind == 'v') {
+			if (!e.name.equals(acVariable)) {
+				emit("clac");
+				emit("add " + e.name);
+			}
+			acVariable = e.name;
+		}
+		else if (e.kind == 'u' && e.left.kind == 'v') {
+			// -x is 0 - x
+			emit("clac");
+			emit("sub " + e.left.name);
+		}
+		else if (e.kind == 'u') {
+			// -e is 0 - e, with e saved in a temporary
+			String t = temporary(depth);
+			generate(e.left, depth);
+			emit("stor " + t);
+			emit("clac");
+			emit("sub " + t);
+		}
+		else
+			generateBinary(e, depth);
+	}
+
+	private void generateBinary(Node e, int depth) {
+		Node left = e.left;
+		Node right = e.right;
+		String op = e.op;
+
+		// For commutative operators, use a variable or constant as the right
+		// operand, or compute the side that needs more temporaries first.
+		if (isCommutative(op)
+				&& ((left.isLeaf() && !right.isLeaf())
+					|| (!left.isLeaf() && !right.isLeaf() && temporariesNeeded(left) > temporariesNeeded(right)))) {
+			Node swap = left;
+			left = right;
+			right = swap;
+		}
+
+		if (right.kind == 'n') {
+			generate(left, depth);
+			emitOperation(op, right.value);
+		}
+		else if (right.kind == 'v') {
+			generate(left, depth);
+			emit(mnemonic(op) + " " + right.name);
+		}
+		else if (op.equals("-") && left.isLeaf()) {
+			// a - e is -e + a, so a does not need a temporary
+			generate(negate(right), depth);
+			if (left.kind == 'v')
+				emit("add " + left.name);
+			else
+				emitOperation("+", left.value);
+		}
+		else {
+			String t = temporary(depth);
+			generate(right, depth);
+			emit("stor " + t);
+			generate(left, depth + 1);
+			emit(mnemonic(op) + " " + t);
+		}
+	}
+
+	/**
+	 * Emits an operation with a constant operand.  The immediate opcode is
+	 * used if there is one and the value fits in 8 bits, otherwise the
+	 * constant is put in the data segment.
+	 */
+	private void emitOperation(String op, int value) {
+		int signed = Alu.toSigned(value);
+		if (!op.equals("<<") && signed >= -128 && signed <= 127)
+			emit(mnemonic(op) + "i " + signed);
+		else
+			emit(mnemonic(op) + " " + constant(signed));
+	}
+
+	/**
+	 * Returns the number of temporaries needed to compute e.
+	 */
+	private static int temporariesNeeded(Node e) {
+		if (e.isLeaf())
+			return 0;
+		if (e.kind == 'u')
+			return e.left.isLeaf() ? 0 : Math.max(temporariesNeeded(e.left), 1);
+
+		int l = temporariesNeeded(e.left);
+		int r = temporariesNeeded(e.right);
+		if (e.right.isLeaf())
+			return l;
+		if (e.left.isLeaf() && isCommutative(e.op))
+			return r;
+		if (e.left.isLeaf() && e.op.equals("-"))
+			return temporariesNeeded(negate(e.right));
+		// the right operand is saved in a temporary while the left is
+		// computed, and commutative operands are swapped to need fewer
+		if (isCommutative(e.op))
+			return Math.max(Math.max(l, r), Math.min(l, r) + 1);
+		return Math.max(r, l + 1);
+	}
+
+	/**
+	 * Branches to label if the condition is false, and falls through if
+	 * it is true.
+	 */
+	private void branchIfFalse(Node[] cond, String label) {
+		generate(cond[0], 0);
+		if (cond[1] == null)
+			emit("beqz " + label);
+		else {
+			String skip = newLabel();
+			emit("beqz " + skip);
+			emit("br " + label);
+			emitLabel(skip);
+		}
+	}
+
+	/**
+	 * Branches to label if the condition is true, and falls through if
+	 * it is false.
+	 */
+	private void branchIfTrue(Node[] cond, String label) {
+		generate(cond[0], 0);
+		if (cond[1] != null)
+			emit("beqz " + label);
+		else {
+			String skip = newLabel();
+			emit("beqz " + skip);
+			emit("br " + label);
+			emitLabel(skip);
+		}
+	}
+
+	/**
+	 * Emits an instruction.  The caller sets acVariable again if the
+	 * instruction leaves a variable in the accumulator.
+	 */
+	private void emit(String instruction) {
+		text.append(instruction).append('\n');
+		acVariable = null;
+	}
+
+	private void emitLabel(String label) {
+		text.append(".label ").append(label).append('\n');
+		acVariable = null;   // the label may be reached with anything in AC
+	}
+
+	private String newLabel() {
+		labelCount = labelCount + 1;
+		return "L" + labelCount + "__";
+	}
+
+	private String temporary(int depth) {
+		if (depth >= temporaries)
+			temporaries = depth + 1;
+		return "t" + depth + "__";
+	}
+
+	private String constant(int value) {
+		String name = (value < 0) ? "constM" + (-value) + "__" : "const" + value + "__";
+		constants.put(name, value);
+		return name;
+	}
+
+	private void declare(String name) {
+		if (!variables.containsKey(name))
+			variables.put(name, 0);
+	}
+
+	private static boolean isCommutative(String op) {
+		return op.equals("+") || op.equals("*") || op.equals("&");
+	}
+
+	private static String mnemonic(String op) {
+		return Alu.NAMES[aluOp(op)];
+	}
+
+	private static int aluOp(String op) {
+		switch (op) {
+		case "+":  return Alu.ADD;
+		case "-":  return Alu.SUB;
+		case "*":  return Alu.MUL;
+		case "/":  return Alu.DIV;
+		case "%":  return Alu.REM;
+		case "&":  return Alu.AND;
+		default:   return Alu.SHIFT;
+		}
+	}
+
+	// ------------------------------------------------------------------
+	// Tokens
+	// ------------------------------------------------------------------
+
+	private static boolean isName(String t) {
+		return Character.isLetter(t.charAt(0)) && !t.equals("var") && !t.equals("if")
+				&& !t.equals("else") && !t.equals("while");
+	}
+
+	private String name() throws AssemblerException {
+		String t = next();
+		if (!isName(t))
+			throw error("Expected a variable name, found " + t);
+		return t;
+	}
+
+	private String peek() {
+		return (position < tokens.size()) ? tokens.get(position) : "";
+	}
+
+	private String next() throws AssemblerException {
+		if (position >= tokens.size())
+			throw error("Unexpected end of program");
+		position = position + 1;
+		return tokens.get(position - 1);
+	}
+
+	private boolean accept(String t) {
+		if (!peek().equals(t))
+			return false;
+		position = position + 1;
+		return true;
+	}
+
+	private void expect(String t) throws AssemblerException {
+		if (!peek().equals(t))
+			throw error("Expected " + t + ", found " + (peek().length() == 0 ? "end of program" : peek()));
+		position = position + 1;
+	}
+
+	private AssemblerException error(String message) {
+		int i = Math.min(position, tokenLines.size() - 1);
+		int lineNumber = (i < 0) ? 0 : tokenLines.get(i);
+		return new AssemblerException(message + ".  Line Number: " + lineNumber);
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: java ExpressionCompiler input [output.asm] [-a]");
+			return;
+		}
+		String inputFileName = args[0];
+		String outputFileName = null;
+		boolean assemble = false;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-a"))
+				assemble = true;
+			else
+				outputFileName = args[i];
+		}
+		if (outputFileName == null) {
+			int dotIndex = inputFileName.lastIndexOf(".");
+			outputFileName = ((dotIndex < 0) ? inputFileName : inputFileName.substring(0, dotIndex)) + ".asm";
+		}
+
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(inputFileName));
+			String program;
+			try {
+				program = new ExpressionCompiler().compile(br);
+			} finally {
+				br.close();
+			}
+			PrintStream out = new PrintStream(outputFileName);
+			out.print(program);
+			out.close();
+
+			if (assemble)
+				Assembler.assemble(outputFileName, outputFileName.substring(0, outputFileName.length() - 4));
+		} catch (AssemblerException ae) {
+			System.out.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -1,15 +1,22 @@
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author Charles Kann
  * purpose This class implements a first pass parser for a 1-Address assembly
  *         language.  In the first pass, the purpose is to build and return
- *         a symbol table, which is here defined as a HashMap.
+ *         a symbol table, which is here defined as a HashMap.  Names
+ *         defined with .equ are put in the symbol table as Labels in
+ *         segment 'e', with the value as the address.
  *         
  * Program History:
  *     7/6/2016    - CWK - Initial release
+ *     10/18/2026  - Added .line and .error for the MacroExpander
+ *     10/18/2026  - Added .equ
+ *     10/18/2026  - The operand of .line is checked
  */
 public class FirstPassParser {
 
@@ -28,6 +35,7 @@ public class FirstPassParser {
 	public static HashMap<String, Label> parseFile(BufferedReader br) 
 			throws IOException, AssemblerException {
 		HashMap<String, Label> st = new HashMap<String, Label>();
+		LinkedHashMap<String, ConstantExpression> equs = new LinkedHashMap<String, ConstantExpression>();
 		boolean processingText = true;  // processing text of data segment.  
 		                                // Default to a text segement.
 		int currentTextAddress = 0;     // current address in processing
@@ -51,6 +59,14 @@ public class FirstPassParser {
 	    	else if (tokens[0].equals(""))
 	    		; //Skip blank line
 	    	
+	    	// .line and .error are written by the MacroExpander.  .line sets
+	    	// the line number of the next line, and .error reports an error
+	    	// found while expanding a macro.
+	    	else if (tokens[0].equals(".line"))
+	    		lineNumber = MacroExpander.lineDirective(tokens, lineNumber) - 1;
+	    	else if (tokens[0].equals(".error"))
+	    		throw new AssemblerException(s1.substring(6).trim());
+
 	    	// Check if the program segment (.text or .data) is set.
 	    	else if (tokens[0].equals(".text"))
 	    		processingText = true;
@@ -81,12 +97,28 @@ public class FirstPassParser {
 	    		
 	    		// Put the label into the symbol table.  If it is already in the symbol
 	    		// table, this is a duplicate, so give an error.
-	    		if (st.put(labelName, new Label(labelName, memAddress, memType)) != null) {
+	    		if (st.put(labelName, new Label(labelName, memAddress, memType)) != null
+	    				|| equs.containsKey(labelName)) {
 	    			throw new AssemblerException("Duplicate label name at: " + lineNumber);
 	    		}
 
 	    	}
 	    	
+	    	// Process a .equ.  The expression is compiled now, but it can use
+	    	// labels and names defined later, so it is resolved at the end.
+	    	else if (tokens[0].equals(".equ")) {
+	    		if (tokens.length < 3 || (tokens.length > 3 && !tokens[3].startsWith("#")))
+	    			throw new AssemblerException("Syntax is '.equ name value'.  Line number: " + lineNumber);
+	    		ConstantExpression value;
+	    		try {
+	    			value = ConstantExpression.compile(tokens[2], lineNumber);
+	    		} catch (AssemblerException ae) {
+	    			throw new AssemblerException(ae.getMessage() + " - Line Number: " + lineNumber);
+	    		}
+	    		if (st.containsKey(tokens[1]) || equs.put(tokens[1], value) != null)
+	    			throw new AssemblerException("Duplicate label name at: " + lineNumber);
+	    	}
+	    	
 	    	// Labels, blank lines, and comments do not take up program or data space, 
 	    	// so they were not accounted for in the data or text space.  What is 
 	    	// left to process is .number assembler directives in the data space,
@@ -112,6 +144,14 @@ public class FirstPassParser {
 	    	lineNumber = lineNumber + 1;
 	    	s=br.readLine();
 	    }
+	    
+	    // All of the labels are known, so the .equ names can be resolved.
+	    // Only the first error is reported, like the rest of the pass.
+	    LinkedHashMap<ConstantExpression, String> errors = ConstantExpression.define(equs, st);
+	    if (!errors.isEmpty()) {
+	    	Map.Entry<ConstantExpression, String> e = errors.entrySet().iterator().next();
+	    	throw new AssemblerException(e.getValue() + " - Line Number: " + e.getKey().lineNumber);
+	    }
 	    return st;
 	}
 
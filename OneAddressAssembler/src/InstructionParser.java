@@ -1,4 +1,6 @@
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Charles Kann
@@ -31,44 +33,51 @@ import java.util.HashMap;
  *           
  * Program History:
  *     7/6/2016    - CWK - Initial release
+ *     10/18/2026  - Negative operands are truncated to 2 hex digits
+ *     10/18/2026  - Operands can be constant expressions and .equ names
+ *     10/18/2026  - The parsers table can not be changed, so it is thread safe
  */
 
 public class InstructionParser {
 	
-	// the following is the table of parsers
-	static HashMap<String, Parser> parsers = new HashMap<String, Parser>(); 
+	// the following is the table of parsers.  It is not changed after the
+	// class is loaded, and the parsers keep no state, so any number of
+	// threads can use them at once.
+	static final Map<String, Parser> parsers; 
 	
      // Static initializer is used to create a HashMap of Parser to be 
      // returned in the getParser factory method.  
 	static {
-		parsers.put("add",  new AddParser());	
-		parsers.put("addi", new AddiParser());
-		parsers.put("sub",  new SubParser());	
-		parsers.put("subi", new SubiParser());
+		HashMap<String, Parser> table = new HashMap<String, Parser>();
+		table.put("add",  new AddParser());	
+		table.put("addi", new AddiParser());
+		table.put("sub",  new SubParser());	
+		table.put("subi", new SubiParser());
 		
 		//mul, muli, div, and divi, rem, remi, and, andi, and shift
-		parsers.put("mul",  new MulParser());	
-		parsers.put("muli", new MuliParser());
+		table.put("mul",  new MulParser());	
+		table.put("muli", new MuliParser());
 		
-		parsers.put("div",  new DivParser());	
-		parsers.put("divi", new DiviParser());
+		table.put("div",  new DivParser());	
+		table.put("divi", new DiviParser());
 		
-		parsers.put("rem",  new RemParser());	
-		parsers.put("remi", new RemiParser());
+		table.put("rem",  new RemParser());	
+		table.put("remi", new RemiParser());
 		
-		parsers.put("and",  new AndParser());	
-		parsers.put("andi", new AndiParser());
+		table.put("and",  new AndParser());	
+		table.put("andi", new AndiParser());
 		
-		parsers.put("shift",  new ShiftParser());	
+		table.put("shift",  new ShiftParser());	
 		
 		
-		parsers.put("clac", new ClacParser());		
-		parsers.put("stor", new StorParser());
-		parsers.put("beqz", new BeqzParser());
+		table.put("clac", new ClacParser());		
+		table.put("stor", new StorParser());
+		table.put("beqz", new BeqzParser());
 		
 		//unconditional branch 
-		parsers.put("br", new BrParser());
+		table.put("br", new BrParser());
 
+		parsers = Collections.unmodifiableMap(table);
 	}
 	
 	
@@ -112,17 +121,7 @@ public class InstructionParser {
 	static private class AddParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for add - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "add", lineNumber);
 			return ("20" + branchAddress);
 		}
 	}
@@ -136,7 +135,7 @@ public class InstructionParser {
 	static private class AddiParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			String branchAddress = shortStringToHexString(s,lineNumber);
+			String branchAddress = operandToHexString(s, st, "addi", lineNumber);
 			return ("10" + branchAddress);
 		}
 	}
@@ -150,17 +149,7 @@ public class InstructionParser {
 	static private class SubParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for add - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "sub", lineNumber);
 			return ("21" + branchAddress);
 		}
 	}
@@ -174,7 +163,7 @@ public class InstructionParser {
 	static private class SubiParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			String branchAddress = shortStringToHexString(s,lineNumber);
+			String branchAddress = operandToHexString(s, st, "subi", lineNumber);
 			return ("11" + branchAddress);
 		}
 	}
@@ -189,17 +178,7 @@ public class InstructionParser {
 	static private class MulParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for mul - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "mul", lineNumber);
 			return ("22" + branchAddress);
 		}
 	}
@@ -213,7 +192,7 @@ public class InstructionParser {
 	static private class MuliParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			String branchAddress = shortStringToHexString(s,lineNumber);
+			String branchAddress = operandToHexString(s, st, "muli", lineNumber);
 			return ("12" + branchAddress);
 		}
 	}
@@ -227,17 +206,7 @@ public class InstructionParser {
 	static private class DivParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for div - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "div", lineNumber);
 			return ("23" + branchAddress);
 		}
 	}
@@ -251,7 +220,7 @@ public class InstructionParser {
 	static private class DiviParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			String branchAddress = shortStringToHexString(s,lineNumber);
+			String branchAddress = operandToHexString(s, st, "divi", lineNumber);
 			return ("13" + branchAddress);
 		}
 	}
@@ -267,17 +236,7 @@ public class InstructionParser {
 	static private class RemParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for rem - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "rem", lineNumber);
 			return ("24" + branchAddress);
 		}
 	}
@@ -291,7 +250,7 @@ public class InstructionParser {
 	static private class RemiParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			String branchAddress = shortStringToHexString(s,lineNumber);
+			String branchAddress = operandToHexString(s, st, "remi", lineNumber);
 			return ("14" + branchAddress);
 		}
 	}
@@ -306,17 +265,7 @@ public class InstructionParser {
 	static private class AndParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for and - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "and", lineNumber);
 			return ("25" + branchAddress);
 		}
 	}
@@ -330,7 +279,7 @@ public class InstructionParser {
 	static private class AndiParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			String branchAddress = shortStringToHexString(s,lineNumber);
+			String branchAddress = operandToHexString(s, st, "andi", lineNumber);
 			return ("15" + branchAddress);
 		}
 	}
@@ -345,17 +294,7 @@ public class InstructionParser {
 	static private class ShiftParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			// if first character is a letter, assume a label and convert s to address
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for shift - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());
-
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "shift", lineNumber);
 			return ("26" + branchAddress);
 		}
 	}
@@ -382,14 +321,7 @@ public class InstructionParser {
 	static private class StorParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s + " not found for sub - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());				
-			}
-
-			String branchAddress = shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "stor", lineNumber);
 			return ("40" + branchAddress);
 		}
 	}
@@ -403,15 +335,7 @@ public class InstructionParser {
 	static private class BeqzParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for sub - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());				
-			}
-			
-			String branchAddress =shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "beqz", lineNumber);
 			return ("50" + branchAddress);
 		}
 	}
@@ -425,19 +349,65 @@ public class InstructionParser {
 	static private class BrParser implements Parser {
 		public String parse(String s, HashMap<String, Label>  st, int lineNumber) 
 				throws AssemblerException {
-			if (Character.isLetter(s.charAt(0))) {
-				Label l = st.get(s);
-				if (l == null) 
-					throw new AssemblerException("label " + s 
-							+ " not found for br - Line Number: " + lineNumber);
-				s = Integer.toString(l.getAddress());				
-			}
-			
-			String branchAddress =shortStringToHexString(s, lineNumber);
+			String branchAddress = operandToHexString(s, st, "br", lineNumber);
 			return ("60" + branchAddress);
 		}
 	}
 
+	/**
+	 * operandToHexString evaluates the operand of an instruction, which is
+	 * a number, a label, a .equ name, or a constant expression using them,
+	 * and returns the 2 character hex string for it.
+	 *
+	 * @param s the operand
+	 * @param st the symbol table to look up labels
+	 * @param op the operator, for error messages
+	 * @param lineNumber The line number for reporting errors
+	 * @return the two digit hex string representing the operand
+	 * @throws AssemblerException return any parsing errors
+	 */
+	public static String operandToHexString(String s, HashMap<String, Label> st, String op,
+			int lineNumber) throws AssemblerException {
+		long number = evaluate(s, st, op, lineNumber);
+		if (number > 127 || (number < -128))
+			throw new AssemblerException(" number must be -128 < n < 127.  Line Number: " + lineNumber);
+		return shortStringToHexString(Long.toString(number), lineNumber);
+	}
+
+	/**
+	 * numberToHexString evaluates the value of a .number, which can be a
+	 * constant expression, and returns the 4 character hex string for it.
+	 *
+	 * @param s the value
+	 * @param st the symbol table to look up labels
+	 * @param lineNumber The line number for reporting errors
+	 * @return the four digit hex string representing the value
+	 * @throws AssemblerException return any parsing errors
+	 */
+	public static String numberToHexString(String s, HashMap<String, Label> st, int lineNumber)
+			throws AssemblerException {
+		long number = evaluate(s, st, ".number", lineNumber);
+		if (number > 32767 || (number < -32768))
+			throw new AssemblerException(" number must be -32768 < n < 32767.  Line Number: " + lineNumber);
+		return intStringToHexString(Long.toString(number), lineNumber);
+	}
+
+	/**
+	 * Evaluates an operand.  A name in the symbol table is used as is, so
+	 * labels with characters the expressions do not allow still work.
+	 */
+	static long evaluate(String s, HashMap<String, Label> st, String op, int lineNumber)
+			throws AssemblerException {
+		Label l = st.get(s);
+		if (l != null)
+			return l.getAddress();
+		try {
+			return ConstantExpression.compile(s, lineNumber).evaluate(st, op);
+		} catch (AssemblerException ae) {
+			throw new AssemblerException(ae.getMessage() + " - Line Number: " + lineNumber);
+		}
+	}
+
 	/**
 	 * intStringToHexString takes in an integer and returns a 4 character string 
 	 * representing the hex value 
@@ -481,7 +451,7 @@ public class InstructionParser {
 	 * 
 	 * @param input The integer value of the string to convert.
 	 * @param lineNumber The line number for reporting errors
-	 * @return the four digit hex string representing the number
+	 * @return the two digit hex string representing the number
 	 * @throws AssemblerException return any parsing errors
 	 */
 	public  static String shortStringToHexString(String input, int lineNumber) 
@@ -506,7 +476,7 @@ public class InstructionParser {
 		
 		// truncate if too long (used for negative values)
 		if (returnString.length() > 2)
-			return returnString.substring(returnString.length()-4, returnString.length());
+			return returnString.substring(returnString.length()-2, returnString.length());
 		
 		return returnString;
 	}
@@ -6,12 +6,14 @@
  * 
  * Program History:
  *     7/6/2016    - CWK - Initial release
+ *     10/18/2026  - Added segment e for .equ
  */
 public class Label {
 	final String name;       // The name of the label
 	final int address;       // The adddress of the label
 	final Character segment; // memory the label is located in, 
-	                         // t for text, d for data
+	                         // c for text, d for data, e for
+	                         // a .equ, where address is the value
 	
 	public Label(String name, int address, char segment){
 		this.name = name;
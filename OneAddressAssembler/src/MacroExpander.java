@@ -0,0 +1,617 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * purpose This class implements the macro pre-pass for the 1-Address assembly
+ *         language.  It is a BufferedReader that sits between the assembly
+ *         file and the FirstPassParser/SecondPassParser, so each call to
+ *         readLine returns the next line of the program with all macros
+ *         and pseudo-instructions already expanded.  The file is streamed,
+ *         so only the macro definitions are kept in memory.
+ *
+ * Macros are defined as follows:
+ *
+ *         .macro name param1 param2 ...
+ *             add \param1
+ *             beqz @done
+ *             ...
+ *         .label @done
+ *         .endm
+ *
+ *         Inside the body, \param is replaced by the argument given when the
+ *         macro is used.  Labels starting with @ are local to one expansion,
+ *         and are renamed to name__N, where N is unique for each expansion.
+ *         A body may use other macros, but not define them.  Macros can
+ *         only be nested MAX_DEPTH deep, and one use of a macro can only
+ *         expand to MAX_LINES lines, so a macro that uses itself is an
+ *         error, not a hang.
+ *
+ *         Names ending in __ and a number are kept for the local labels.
+ *         A .label or .equ in the program with the same name as a local
+ *         label of an expansion is an error, reported on the second of
+ *         the two lines.  Programs without macros, such as the output of
+ *         the optimizers, can still use these names.
+ *
+ *         The directive ".const name value" asks for a data word holding
+ *         value.  Each constant is written once, at the end of the program,
+ *         in the .data segment, so it does not move any of the user's data.
+ *         Its lines follow a .line with the line of the first .const for
+ *         it, so an error in the constant is reported on that line.
+ *
+ *         The built in pseudo-instructions are defined as macros in
+ *         BUILTIN_LIBRARY.  A macro defined in the program with the same
+ *         name replaces the built in one.
+ *
+ *         The expanded lines are written with a ".line n" directive in
+ *         front of them, so that the parsers report errors on the line in
+ *         the file where the macro was used.  Errors found while expanding
+ *         are written as ".error message" lines, which the parsers report
+ *         as an AssemblerException.
+ *
+ *         The read methods return the same expanded lines as readLine, one
+ *         character at a time, with a '\n' at the end of each line, so the
+ *         expander can be given to code that takes any Reader.  Marks are
+ *         not supported.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - read returns the expanded lines, in place of throwing
+ *     10/18/2026  - Documented the values blt compares right
+ *     10/18/2026  - A program label with the name of a local label is an
+ *                   error, not a duplicate label on the wrong line
+ *     10/18/2026  - Errors in the constant pool give the line of the .const
+ *     10/18/2026  - The builtins table can not be changed, so it is thread safe
+ *     10/18/2026  - Parameter and local label names can have _ in them
+ *     10/18/2026  - An expansion stops at the first nesting error, and is
+ *                   limited to MAX_LINES lines
+ *     10/18/2026  - Added lineDirective, which checks the operand of .line
+ */
+public class MacroExpander extends BufferedReader {
+
+	/**
+	 * The built in pseudo-instructions.  These are the cheapest sequences
+	 * of real instructions that implement each pseudo-instruction.
+	 */
+	static final String BUILTIN_LIBRARY =
+		// load addr - AC = memory[addr]
+		  ".macro load addr\n"
+		+ "clac\n"
+		+ "add \\addr\n"
+		+ ".endm\n"
+		// inc - AC = AC + 1
+		+ ".macro inc\n"
+		+ "addi 1\n"
+		+ ".endm\n"
+		// neg - AC = -AC
+		+ ".macro neg\n"
+		+ "muli -1\n"
+		+ ".endm\n"
+		// bnez target - branch to target if AC is not 0
+		+ ".macro bnez target\n"
+		+ "beqz @skip\n"
+		+ "br \\target\n"
+		+ ".label @skip\n"
+		+ ".endm\n"
+		// blt addr target - branch to target if AC < memory[addr].  The
+		// compare is done by subtracting and testing the sign bit, so
+		// AC is lost, and the result is only right when AC - memory[addr]
+		// fits in 16 bits, -32768 to 32767.  For example, AC = 32767 and
+		// memory[addr] = -1 gives -32768, and branches.  Values that are
+		// both in 0 to 32767, or both in -32768 to -1, always compare
+		// right.
+		+ ".macro blt addr target\n"
+		+ ".const signBit__ -32768\n"
+		+ "sub \\addr\n"
+		+ "and signBit__\n"
+		+ "beqz @skip\n"
+		+ "br \\target\n"
+		+ ".label @skip\n"
+		+ ".endm\n";
+
+	// Macros can use other macros, this stops a macro that uses itself.
+	static final int MAX_DEPTH = 64;
+	// The most lines one use of a macro can expand to.  This stops a macro
+	// that uses itself more than once, or any other macro that grows too
+	// fast, before it fills memory.
+	static final int MAX_LINES = 1000000;
+
+	// the table of built in macros, created once from BUILTIN_LIBRARY.
+	// It can not be changed, so the expanders on all threads can share it.
+	static final Map<String, Macro> builtins;
+
+	static {
+		try {
+			MacroExpander library = new MacroExpander(new StringReader(BUILTIN_LIBRARY));
+			String s = library.readLine();
+			while (s != null) {
+				if (s.startsWith(".error"))
+					throw new IllegalStateException("Bad builtin macro library: " + s);
+				s = library.readLine();
+			}
+			builtins = Collections.unmodifiableMap(new HashMap<String, Macro>(library.macros));
+		} catch (IOException ioe) {
+			throw new IllegalStateException(ioe);
+		}
+	}
+
+	private final HashMap<String, Macro> macros = new HashMap<String, Macro>();
+	private final LinkedHashMap<String, String> constants = new LinkedHashMap<String, String>();
+	private final HashMap<String, Integer> constantLines = new HashMap<String, Integer>();
+	private final ArrayDeque<String> pending = new ArrayDeque<String>();
+	private int sourceLine = 0;        // line number in the file
+	private int expansionCount = 0;    // used to make local labels unique
+	private boolean expansionStopped = false;   // an error ended the expansion
+	// The names of the form name__N defined by the program and by the
+	// expansions, and the lines they are on, to find names used by both.
+	private final HashMap<String, Integer> programLocalNames = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> expansionLocalNames = new HashMap<String, Integer>();
+	private boolean constantsWritten = false;
+	private String partial = null;     // the line read is returning, with its '\n'
+	private int partialIndex = 0;      // the next character of partial to return
+
+	public MacroExpander(Reader in) {
+		super(in);
+	}
+
+	/**
+	 * Returns the next line of the program, with macros expanded.  If
+	 * read has returned part of a line, the rest of it is returned.
+	 *
+	 * @return the next line, or null at the end of the program
+	 * @throws IOException error reading the file
+	 */
+	@Override
+	public String readLine() throws IOException {
+		if (partial != null) {
+			String rest = partial.substring(partialIndex, partial.length() - 1);
+			partial = null;
+			return rest;
+		}
+		return nextLine();
+	}
+
+	/**
+	 * Reads the next line of the file and expands it.
+	 */
+	private String nextLine() throws IOException {
+		if (!pending.isEmpty())
+			return pending.poll();
+
+		String s = super.readLine();
+		if (s == null) {
+			if (!constantsWritten) {
+				constantsWritten = true;
+				writeConstants();
+				return pending.poll();
+			}
+			return null;
+		}
+		sourceLine = sourceLine + 1;
+
+		String[] tokens = s.trim().split("\\s+");
+		if (tokens[0].equals(".macro")) {
+			// The definition is removed from the program, so tell the
+			// parsers which line follows it.
+			String error = readDefinition(tokens);
+			if (error != null)
+				return ".error " + error;
+			return ".line " + (sourceLine + 1);
+		}
+		else if (tokens[0].equals(".endm"))
+			return ".error .endm without .macro";
+		else if (tokens[0].equals(".const"))
+			return addConstant(tokens);
+
+		Macro m = findMacro(tokens[0]);
+		if (m == null) {
+			if ((tokens[0].equals(".label") || tokens[0].equals(".equ"))
+					&& tokens.length > 1 && isLocalName(tokens[1])) {
+				Integer line = expansionLocalNames.get(tokens[1]);
+				if (line != null)
+					return ".error Label " + tokens[1] + " is the name of a local label of the macro used at line "
+							+ line + ", names ending in __N are kept for local labels.  Line Number: " + sourceLine;
+				programLocalNames.put(tokens[1], sourceLine);
+			}
+			return s;
+		}
+
+		expansionStopped = false;
+		expand(m, tokens, sourceLine, 0);
+		pending.add(".line " + (sourceLine + 1));
+		return pending.poll();
+	}
+
+	/**
+	 * Reads the operand of a .line directive.  The expander writes them,
+	 * but a program can too, so the operand is checked here for all of
+	 * the passes.
+	 *
+	 * @param tokens the tokens of the .line directive
+	 * @param lineNumber the line the directive is on, for errors
+	 * @return the line number of the line after the directive
+	 * @throws AssemblerException the line number is missing, or is not a
+	 *         number greater than 0
+	 */
+	public static int lineDirective(String[] tokens, int lineNumber) throws AssemblerException {
+		tokens = stripComment(tokens);
+		if (tokens.length != 2)
+			throw new AssemblerException("Syntax is '.line n'.  Line Number: " + lineNumber);
+		int n;
+		try {
+			n = Integer.parseInt(tokens[1]);
+		} catch (NumberFormatException nfe) {
+			n = 0;
+		}
+		if (n < 1)
+			throw new AssemblerException(".line needs a line number > 0, found " + tokens[1]
+					+ ".  Line Number: " + lineNumber);
+		return n;
+	}
+
+	/**
+	 * Returns the number of lines read from the file so far.
+	 */
+	public int getSourceLines() {
+		return sourceLine;
+	}
+
+	/**
+	 * Reads one character of the expanded program.
+	 *
+	 * @return the character, or -1 at the end of the program
+	 * @throws IOException error reading the file
+	 */
+	@Override
+	public int read() throws IOException {
+		char[] c = new char[1];
+		return (read(c, 0, 1) < 0) ? -1 : c[0];
+	}
+
+	/**
+	 * Reads characters of the expanded program.  The characters come from
+	 * one line at a time, so fewer than len may be returned.
+	 *
+	 * @return the number of characters read, or -1 at the end of the program
+	 * @throws IOException error reading the file
+	 */
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > cbuf.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		if (partial == null) {
+			String s = nextLine();
+			if (s == null)
+				return -1;
+			partial = s + "\n";
+			partialIndex = 0;
+		}
+		int n = Math.min(len, partial.length() - partialIndex);
+		partial.getChars(partialIndex, partialIndex + n, cbuf, off);
+		partialIndex = partialIndex + n;
+		if (partialIndex == partial.length())
+			partial = null;
+		return n;
+	}
+
+	/**
+	 * Skips characters of the expanded program.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		if (n < 0)
+			throw new IllegalArgumentException("skip value is negative");
+		char[] buffer = new char[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (count < 0)
+				break;
+			skipped = skipped + count;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return partial != null || !pending.isEmpty() || super.ready();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark not supported");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset not supported");
+	}
+
+	/**
+	 * Reads a macro definition, the lines from .macro to .endm, and
+	 * adds it to the macro table.
+	 *
+	 * @param header the tokens on the .macro line
+	 * @return an error message, or null if the definition is valid
+	 * @throws IOException error reading the file
+	 */
+	private String readDefinition(String[] header) throws IOException {
+		int startLine = sourceLine;
+		ArrayList<String[]> body = new ArrayList<String[]>();
+		String s = super.readLine();
+		while (s != null) {
+			sourceLine = sourceLine + 1;
+			String[] tokens = stripComment(s.trim().split("\\s+"));
+			if (tokens.length == 0)
+				; // Skip comments and blank lines
+			else if (tokens[0].equals(".endm"))
+				break;
+			else if (tokens[0].equals(".macro"))
+				return "Macros cannot be defined inside a macro. Line Number: " + sourceLine;
+			else
+				body.add(tokens);
+			s = super.readLine();
+		}
+		if (s == null)
+			return "Missing .endm for macro started at Line Number: " + startLine;
+
+		if (header.length < 2)
+			return "Syntax is '.macro name params'.  Line Number: " + startLine;
+		String name = header[1];
+		if (InstructionParser.getParser(name) != null)
+			return "Macro " + name + " has the same name as an instruction.  Line Number: " + startLine;
+		if (macros.containsKey(name))
+			return "Duplicate macro name " + name + ".  Line Number: " + startLine;
+
+		String[] params = new String[header.length - 2];
+		for (int i = 0; i < params.length; i++)
+			params[i] = header[i + 2];
+		macros.put(name, new Macro(name, params, body.toArray(new String[body.size()][])));
+		return null;
+	}
+
+	/**
+	 * Expands one use of a macro into the pending lines.  Each line is
+	 * preceded by a .line directive so errors refer to the use of the macro.
+	 *
+	 * @param m the macro to expand
+	 * @param tokens the tokens on the line using the macro
+	 * @param lineNumber the line in the file the macro was used on
+	 * @param depth how many macros are being expanded
+	 */
+	private void expand(Macro m, String[] tokens, int lineNumber, int depth) {
+		tokens = stripComment(tokens);
+		if (depth > MAX_DEPTH) {
+			stopExpansion("Macro " + m.name + " nested too deeply.", lineNumber);
+			return;
+		}
+		if (tokens.length - 1 != m.params.length) {
+			pending.add(".line " + lineNumber);
+			pending.add(".error Macro " + m.name + " needs " + m.params.length
+					+ " operands.  Line Number: " + lineNumber);
+			return;
+		}
+
+		expansionCount = expansionCount + 1;
+		String suffix = "__" + expansionCount;
+		for (String[] line : m.body) {
+			String[] expanded = new String[line.length];
+			for (int i = 0; i < line.length; i++)
+				expanded[i] = substitute(line[i], m.params, tokens, suffix);
+
+			if (expanded[0].equals(".const")) {
+				String error = addConstant(expanded);
+				if (error.length() > 0) {
+					pending.add(".line " + lineNumber);
+					pending.add(error);
+				}
+				continue;
+			}
+
+			Macro inner = findMacro(expanded[0]);
+			if (inner != null) {
+				expand(inner, expanded, lineNumber, depth + 1);
+				if (expansionStopped)
+					return;
+				continue;
+			}
+
+			if (expanded[0].equals(".label") && line.length > 1 && line[1].startsWith("@")) {
+				Integer defined = programLocalNames.get(expanded[1]);
+				if (defined != null) {
+					pending.add(".line " + lineNumber);
+					pending.add(".error Local label " + expanded[1] + " of macro " + m.name
+							+ " is already a label at line " + defined
+							+ ", names ending in __N are kept for local labels.  Line Number: " + lineNumber);
+					continue;
+				}
+				expansionLocalNames.put(expanded[1], lineNumber);
+			}
+
+			StringBuilder sb = new StringBuilder(expanded[0]);
+			for (int i = 1; i < expanded.length; i++)
+				sb.append(' ').append(expanded[i]);
+			pending.add(".line " + lineNumber);
+			pending.add(sb.toString());
+			if (pending.size() / 2 > MAX_LINES) {
+				stopExpansion("Macro " + m.name + " expands to more than " + MAX_LINES + " lines.", lineNumber);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Ends the expansion of a macro use with an error.  The lines already
+	 * expanded are dropped, and no more of the macro is expanded, so a
+	 * macro that uses itself fails at once instead of expanding every
+	 * branch of the recursion.
+	 *
+	 * @param message the error
+	 * @param lineNumber the line in the file the macro was used on
+	 */
+	private void stopExpansion(String message, int lineNumber) {
+		pending.clear();
+		pending.add(".line " + lineNumber);
+		pending.add(".error " + message + "  Line Number: " + lineNumber);
+		expansionStopped = true;
+	}
+
+	/**
+	 * Replaces the parameters and local labels in one token of a macro body.
+	 *
+	 * @param token the token from the body
+	 * @param params the parameter names of the macro
+	 * @param args the tokens from the line using the macro, args[0] is the name
+	 * @param suffix the suffix that makes local labels unique
+	 * @return the token to use in the expanded line
+	 */
+	private static String substitute(String token, String[] params, String[] args, String suffix) {
+		if (token.indexOf('\\') < 0 && token.indexOf('@') < 0)
+			return token;
+
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while (i < token.length()) {
+			char c = token.charAt(i);
+			int end = i + 1;
+			while (end < token.length() && isNameChar(token.charAt(end)))
+				end = end + 1;
+			String name = token.substring(i + 1, end);
+
+			if (c == '@' && name.length() > 0) {
+				sb.append(name).append(suffix);
+				i = end;
+				continue;
+			}
+			if (c == '\\') {
+				int p = indexOf(params, name);
+				if (p >= 0) {
+					sb.append(args[p + 1]);
+					i = end;
+					continue;
+				}
+			}
+			sb.append(c);
+			i = i + 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns true if c can be in a parameter or local label name.  The
+	 * names follow the rule of ConstantExpression, letters, digits and _.
+	 */
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Adds a .const directive to the constant pool.
+	 *
+	 * @param tokens the tokens of the .const directive
+	 * @return the line to give to the parsers in place of the directive
+	 */
+	private String addConstant(String[] tokens) {
+		tokens = stripComment(tokens);
+		if (tokens.length != 3)
+			return ".error Syntax is '.const name value'.  Line Number: " + sourceLine;
+		String old = constants.get(tokens[1]);
+		if (old != null && !old.equals(tokens[2]))
+			return ".error Constant " + tokens[1] + " defined with two values.  Line Number: " + sourceLine;
+		if (old == null) {
+			constants.put(tokens[1], tokens[2]);
+			constantLines.put(tokens[1], sourceLine);
+		}
+		return "";
+	}
+
+	/**
+	 * Writes the constant pool, as a .data segment at the end of the program.
+	 * Each line of a constant is given the line of its first .const.
+	 */
+	private void writeConstants() {
+		if (constants.isEmpty())
+			return;
+		pending.add(".data");
+		for (String name : constants.keySet()) {
+			int line = constantLines.get(name);
+			pending.add(".line " + line);
+			pending.add(".label " + name);
+			pending.add(".line " + line);
+			pending.add(".number " + constants.get(name));
+		}
+	}
+
+	/**
+	 * Finds the macro for an operator.  Macros in the program are used
+	 * before the built in macros.
+	 */
+	private Macro findMacro(String name) {
+		Macro m = macros.get(name);
+		if (m == null && builtins != null)   // null while the library is read
+			m = builtins.get(name);
+		return m;
+	}
+
+	/**
+	 * Removes a comment at the end of a line, and the empty token left
+	 * by split for a blank line.
+	 */
+	private static String[] stripComment(String[] tokens) {
+		int n = 0;
+		while (n < tokens.length && !tokens[n].startsWith("#") && tokens[n].length() > 0)
+			n = n + 1;
+		if (n == tokens.length)
+			return tokens;
+		String[] result = new String[n];
+		System.arraycopy(tokens, 0, result, 0, n);
+		return result;
+	}
+
+	/**
+	 * Returns true if a name has the form of a local label, name__N.
+	 */
+	static boolean isLocalName(String name) {
+		int end = name.length();
+		while (end > 0 && Character.isDigit(name.charAt(end - 1)))
+			end = end - 1;
+		return end < name.length() && end > 2 && name.startsWith("__", end - 2);
+	}
+
+		private static int indexOf(String[] a, String s) {
+		for (int i = 0; i < a.length; i++)
+			if (a[i].equals(s))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * A macro definition.  The body is kept as tokens, so the lines are
+	 * only split once no matter how often the macro is used.
+	 */
+	static class Macro {
+		final String name;
+		final String[] params;
+		final String[][] body;
+
+		Macro(String name, String[] params, String[][] body) {
+			this.name = name;
+			this.params = params;
+			this.body = body;
+		}
+	}
+}
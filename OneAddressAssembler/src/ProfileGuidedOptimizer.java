@@ -0,0 +1,480 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * purpose This program uses an execution profile to reorder the basic
+ *         blocks in the text segment, so the path that is run most often
+ *         falls through instead of branching.  beqz is the only conditional
+ *         branch, so when the not-taken path of a beqz is not the next
+ *         block a br has to be added, and when the target of a br is the
+ *         next block the br can be removed.
+ *
+ * Procedure
+ *          1 - Read the program through the MacroExpander, and split the
+ *              text segment into basic blocks.  A block starts at address 0,
+ *              at a label, at a numeric branch target, and after a branch.
+ *              The data segment is kept as it is.
+ *          2 - Read the profile.  The profile has lines of the form
+ *                  block addr count           times the block at addr ran
+ *                  branch addr taken nottaken counts for the beqz at addr
+ *              where addr is an address in the original program, or a label
+ *              for a block.  # starts a comment.
+ *          3 - Join blocks into chains, taking the edges with the highest
+ *              counts first.  An edge can be laid out as a fall through when
+ *              it goes from the last block of a chain to the first block of
+ *              another.  The edges are a block falling through, the target
+ *              of a br, and the not-taken path of a beqz.  The chain with the
+ *              block at address 0 is first, then the others hottest first.
+ *          4 - Write the blocks in the new order.  A br is removed when its
+ *              target is the next block, and a br is added after a block
+ *              whose fall through is not the next block.  All branches use
+ *              labels, so the Assembler resolves the new addresses.  The new
+ *              program is assembled to .mc and .dat files.
+ *
+ *         Usage: java ProfileGuidedOptimizer input.asm profile output
+ *         writes output.asm, output.mc and output.dat.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - .equ lines are kept with the data
+ *     10/18/2026  - Text labels used in expressions and .number values
+ *                   are found, not only operands that are a text label
+ *     10/18/2026  - The operand of .line is checked
+ */
+public class ProfileGuidedOptimizer {
+
+	static final String END_LABEL = "pgoEnd__";
+
+	// kinds of block ending
+	static final int FALL = 0;
+	static final int BR = 1;
+	static final int BEQZ = 2;
+
+	/**
+	 * A basic block.  target and fall are indexes of blocks, or -1 for the
+	 * end of the program.
+	 */
+	static class Block {
+		final int index;
+		final int address;
+		final ArrayList<String> labels = new ArrayList<String>();
+		final ArrayList<String> instructions = new ArrayList<String>();
+		int ending = FALL;
+		int target = -1;
+		int fall = -1;
+		long count = 0;
+		long taken = -1;
+		long notTaken = -1;
+		Block next = null;       // next block in the chain
+		Block head = this;       // first block in the chain
+
+		Block(int index, int address) {
+			this.index = index;
+			this.address = address;
+		}
+	}
+
+	/**
+	 * An edge that can be made a fall through.
+	 */
+	static class Edge {
+		final Block from;
+		final Block to;
+		final long weight;
+
+		Edge(Block from, Block to, long weight) {
+			this.from = from;
+			this.to = to;
+			this.weight = weight;
+		}
+	}
+
+	private final ArrayList<Block> blocks = new ArrayList<Block>();
+	private final ArrayList<String> dataLines = new ArrayList<String>();
+	private final ArrayList<String> endLabels = new ArrayList<String>();
+	private final HashMap<String, Integer> textLabels = new HashMap<String, Integer>();
+	private long branchesBefore = 0;
+	private long branchesAfter = 0;
+
+	public ProfileGuidedOptimizer() {
+	}
+
+	/**
+	 * Reads the program, and splits the text segment into basic blocks.
+	 *
+	 * @param br the assembly program
+	 * @throws IOException error reading the program
+	 * @throws AssemblerException the program cannot be reordered
+	 */
+	public void readProgram(BufferedReader br) throws IOException, AssemblerException {
+		ArrayList<String[]> text = new ArrayList<String[]>();
+		ArrayList<ArrayList<String>> labelsAt = new ArrayList<ArrayList<String>>();
+		ArrayList<String> pendingLabels = new ArrayList<String>();
+		ArrayList<String[]> equs = new ArrayList<String[]>();
+		boolean processingText = true;
+		int lineNumber = 1;   // only used to report a bad .line
+
+		String s = br.readLine();
+		while (s != null) {
+			String[] tokens = s.trim().split("\\s+");
+			if (tokens[0].equals("#") || tokens[0].equals(""))
+				; // Skip comments and blank lines
+			else if (tokens[0].equals(".line"))
+				lineNumber = MacroExpander.lineDirective(tokens, lineNumber) - 1;
+			else if (tokens[0].equals(".error"))
+				throw new AssemblerException(s.trim().substring(6).trim());
+			else if (tokens[0].equals(".text"))
+				processingText = true;
+			else if (tokens[0].equals(".data"))
+				processingText = false;
+			else if (tokens[0].equals(".equ")) {
+				// a .equ takes no space, so it is written with the data
+				dataLines.add(s.trim());
+				if (tokens.length > 2)
+					equs.add(tokens);
+			}
+			else if (!processingText)
+				dataLines.add(s.trim());
+			else if (tokens[0].equals(".label")) {
+				pendingLabels.add(tokens[1]);
+				textLabels.put(tokens[1], text.size());
+			}
+			else {
+				text.add(tokens);
+				labelsAt.add(pendingLabels);
+				pendingLabels = new ArrayList<String>();
+			}
+			lineNumber = lineNumber + 1;
+			s = br.readLine();
+		}
+		endLabels.addAll(pendingLabels);
+
+		// A .equ or .number of a text label would not follow the blocks
+		// when they move.
+		for (String[] tokens : equs) {
+			String label = textLabelIn(tokens[2]);
+			if (label != null)
+				throw new AssemblerException(".equ " + tokens[1] + " uses text label " + label
+						+ ", so the blocks cannot be moved.");
+		}
+		for (String line : dataLines) {
+			String[] tokens = line.split("\\s+");
+			String label = (tokens[0].equals(".number") && tokens.length > 1) ? textLabelIn(tokens[1]) : null;
+			if (label != null)
+				throw new AssemblerException("Text label " + label + " is used by " + line
+						+ ", so the blocks cannot be moved.");
+		}
+
+		// find the leaders
+		boolean[] leader = new boolean[text.size() + 1];
+		leader[0] = true;
+		for (int a = 0; a < text.size(); a++) {
+			String[] tokens = text.get(a);
+			if (!labelsAt.get(a).isEmpty())
+				leader[a] = true;
+			if (isBranch(tokens[0])) {
+				leader[a + 1] = true;
+				leader[targetAddress(tokens, text.size())] = true;
+			}
+			else if (tokens.length > 1) {
+				String label = textLabelIn(tokens[1]);
+				if (label != null)
+					throw new AssemblerException("Text label " + label + " is used as data by "
+							+ tokens[0] + ", so the blocks cannot be moved.  Address: " + a);
+			}
+		}
+
+		// build the blocks
+		int[] blockAt = new int[text.size() + 1];
+		for (int a = 0; a < text.size(); a++) {
+			if (leader[a])
+				blocks.add(new Block(blocks.size(), a));
+			Block b = blocks.get(blocks.size() - 1);
+			blockAt[a] = b.index;
+			b.labels.addAll(labelsAt.get(a));
+		}
+		blockAt[text.size()] = -1;
+		for (Block b : blocks) {
+			int end = (b.index + 1 < blocks.size()) ? blocks.get(b.index + 1).address : text.size();
+			for (int a = b.address; a < end; a++) {
+				String[] tokens = text.get(a);
+				if (a == end - 1 && isBranch(tokens[0])) {
+					b.ending = tokens[0].equals("br") ? BR : BEQZ;
+					b.target = blockAt[targetAddress(tokens, text.size())];
+				}
+				else
+					b.instructions.add(join(tokens));
+			}
+			b.fall = (b.index + 1 < blocks.size()) ? b.index + 1 : -1;
+		}
+	}
+
+	/**
+	 * Returns a text label used by an operand or .number value, or null if
+	 * it uses none.  As in InstructionParser, a name is looked up as is
+	 * before it is parsed, so an operand that is not an expression is a
+	 * data label, which the assembler has already checked.
+	 */
+	private String textLabelIn(String operand) {
+		if (textLabels.containsKey(operand))
+			return operand;
+		ConstantExpression value;
+		try {
+			value = ConstantExpression.compile(operand, 0);
+		} catch (AssemblerException ae) {
+			return null;
+		}
+		for (String label : textLabels.keySet())
+			if (value.uses(label))
+				return label;
+		return null;
+	}
+
+	private int targetAddress(String[] tokens, int textSize) throws AssemblerException {
+		if (tokens.length < 2)
+			throw new AssemblerException(tokens[0] + " needs a target");
+		Integer a = textLabels.get(tokens[1]);
+		if (a != null)
+			return a;
+		try {
+			a = Integer.parseInt(tokens[1]);
+		} catch (NumberFormatException nfe) {
+			throw new AssemblerException("label " + tokens[1] + " not found for " + tokens[0]);
+		}
+		if (a < 0 || a > textSize)
+			throw new AssemblerException(tokens[0] + " target " + a + " is outside the text segment");
+		return a;
+	}
+
+	private static boolean isBranch(String op) {
+		return op.equals("br") || op.equals("beqz");
+	}
+
+	private static String join(String[] tokens) {
+		// only the operator and operand are used by the parsers
+		return (tokens.length > 1) ? tokens[0] + " " + tokens[1] : tokens[0];
+	}
+
+	/**
+	 * Reads the block and branch counts from a profile.
+	 *
+	 * @param br the profile
+	 * @throws IOException error reading the profile
+	 * @throws AssemblerException error in the profile
+	 */
+	public void readProfile(BufferedReader br) throws IOException, AssemblerException {
+		HashMap<Integer, Block> byAddress = new HashMap<Integer, Block>();
+		for (Block b : blocks)
+			byAddress.put(b.address, b);
+
+		int lineNumber = 1;
+		String s = br.readLine();
+		while (s != null) {
+			String[] tokens = s.trim().split("\\s+");
+			if (tokens[0].startsWith("#") || tokens[0].equals(""))
+				; // Skip comments and blank lines
+			else if (tokens[0].equals("block") && tokens.length >= 3) {
+				Block b = byAddress.get(profileAddress(tokens[1], lineNumber));
+				if (b == null)
+					throw new AssemblerException("No block starts at " + tokens[1] + " - profile line: " + lineNumber);
+				b.count = parseCount(tokens[2], lineNumber);
+			}
+			else if (tokens[0].equals("branch") && tokens.length >= 4) {
+				int address = profileAddress(tokens[1], lineNumber);
+				Block b = null;
+				for (Block c : blocks)
+					if (c.address <= address)
+						b = c;
+				if (b == null || b.ending != BEQZ)
+					throw new AssemblerException("No beqz at " + tokens[1] + " - profile line: " + lineNumber);
+				b.taken = parseCount(tokens[2], lineNumber);
+				b.notTaken = parseCount(tokens[3], lineNumber);
+			}
+			else
+				throw new AssemblerException("Invalid profile line: " + lineNumber);
+			lineNumber = lineNumber + 1;
+			s = br.readLine();
+		}
+
+		// a beqz without branch counts is assumed to go each way half the time
+		for (Block b : blocks) {
+			if (b.ending == BEQZ && b.taken < 0) {
+				b.notTaken = b.count / 2;
+				b.taken = b.count - b.notTaken;
+			}
+		}
+	}
+
+	private int profileAddress(String s, int lineNumber) throws AssemblerException {
+		Integer a = textLabels.get(s);
+		if (a != null)
+			return a;
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException nfe) {
+			throw new AssemblerException("Invalid address " + s + " - profile line: " + lineNumber);
+		}
+	}
+
+	private static long parseCount(String s, int lineNumber) throws AssemblerException {
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException nfe) {
+			throw new AssemblerException("Invalid count " + s + " - profile line: " + lineNumber);
+		}
+	}
+
+	/**
+	 * Orders the blocks, and returns them in the new order.
+	 */
+	public ArrayList<Block> layout() {
+		ArrayList<Edge> edges = new ArrayList<Edge>();
+		for (Block b : blocks) {
+			if (b.ending == FALL && b.fall >= 0)
+				edges.add(new Edge(b, blocks.get(b.fall), b.count));
+			else if (b.ending == BR && b.target >= 0)
+				edges.add(new Edge(b, blocks.get(b.target), b.count));
+			else if (b.ending == BEQZ && b.fall >= 0)
+				edges.add(new Edge(b, blocks.get(b.fall), b.notTaken));
+		}
+		// stable sort, so equal counts keep the original order
+		Collections.sort(edges, new Comparator<Edge>() {
+			public int compare(Edge e1, Edge e2) {
+				return Long.compare(e2.weight, e1.weight);
+			}
+		});
+
+		// join chains.  The block at address 0 must stay first.
+		for (Edge e : edges) {
+			if (e.from.next != null || e.to.head != e.to || e.to.index == 0 || e.from.head == e.to)
+				continue;
+			e.from.next = e.to;
+			for (Block b = e.to; b != null; b = b.next)
+				b.head = e.from.head;
+		}
+
+		ArrayList<Block> heads = new ArrayList<Block>();
+		final HashMap<Block, Long> hottest = new HashMap<Block, Long>();
+		for (Block b : blocks) {
+			if (b.head == b)
+				heads.add(b);
+			Long h = hottest.get(b.head);
+			hottest.put(b.head, (h == null) ? b.count : Math.max(h, b.count));
+		}
+		Collections.sort(heads, new Comparator<Block>() {
+			public int compare(Block b1, Block b2) {
+				if (b1.index == 0 || b2.index == 0)
+					return (b1.index == 0) ? -1 : 1;
+				return Long.compare(hottest.get(b2), hottest.get(b1));
+			}
+		});
+
+		ArrayList<Block> order = new ArrayList<Block>();
+		for (Block h : heads)
+			for (Block b = h; b != null; b = b.next)
+				order.add(b);
+		return order;
+	}
+
+	/**
+	 * Writes the program with the blocks in the given order.
+	 *
+	 * @param order the blocks, in the order to write them
+	 * @param out the stream to write the assembly program to
+	 */
+	public void write(ArrayList<Block> order, PrintStream out) {
+		branchesBefore = 0;
+		branchesAfter = 0;
+		boolean endUsed = false;
+
+		out.println("# Reordered by ProfileGuidedOptimizer");
+		out.println(".text");
+		for (int i = 0; i < order.size(); i++) {
+			Block b = order.get(i);
+			int next = (i + 1 < order.size()) ? order.get(i + 1).index : -1;
+
+			for (String label : b.labels)
+				out.println(".label " + label);
+			out.println(".label " + blockLabel(b));
+			for (String instruction : b.instructions)
+				out.println(instruction);
+
+			if (b.ending == BR) {
+				branchesBefore += b.count;
+				if (b.target != next) {
+					out.println("br " + targetLabel(b.target));
+					branchesAfter += b.count;
+					endUsed |= (b.target < 0);
+				}
+			}
+			else {
+				if (b.ending == BEQZ)
+					out.println("beqz " + targetLabel(b.target));
+				long fallCount = (b.ending == BEQZ) ? b.notTaken : b.count;
+				if (b.fall != next) {
+					out.println("br " + targetLabel(b.fall));
+					branchesAfter += fallCount;
+					endUsed |= (b.fall < 0);
+				}
+			}
+		}
+		if (endUsed || !endLabels.isEmpty())
+			out.println(".label " + END_LABEL);
+		for (String label : endLabels)
+			out.println(".label " + label);
+
+		if (!dataLines.isEmpty()) {
+			out.println(".data");
+			for (String line : dataLines)
+				out.println(line);
+		}
+	}
+
+	private String targetLabel(int index) {
+		return (index < 0) ? END_LABEL : blockLabel(blocks.get(index));
+	}
+
+	private static String blockLabel(Block b) {
+		return "pgo" + b.address + "__";
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.out.println("Usage: java ProfileGuidedOptimizer input.asm profile output");
+			return;
+		}
+		try {
+			ProfileGuidedOptimizer pgo = new ProfileGuidedOptimizer();
+			BufferedReader br = new MacroExpander(new FileReader(args[0]));
+			try {
+				pgo.readProgram(br);
+			} finally {
+				br.close();
+			}
+			br = new BufferedReader(new FileReader(args[1]));
+			try {
+				pgo.readProfile(br);
+			} finally {
+				br.close();
+			}
+
+			PrintStream out = new PrintStream(args[2] + ".asm");
+			pgo.write(pgo.layout(), out);
+			out.close();
+			Assembler.assemble(args[2] + ".asm", args[2]);
+
+			System.out.println(pgo.blocks.size() + " blocks.  Taken br instructions run: "
+					+ pgo.branchesBefore + " before, " + pgo.branchesAfter + " after.");
+		} catch (AssemblerException ae) {
+			System.out.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
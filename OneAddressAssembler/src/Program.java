@@ -0,0 +1,252 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * purpose This class holds a program for the simulator: the text and data
+ *         memory images written by the assembler, and the text decoded into
+ *         a form the simulator can run quickly.  A Program is not changed
+ *         after it is made, so any number of Simulators, on any number of
+ *         threads, can share one.
+ *
+ * Procedure
+ *          1 - The memories are sized like the RAM components in
+ *              OneAddress.circ, 256 words of 16 bits each.  Images smaller
+ *              than that are filled out with 0.
+ *          2 - Each word of the text is decoded once, into an int holding
+ *              the operation in the low 8 bits and the operand above it.
+ *              The operation is the op code of the word, as the Control
+ *              Unit ROM sees it, so the simulator only needs one switch:
+ *
+ *                  0x1n  ALU operation n with the sign extended immediate
+ *                  0x2n  ALU operation n with memory[operand]
+ *                  0x30  clac            0x50  beqz
+ *                  0x40  stor            0x60  br
+ *                  0x61  br to itself, which is how programs halt
+ *                  0x00  no operation (the op codes the ROM does not set)
+ *
+ *              A Simulator can replace an instruction with 0x70, stop, to
+ *              stop the simulation when the PC gets to it.
+ *
+ *              ALU operations the ALU does not have output 0, so they are
+ *              decoded as clac.  The operand of an immediate is sign
+ *              extended when the word is decoded.
+ *          3 - The symbol table can be added from the assembly file, so
+ *              tools can use the label names.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - addressOf uses its own parseNumber, not the validator's
+ */
+public final class Program {
+
+	// Memory sizes, from the RAM components in OneAddress.circ (8 bit
+	// addresses, 16 bit data).
+	public static final int MEMORY_SIZE = 256;
+
+	// The decoded operations
+	static final int NOP = 0x00;
+	static final int IMMEDIATE = 0x10;   // + Alu operation
+	static final int MEMORY = 0x20;      // + Alu operation
+	static final int CLAC = 0x30;
+	static final int STOR = 0x40;
+	static final int BEQZ = 0x50;
+	static final int BR = 0x60;
+	static final int HALT = 0x61;
+	static final int STOP = 0x70;
+
+	final int[] text;      // the text memory, as written by the assembler
+	final int[] data;      // the data memory when the program starts
+	final int[] code;      // the decoded text memory
+	final HashMap<String, Label> symbols;   // may be null
+
+	/**
+	 * Creates a program from memory images.
+	 *
+	 * @param text the words of the text memory
+	 * @param data the words of the data memory
+	 * @param symbols the symbol table, or null if there is none
+	 */
+	public Program(int[] text, int[] data, HashMap<String, Label> symbols) {
+		if (text.length > MEMORY_SIZE || data.length > MEMORY_SIZE)
+			throw new IllegalArgumentException("Memory images are limited to " + MEMORY_SIZE + " words");
+		this.text = Arrays.copyOf(text, MEMORY_SIZE);
+		this.data = Arrays.copyOf(data, MEMORY_SIZE);
+		this.symbols = symbols;
+		this.code = new int[MEMORY_SIZE];
+		for (int pc = 0; pc < MEMORY_SIZE; pc++)
+			code[pc] = decode(this.text[pc], pc);
+	}
+
+	/**
+	 * Loads a program from the files written by the assembler.
+	 *
+	 * @param mcFile the text image
+	 * @param datFile the data image, or null for a data memory of 0s
+	 * @param asmFile the assembly program, for the labels, or null
+	 * @return the program
+	 * @throws IOException error reading a file
+	 * @throws AssemblerException error in the assembly program
+	 */
+	public static Program load(String mcFile, String datFile, String asmFile)
+			throws IOException, AssemblerException {
+		int[] text = readImage(mcFile);
+		int[] data = (datFile == null) ? new int[0] : readImage(datFile);
+		HashMap<String, Label> symbols = (asmFile == null) ? null : readSymbols(asmFile);
+		return new Program(text, data, symbols);
+	}
+
+	/**
+	 * Reads the symbol table of an assembly program, with the first pass
+	 * of the assembler.
+	 *
+	 * @param asmFile the assembly program
+	 * @return the symbol table
+	 * @throws IOException error reading the file
+	 * @throws AssemblerException error in the assembly program
+	 */
+	public static HashMap<String, Label> readSymbols(String asmFile)
+			throws IOException, AssemblerException {
+		MacroExpander br = new MacroExpander(new FileReader(asmFile));
+		try {
+			return FirstPassParser.parseFile(br);
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Reads a memory image written by the assembler or by Logisim.
+	 *
+	 * @param fileName the .mc or .dat file
+	 * @return the words in the file
+	 * @throws IOException error reading the file, or more words than the
+	 *         memory holds
+	 */
+	public static int[] readImage(String fileName) throws IOException {
+		int[] words = new int[MEMORY_SIZE];
+		int n = 0;
+		Disassembler.WordReader in = new Disassembler.WordReader(fileName);
+		try {
+			int word = in.next();
+			while (word >= 0) {
+				if (n == MEMORY_SIZE) {
+					// Logisim images can end with unused 0s.
+					if (word != 0)
+						throw new IOException(fileName + " has more than " + MEMORY_SIZE + " words");
+				}
+				else
+					words[n++] = word;
+				word = in.next();
+			}
+		} finally {
+			in.close();
+		}
+		return Arrays.copyOf(words, n);
+	}
+
+	/**
+	 * Decodes one word of the text memory.
+	 *
+	 * @param word the 16 bit instruction
+	 * @param pc the address of the instruction
+	 * @return the decoded instruction
+	 */
+	static int decode(int word, int pc) {
+		int opcode = (word >> 8) & 0xFF;
+		int operand = word & 0xFF;
+		int aluOp = opcode & 0x0F;
+		switch (opcode >> 4) {
+		case 1:
+			if (aluOp > Alu.SHIFT)
+				return CLAC;
+			return (IMMEDIATE + aluOp) | (Alu.signExtend(operand) << 8);
+		case 2:
+			if (aluOp > Alu.SHIFT)
+				return CLAC;
+			return (MEMORY + aluOp) | (operand << 8);
+		case 3:
+			return CLAC;
+		case 4:
+			return STOR | (operand << 8);
+		case 5:
+			return BEQZ | (operand << 8);
+		case 6:
+			return (operand == pc) ? (HALT | (operand << 8)) : (BR | (operand << 8));
+		default:
+			return NOP;
+		}
+	}
+
+	/**
+	 * Returns the words of the text memory.
+	 */
+	public int[] getText() {
+		return text.clone();
+	}
+
+	/**
+	 * Returns the words of the data memory when the program starts.
+	 */
+	public int[] getData() {
+		return data.clone();
+	}
+
+	/**
+	 * Returns the symbol table, or null if the program has none.
+	 */
+	public HashMap<String, Label> getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * Returns the address of a label, or -1 if it is not defined.  An
+	 * address can also be given as a number.
+	 *
+	 * @param name the label name or address
+	 * @return the address
+	 */
+	public int addressOf(String name) {
+		if (symbols != null) {
+			Label l = symbols.get(name);
+			if (l != null)
+				return l.getAddress();
+		}
+		long n = parseNumber(name);
+		if (n >= 0 && n < MEMORY_SIZE)
+			return (int) n;
+		return -1;
+	}
+
+	// returned by parseNumber for a string that is not a number
+	private static final long INVALID = Long.MIN_VALUE;
+
+	/**
+	 * Parses a decimal number the way Integer.parseInt does, but returns
+	 * INVALID instead of throwing a NumberFormatException.  Numbers too
+	 * large for an int are returned as Long.MAX_VALUE, which is not an
+	 * address.
+	 */
+	private static long parseNumber(String s) {
+		int i = 0;
+		boolean negative = false;
+		if (s.length() > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+			negative = s.charAt(0) == '-';
+			i = 1;
+		}
+		if (i == s.length())
+			return INVALID;
+		long value = 0;
+		for (; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				return INVALID;
+			if (value < Integer.MAX_VALUE)
+				value = value * 10 + (c - '0');
+		}
+		if (value > Integer.MAX_VALUE)
+			return Long.MAX_VALUE;
+		return negative ? -value : value;
+	}
+}
@@ -11,6 +11,12 @@ import java.util.HashMap;
  *         
  * Program History:
  *     7/6/2016    - CWK - Initial release
+ *     10/18/2026  - Added .line and .error for the MacroExpander
+ *     10/18/2026  - .number values can be constant expressions
+ *     10/18/2026  - Added translate, which leaves the streams open
+ *     10/18/2026  - Only one operand is allowed, so blanks in an expression
+ *                   are an error, not ignored
+ *     10/18/2026  - The operand of .line is checked
  */
 public class SecondPassParser {
 
@@ -32,71 +38,98 @@ public class SecondPassParser {
 			PrintStream mc, PrintStream dat) 
 			throws IOException, AssemblerException {
 		try {
-			boolean processingText = true;  // Default to a text segement.
-			int currentTextAddress = 0;
-			int currentDataAddress = 0;
-			int lineNumber = 1;
-			
-			// Write first line to both files
-			mc.println("v2.0 raw");
-			dat.println("v2.0 raw");
-	
-		    
-	    	String s=br.readLine();
-		    while (s != null) {
-		    	String s1 = s.trim();
-		    	String[] tokens = s1.split("\\s+");
-		    	
-		    	// Check if the program segment (.text or .data) is set.
-		    	if (tokens[0].equals("#"))
-		    		; // Skip comment
-		    	else if (tokens[0].equals(""))
-		    		; //Skip blank line
-		    	else if (tokens[0].equals(".label"))
-		    		; // Skip label statements 
-		    	else if (tokens[0].equals(".text"))
-		    		processingText = true;
-		    		
-		    	else if (tokens[0].equals(".data")) 
-		    		processingText = false;
-		    	
-		    	else if (processingText == false) {
-		    		if (tokens[0].equals(".number")) {
-		    			String writeString = InstructionParser.intStringToHexString(tokens[1], lineNumber);
-	    				dat.println(writeString);
-		    			currentDataAddress = currentDataAddress + 1;
-		    		}
-		    		else
-		    			throw new AssemblerException("Only .number directives allowed in .data segment: line number: " + lineNumber);
-		    	}
-		    		
-		    	else if (processingText == true) {
-		    		InstructionParser.Parser p = InstructionParser.getParser(tokens[0]);
-		    		if (p == null)
-		    			throw new AssemblerException("Operator " + tokens[0] + " not found - Line Number: " + lineNumber);
-		    		String input;
-		    		if (tokens.length == 1)
-		    			input = "";
-	    			else
-	    				input = tokens[1];
-		    		mc.println(p.parse(input, st, lineNumber));
-					currentTextAddress = currentTextAddress + 1;
-				}
-		    	
-		    	else {
-		    			throw new AssemblerException("Error in Assembler - Pass 1 : Line no:" + lineNumber);
-	    		}
-	
-	            // Continue by processing the next line.
-		    	lineNumber = lineNumber + 1;
-		    	s=br.readLine();
-	
-		    }
+			translate(st, br, mc, dat);
 		} finally {
     		mc.close();
 	    	dat.close();
 		}
 	}
+
+	/**
+	 * This function translates the assembly code like parseFile, but
+	 * leaves the streams open, so the caller can keep using them.
+	 * 
+	 * @param st symbol table to use to find addresses of labels
+	 * @param br input assembly language file
+	 * @param mc output machine code
+	 * @param dat output data
+	 * @throws IOException error in processing file
+	 * @throws AssemblerException parsing error in the assembly code
+	 */
+	public static void translate(HashMap<String, Label> st, BufferedReader br, 
+			PrintStream mc, PrintStream dat) 
+			throws IOException, AssemblerException {
+		boolean processingText = true;  // Default to a text segement.
+		int currentTextAddress = 0;
+		int currentDataAddress = 0;
+		int lineNumber = 1;
+		
+		// Write first line to both files
+		mc.println("v2.0 raw");
+		dat.println("v2.0 raw");
+
+	    
+    	String s=br.readLine();
+	    while (s != null) {
+	    	String s1 = s.trim();
+	    	String[] tokens = s1.split("\\s+");
+	    	
+	    	// Check if the program segment (.text or .data) is set.
+	    	if (tokens[0].equals("#"))
+	    		; // Skip comment
+	    	else if (tokens[0].equals(""))
+	    		; //Skip blank line
+	    	else if (tokens[0].equals(".label"))
+	    		; // Skip label statements 
+	    	else if (tokens[0].equals(".equ"))
+	    		; // .equ was defined in the first pass
+	    	else if (tokens[0].equals(".line"))
+	    		lineNumber = MacroExpander.lineDirective(tokens, lineNumber) - 1;
+	    	else if (tokens[0].equals(".error"))
+	    		throw new AssemblerException(s1.substring(6).trim());
+	    	else if (tokens[0].equals(".text"))
+	    		processingText = true;
+	    		
+	    	else if (tokens[0].equals(".data")) 
+	    		processingText = false;
+	    	
+	    	else if (tokens.length > 2 && !tokens[2].startsWith("#"))
+	    		throw new AssemblerException("Only one operand allowed, found " + tokens[2]
+	    				+ ".  An expression cannot contain blanks - Line Number: " + lineNumber);
+
+	    	else if (processingText == false) {
+	    		if (tokens[0].equals(".number")) {
+	    			String writeString = InstructionParser.numberToHexString(tokens.length > 1 ? tokens[1] : "", st, lineNumber);
+    				dat.println(writeString);
+	    			currentDataAddress = currentDataAddress + 1;
+	    		}
+	    		else
+	    			throw new AssemblerException("Only .number directives allowed in .data segment: line number: " + lineNumber);
+	    	}
+	    		
+	    	else if (processingText == true) {
+	    		InstructionParser.Parser p = InstructionParser.getParser(tokens[0]);
+	    		if (p == null)
+	    			throw new AssemblerException("Operator " + tokens[0] + " not found - Line Number: " + lineNumber);
+	    		String input;
+	    		if (tokens.length == 1)
+	    			input = "";
+    			else
+    				input = tokens[1];
+	    		mc.println(p.parse(input, st, lineNumber));
+				currentTextAddress = currentTextAddress + 1;
+			}
+	    	
+	    	else {
+	    			throw new AssemblerException("Error in Assembler - Pass 1 : Line no:" + lineNumber);
+    		}
+
+            // Continue by processing the next line.
+	    	lineNumber = lineNumber + 1;
+	    	s=br.readLine();
+
+	    }
+	}
 	
 
 }
@@ -0,0 +1,338 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * purpose This class runs one program on many data memories at the same
+ *         time, and reports the result and cycle count of each run.  It is
+ *         used to test a program against many inputs.
+ *
+ * Procedure
+ *          1 - The program is loaded and decoded once.  The Program is not
+ *              changed by a run, so all of the Simulators share it, and
+ *              each has only its own registers and data memory.
+ *          2 - The data memories are read from .dat files, or are made by
+ *              putting random values in the data words at some labels.
+ *          3 - The runs are split between the threads of a ForkJoinPool.
+ *              The runs are split in halves until each task is one run, so
+ *              threads that finish early take work from the others, and
+ *              runs of different lengths still keep all the threads busy.
+ *              The runs share nothing that is written, so the farm scales
+ *              with the number of cores.
+ *          4 - The results are printed as a table, in the order of the
+ *              inputs, with the total cycles and cycles per second.
+ *
+ *         Usage: java SimulationFarm [-s program.asm] [-max cycles]
+ *                    [-threads n] [-print label,...] [-csv file] [-scale]
+ *                    [-random n label,... [-seed s] [-range min:max]]
+ *                    image.mc [file.dat|directory ...]
+ *
+ *         Directories are searched for .dat files.  -random makes n data
+ *         memories from the program's .dat file (image.dat), with random
+ *         values at the labels.  -print adds the data words at the labels
+ *         to the report.  -scale runs the farm with 1, 2, 4 ... threads,
+ *         up to the number of cores, and prints the speedup.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - An empty list of inputs gives an empty report
+ */
+public class SimulationFarm {
+
+	private final Program program;
+	private final long maxCycles;
+
+	/**
+	 * @param program the program to run
+	 * @param maxCycles the most cycles for each run
+	 */
+	public SimulationFarm(Program program, long maxCycles) {
+		this.program = program;
+		this.maxCycles = maxCycles;
+	}
+
+	/**
+	 * One data memory to run the program on.
+	 */
+	public static class Input {
+		final String name;
+		final int[] data;
+
+		public Input(String name, int[] data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * The result of one run.
+	 */
+	public static class Result {
+		final String name;
+		final boolean halted;
+		final long cycles;
+		final int pc;
+		final int ac;
+		final int[] data;   // the data memory at the end of the run
+
+		Result(String name, Simulator sim) {
+			this.name = name;
+			this.halted = sim.isHalted();
+			this.cycles = sim.getCycles();
+			this.pc = sim.getPc();
+			this.ac = sim.getAc();
+			this.data = sim.getData();
+		}
+	}
+
+	/**
+	 * Runs the program on each input.
+	 *
+	 * @param inputs the data memories
+	 * @param pool the threads to run on
+	 * @return the results, in the order of the inputs
+	 */
+	public Result[] run(List<Input> inputs, ForkJoinPool pool) {
+		Result[] results = new Result[inputs.size()];
+		pool.invoke(new RunTask(inputs, results, 0, inputs.size()));
+		return results;
+	}
+
+	/**
+	 * Runs the inputs from..to-1, splitting the range in halves so idle
+	 * threads can take half of it.
+	 */
+	private class RunTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<Input> inputs;
+		private final Result[] results;
+		private final int from;
+		private final int to;
+
+		RunTask(List<Input> inputs, Result[] results, int from, int to) {
+			this.inputs = inputs;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to <= from)
+				return;   // no inputs
+			if (to - from == 1) {
+				Input input = inputs.get(from);
+				Simulator sim = new Simulator(program, input.data);
+				sim.run(maxCycles);
+				results[from] = new Result(input.name, sim);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RunTask(inputs, results, from, mid), new RunTask(inputs, results, mid, to));
+		}
+	}
+
+	/**
+	 * Makes data memories with random values at some addresses.
+	 *
+	 * @param base the data memory to start from
+	 * @param addresses the addresses to put random values at
+	 * @param n the number of data memories
+	 * @param seed the seed of the random numbers
+	 * @param min the smallest value
+	 * @param max the largest value
+	 * @return the inputs
+	 */
+	public static List<Input> randomInputs(int[] base, int[] addresses, int n, long seed, int min, int max) {
+		Random random = new Random(seed);
+		ArrayList<Input> inputs = new ArrayList<Input>(n);
+		for (int i = 0; i < n; i++) {
+			int[] data = Arrays.copyOf(base, Program.MEMORY_SIZE);
+			for (int address : addresses)
+				data[address] = (min + random.nextInt(max - min + 1)) & 0xFFFF;
+			inputs.add(new Input("random" + i, data));
+		}
+		return inputs;
+	}
+
+	/**
+	 * main - Runs the farm and prints the report.
+	 */
+	public static void main(String[] args) {
+		String symbolFile = null;
+		String textFile = null;
+		String csvFile = null;
+		ArrayList<File> dataFiles = new ArrayList<File>();
+		String[] printLabels = new String[0];
+		String[] randomLabels = null;
+		int randomCount = 0;
+		long seed = 1;
+		int min = 0;
+		int max = 32767;
+		long maxCycles = 1000000000L;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean scale = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (args[i].equals("-max") && i + 1 < args.length)
+				maxCycles = Long.parseLong(args[++i]);
+			else if (args[i].equals("-threads") && i + 1 < args.length)
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-print") && i + 1 < args.length)
+				printLabels = args[++i].split(",");
+			else if (args[i].equals("-csv") && i + 1 < args.length)
+				csvFile = args[++i];
+			else if (args[i].equals("-scale"))
+				scale = true;
+			else if (args[i].equals("-random") && i + 2 < args.length) {
+				randomCount = Integer.parseInt(args[++i]);
+				randomLabels = args[++i].split(",");
+			}
+			else if (args[i].equals("-seed") && i + 1 < args.length)
+				seed = Long.parseLong(args[++i]);
+			else if (args[i].equals("-range") && i + 1 < args.length) {
+				String[] range = args[++i].split(":");
+				min = Integer.parseInt(range[0]);
+				max = Integer.parseInt(range[1]);
+			}
+			else if (textFile == null)
+				textFile = args[i];
+			else
+				addDataFiles(new File(args[i]), dataFiles);
+		}
+		if (textFile == null || (dataFiles.isEmpty() && randomLabels == null)) {
+			System.err.println("Usage: java SimulationFarm [-s program.asm] [-max cycles] [-threads n]"
+					+ " [-print label,...] [-csv file] [-scale]"
+					+ " [-random n label,... [-seed s] [-range min:max]] image.mc [file.dat|directory ...]");
+			return;
+		}
+
+		try {
+			String baseData = textFile.endsWith(".mc")
+					? textFile.substring(0, textFile.length() - 3) + ".dat" : null;
+			if (baseData != null && !new File(baseData).exists())
+				baseData = null;
+			Program program = Program.load(textFile, baseData, symbolFile);
+
+			ArrayList<Input> inputs = new ArrayList<Input>();
+			for (File f : dataFiles)
+				inputs.add(new Input(f.getPath(), Program.readImage(f.getPath())));
+			if (randomLabels != null)
+				inputs.addAll(randomInputs(program.data, addresses(program, randomLabels),
+						randomCount, seed, min, max));
+			int[] printAddresses = addresses(program, printLabels);
+
+			SimulationFarm farm = new SimulationFarm(program, maxCycles);
+			if (scale) {
+				scale(farm, inputs);
+				return;
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long start = System.nanoTime();
+			Result[] results = farm.run(inputs, pool);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			pool.shutdown();
+
+			report(System.out, results, printLabels, printAddresses, '\t');
+			if (csvFile != null) {
+				PrintStream csv = new PrintStream(csvFile);
+				try {
+					report(csv, results, printLabels, printAddresses, ',');
+				} finally {
+					csv.close();
+				}
+			}
+
+			long total = 0;
+			int halted = 0;
+			for (Result r : results) {
+				total += r.cycles;
+				if (r.halted)
+					halted++;
+			}
+			System.out.printf("%d runs (%d halted) on %d threads, %d cycles in %.3f s, %.1f million cycles/s%n",
+					results.length, halted, threads, total, seconds, total / seconds / 1e6);
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs the farm with 1, 2, 4 ... threads, up to the number of cores,
+	 * and prints the time and speedup for each.
+	 */
+	private static void scale(SimulationFarm farm, List<Input> inputs) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		farm.run(inputs, ForkJoinPool.commonPool());   // warm up the JIT
+		double baseline = 0;
+		System.out.println("threads\tseconds\tMcycles/s\tspeedup\tefficiency");
+		for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long start = System.nanoTime();
+			Result[] results = farm.run(inputs, pool);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			pool.shutdown();
+
+			long total = 0;
+			for (Result r : results)
+				total += r.cycles;
+			if (threads == 1)
+				baseline = seconds;
+			System.out.printf("%d\t%.3f\t%.1f\t%.2f\t%.0f%%%n", threads, seconds, total / seconds / 1e6,
+					baseline / seconds, 100 * baseline / seconds / threads);
+			if (threads == cores)
+				break;
+		}
+	}
+
+	private static void report(PrintStream out, Result[] results, String[] labels, int[] addresses, char sep) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("input").append(sep).append("halted").append(sep).append("cycles")
+			.append(sep).append("pc").append(sep).append("ac");
+		for (String label : labels)
+			sb.append(sep).append(label);
+		out.println(sb);
+		for (Result r : results) {
+			sb.setLength(0);
+			sb.append(r.name).append(sep).append(r.halted).append(sep).append(r.cycles)
+				.append(sep).append(r.pc).append(sep).append(Alu.toSigned(r.ac));
+			for (int address : addresses)
+				sb.append(sep).append(Alu.toSigned(r.data[address]));
+			out.println(sb);
+		}
+	}
+
+	private static int[] addresses(Program program, String[] labels) throws AssemblerException {
+		int[] addresses = new int[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			addresses[i] = program.addressOf(labels[i]);
+			if (addresses[i] < 0)
+				throw new AssemblerException("Label " + labels[i] + " not found");
+		}
+		return addresses;
+	}
+
+	private static void addDataFiles(File f, List<File> files) {
+		if (f.isDirectory()) {
+			File[] children = f.listFiles();
+			if (children == null)
+				return;
+			Arrays.sort(children);
+			for (File child : children)
+				if (child.isDirectory() || child.getName().endsWith(".dat"))
+					addDataFiles(child, files);
+		}
+		else
+			files.add(f);
+	}
+}
@@ -0,0 +1,555 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * purpose This class simulates the 1-address CPU in OneAddress.circ at the
+ *         level of its instructions, so programs can be run much faster
+ *         than in Logisim.  The CPU does one instruction each clock cycle,
+ *         so the cycle count is the number of instructions done.
+ *
+ * Procedure
+ *          1 - The Program holds the decoded text memory, and is shared.
+ *              The Simulator holds the PC, accumulator, cycle count and
+ *              data memory for one run of the program.
+ *          2 - run() does instructions until the program halts (a br to
+ *              itself), gets to a stop address, or has run the number of
+ *              cycles asked for.  Stop addresses are made by replacing the
+ *              instruction in the Simulator's copy of the decoded text, so
+ *              they cost nothing until the PC gets to them.
+ *          3 - snapshot() returns the state of the simulator, and restore()
+ *              puts it back.  The data memory is kept in pages that are
+ *              shared with the snapshots, and a page is copied the first
+ *              time it is stored to (copy on write).  So both take the same
+ *              short time however long the program has run.
+ *          4 - runWithCheckpoints() takes snapshots every n cycles, and
+ *              each time the PC gets to one of a set of labels, and keeps
+ *              them in a CheckpointLog.  A later cycle can then be reached
+ *              by restoring the snapshot before it, and bisect() finds the
+ *              first cycle where a condition holds.
+ *
+ *         Usage: java Simulator [-s program.asm] [-max cycles] [-every cycles]
+ *                    [-at label,...] [-keep n] [-load file.snap] [-save file.snap]
+ *                    [-bisect label=value] [-trace file.trace [-ring kb]]
+ *                    image.mc [image.dat]
+ *
+ *         -max limits the run (default 1,000,000,000 cycles).  -every and
+ *         -at take checkpoints, -keep limits how many are kept (default
+ *         1024).  -load starts from a saved snapshot, and -save writes the
+ *         final state.  -bisect finds the first cycle where the data word
+ *         at label has the value.  -trace writes a binary trace of the
+ *         run (see TraceRecorder), or with -ring only the last kb
+ *         kilobytes of it.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - Added the TraceRecorder
+ */
+public final class Simulator {
+
+	// The data memory is held in 16 pages of 16 words.
+	static final int PAGE_BITS = 4;
+	static final int PAGE_SIZE = 1 << PAGE_BITS;
+	static final int PAGE_MASK = PAGE_SIZE - 1;
+	static final int PAGES = Program.MEMORY_SIZE / PAGE_SIZE;
+
+	final Program program;
+	int[] code;              // the program's decoded text, or a copy with stops
+	int pc;
+	int ac;
+	long cycles;
+	int[][] pages;           // the data memory
+	final boolean[] shared;  // pages that are shared with a snapshot
+	TraceRecorder trace;     // records each instruction, or null
+
+	/**
+	 * Creates a simulator for a program, at address 0 with the program's
+	 * data memory.
+	 */
+	public Simulator(Program program) {
+		this.program = program;
+		this.code = program.code;
+		this.pages = toPages(program.data);
+		this.shared = new boolean[PAGES];
+	}
+
+	/**
+	 * Creates a simulator for a program, with its own data memory.
+	 *
+	 * @param program the program to run
+	 * @param data the data memory to use in place of the program's
+	 */
+	public Simulator(Program program, int[] data) {
+		this(program);
+		if (data.length > Program.MEMORY_SIZE)
+			throw new IllegalArgumentException("Memory images are limited to " + Program.MEMORY_SIZE + " words");
+		this.pages = toPages(Arrays.copyOf(data, Program.MEMORY_SIZE));
+	}
+
+	static int[][] toPages(int[] memory) {
+		int[][] pages = new int[PAGES][];
+		for (int p = 0; p < PAGES; p++)
+			pages[p] = Arrays.copyOfRange(memory, p * PAGE_SIZE, (p + 1) * PAGE_SIZE);
+		return pages;
+	}
+
+	public Program getProgram() {
+		return program;
+	}
+
+	public int getPc() {
+		return pc;
+	}
+
+	public int getAc() {
+		return ac;
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Returns true if the program has halted, that is the next instruction
+	 * is a br to itself.
+	 */
+	public boolean isHalted() {
+		return (program.code[pc] & 0xFF) == Program.HALT;
+	}
+
+	/**
+	 * Returns a word of the data memory.
+	 */
+	public int read(int address) {
+		return pages[address >> PAGE_BITS][address & PAGE_MASK];
+	}
+
+	/**
+	 * Changes a word of the data memory.
+	 */
+	public void write(int address, int value) {
+		int p = address >> PAGE_BITS;
+		if (shared[p]) {
+			pages[p] = pages[p].clone();
+			shared[p] = false;
+		}
+		pages[p][address & PAGE_MASK] = value & 0xFFFF;
+	}
+
+	/**
+	 * Returns a copy of the data memory.
+	 */
+	public int[] getData() {
+		int[] data = new int[Program.MEMORY_SIZE];
+		for (int p = 0; p < PAGES; p++)
+			System.arraycopy(pages[p], 0, data, p * PAGE_SIZE, PAGE_SIZE);
+		return data;
+	}
+
+	/**
+	 * Sets the recorder to give each instruction that is run to, or null
+	 * to stop tracing.
+	 */
+	public void setTrace(TraceRecorder trace) {
+		this.trace = trace;
+		if (trace != null)
+			trace.begin(pc, ac, cycles);
+	}
+
+	/**
+	 * Sets or clears a stop at an address.  run() stops before doing the
+	 * instruction at a stop address, unless it is the first instruction
+	 * of the run.
+	 *
+	 * @param address the text address
+	 * @param stop true to set a stop, false to clear it
+	 */
+	public void setStop(int address, boolean stop) {
+		if (code == program.code)
+			code = program.code.clone();
+		code[address] = stop ? Program.STOP : program.code[address];
+	}
+
+	/**
+	 * Returns true if there is a stop at an address.
+	 */
+	public boolean isStop(int address) {
+		return code[address] == Program.STOP;
+	}
+
+	/**
+	 * Does one instruction.
+	 *
+	 * @return false if the program has halted, so nothing was done
+	 */
+	public boolean step() {
+		return execute(1, program.code) == 1;
+	}
+
+	/**
+	 * Runs the program until it halts, gets to a stop, or has run for
+	 * maxCycles cycles.
+	 *
+	 * @param maxCycles the most cycles to run
+	 * @return the number of cycles run
+	 */
+	public long run(long maxCycles) {
+		if (maxCycles <= 0)
+			return 0;
+		long n = 0;
+		if (code[pc] == Program.STOP) {
+			// Continuing from a stop, so do the instruction under it.
+			if (!step())
+				return 0;
+			n = 1;
+		}
+		return n + execute(maxCycles - n, code);
+	}
+
+	/**
+	 * The simulator loop.  The local variables are written back to the
+	 * fields when the loop ends.
+	 *
+	 * @param maxCycles the most cycles to run
+	 * @param code the decoded text to run
+	 * @return the number of cycles run
+	 */
+	private long execute(long maxCycles, int[] code) {
+		int[][] pages = this.pages;
+		boolean[] shared = this.shared;
+		TraceRecorder trace = this.trace;
+		int pc = this.pc;
+		int ac = this.ac;
+		long n = 0;
+
+		loop:
+		while (n < maxCycles) {
+			int instruction = code[pc];
+			int arg = instruction >>> 8;
+			int next = (pc + 1) & 0xFF;
+			switch (instruction & 0xFF) {
+			case Program.IMMEDIATE + Alu.ADD:
+				ac = (ac + arg) & 0xFFFF;
+				break;
+			case Program.IMMEDIATE + Alu.SUB:
+				ac = (ac - arg) & 0xFFFF;
+				break;
+			case Program.IMMEDIATE + Alu.MUL:
+				ac = (ac * arg) & 0xFFFF;
+				break;
+			case Program.IMMEDIATE + Alu.DIV:
+				ac = (arg == 0) ? ac : ac / arg;
+				break;
+			case Program.IMMEDIATE + Alu.REM:
+				ac = (arg == 0) ? 0 : ac % arg;
+				break;
+			case Program.IMMEDIATE + Alu.AND:
+				ac = ac & arg;
+				break;
+			case Program.IMMEDIATE + Alu.SHIFT:
+				ac = (ac << (arg & 0xF)) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.ADD:
+				ac = (ac + pages[arg >> PAGE_BITS][arg & PAGE_MASK]) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.SUB:
+				ac = (ac - pages[arg >> PAGE_BITS][arg & PAGE_MASK]) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.MUL:
+				ac = (ac * pages[arg >> PAGE_BITS][arg & PAGE_MASK]) & 0xFFFF;
+				break;
+			case Program.MEMORY + Alu.DIV: {
+				int y = pages[arg >> PAGE_BITS][arg & PAGE_MASK];
+				ac = (y == 0) ? ac : ac / y;
+				break;
+			}
+			case Program.MEMORY + Alu.REM: {
+				int y = pages[arg >> PAGE_BITS][arg & PAGE_MASK];
+				ac = (y == 0) ? 0 : ac % y;
+				break;
+			}
+			case Program.MEMORY + Alu.AND:
+				ac = ac & pages[arg >> PAGE_BITS][arg & PAGE_MASK];
+				break;
+			case Program.MEMORY + Alu.SHIFT:
+				ac = (ac << (pages[arg >> PAGE_BITS][arg & PAGE_MASK] & 0xF)) & 0xFFFF;
+				break;
+			case Program.CLAC:
+				ac = 0;
+				break;
+			case Program.STOR: {
+				int p = arg >> PAGE_BITS;
+				if (shared[p]) {
+					pages[p] = pages[p].clone();
+					shared[p] = false;
+				}
+				pages[p][arg & PAGE_MASK] = ac;
+				break;
+			}
+			case Program.BEQZ:
+				if (ac == 0)
+					next = arg;
+				break;
+			case Program.BR:
+				next = arg;
+				break;
+			case Program.HALT:
+			case Program.STOP:
+				break loop;
+			default:
+				break;   // no operation
+			}
+			if (trace != null)
+				trace.record(pc, ac);
+			pc = next;
+			n++;
+		}
+
+		this.pc = pc;
+		this.ac = ac;
+		this.cycles += n;
+		return n;
+	}
+
+	/**
+	 * Returns the state of the simulator.  The data memory pages are
+	 * shared with the snapshot, not copied.
+	 */
+	public Snapshot snapshot() {
+		Arrays.fill(shared, true);
+		return new Snapshot(pc, ac, cycles, program.text, pages.clone());
+	}
+
+	/**
+	 * Puts the simulator back to the state in a snapshot.
+	 *
+	 * @param s the snapshot, which must be of this program
+	 */
+	public void restore(Snapshot s) {
+		if (s.text != program.text && !Arrays.equals(s.text, program.text))
+			throw new IllegalArgumentException("The snapshot is of a different program");
+		pc = s.pc;
+		ac = s.ac;
+		cycles = s.cycles;
+		pages = s.pages.clone();
+		Arrays.fill(shared, true);
+		if (trace != null)
+			trace.begin(pc, ac, cycles);
+	}
+
+	/**
+	 * Runs the program, taking snapshots as it runs.  A snapshot is taken
+	 * when the run starts, every interval cycles, each time the PC gets to
+	 * one of the addresses in at, and when the run ends.
+	 *
+	 * @param maxCycles the most cycles to run
+	 * @param interval the cycles between snapshots, or 0 for none
+	 * @param at the text addresses to take a snapshot at, may be empty
+	 * @param log where to keep the snapshots
+	 * @return the number of cycles run
+	 */
+	public long runWithCheckpoints(long maxCycles, long interval, int[] at, CheckpointLog log) {
+		// Use stops to get control back at the addresses.  Stops that were
+		// already set are left set.
+		boolean[] added = new boolean[Program.MEMORY_SIZE];
+		for (int address : at) {
+			if (!isStop(address)) {
+				setStop(address, true);
+				added[address] = true;
+			}
+		}
+
+		long start = cycles;
+		long end = (maxCycles > Long.MAX_VALUE - start) ? Long.MAX_VALUE : start + maxCycles;
+		long next = (interval > 0) ? start + interval : Long.MAX_VALUE;
+		log.add(snapshot());
+		try {
+			while (cycles < end && !isHalted()) {
+				run(Math.min(end, next) - cycles);
+				if (cycles == next) {
+					next = next + interval;
+					if (cycles < end)
+						log.add(snapshot());
+				}
+				else if (code[pc] == Program.STOP && cycles < end)
+					log.add(snapshot());
+			}
+		} finally {
+			for (int address = 0; address < added.length; address++)
+				if (added[address])
+					setStop(address, false);
+		}
+		if (log.last().cycles != cycles)
+			log.add(snapshot());
+		return cycles - start;
+	}
+
+	/**
+	 * A condition on the state of a simulator, used by bisect.
+	 */
+	public interface Condition {
+		boolean holds(Simulator sim);
+	}
+
+	/**
+	 * Finds the first cycle at which a condition holds, using the
+	 * snapshots of a run.  Once the condition holds it must hold for the
+	 * rest of the run, e.g. a memory word has been overwritten.  The
+	 * snapshots are searched by bisection, and the simulator is then run
+	 * one instruction at a time from the last snapshot before the cycle.
+	 * The simulator is left at the cycle found.
+	 *
+	 * @param log the snapshots of a run of this program
+	 * @param condition the condition to find
+	 * @return the first cycle the condition holds, or -1 if it does not
+	 *         hold at the end of the run
+	 */
+	public long bisect(CheckpointLog log, Condition condition) {
+		int low = 0;
+		int high = log.size() - 1;
+		restore(log.get(high));
+		if (!condition.holds(this))
+			return -1;
+		restore(log.get(0));
+		if (condition.holds(this))
+			return cycles;
+
+		// log[low] does not hold, log[high] holds
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			restore(log.get(mid));
+			if (condition.holds(this))
+				high = mid;
+			else
+				low = mid;
+		}
+		restore(log.get(low));
+		while (!condition.holds(this))
+			if (!step())
+				return -1;
+		return cycles;
+	}
+
+	/**
+	 * main - Runs a program.
+	 */
+	public static void main(String[] args) {
+		String symbolFile = null;
+		String textFile = null;
+		String dataFile = null;
+		String loadFile = null;
+		String saveFile = null;
+		String bisect = null;
+		String traceFile = null;
+		int ringKb = 0;
+		String[] labels = new String[0];
+		long maxCycles = 1000000000L;
+		long interval = 0;
+		int keep = 1024;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (args[i].equals("-max") && i + 1 < args.length)
+				maxCycles = Long.parseLong(args[++i]);
+			else if (args[i].equals("-every") && i + 1 < args.length)
+				interval = Long.parseLong(args[++i]);
+			else if (args[i].equals("-at") && i + 1 < args.length)
+				labels = args[++i].split(",");
+			else if (args[i].equals("-keep") && i + 1 < args.length)
+				keep = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-load") && i + 1 < args.length)
+				loadFile = args[++i];
+			else if (args[i].equals("-save") && i + 1 < args.length)
+				saveFile = args[++i];
+			else if (args[i].equals("-bisect") && i + 1 < args.length)
+				bisect = args[++i];
+			else if (args[i].equals("-trace") && i + 1 < args.length)
+				traceFile = args[++i];
+			else if (args[i].equals("-ring") && i + 1 < args.length)
+				ringKb = Integer.parseInt(args[++i]);
+			else if (textFile == null)
+				textFile = args[i];
+			else
+				dataFile = args[i];
+		}
+		if (textFile == null) {
+			System.err.println("Usage: java Simulator [-s program.asm] [-max cycles] [-every cycles]"
+					+ " [-at label,...] [-keep n] [-load file.snap] [-save file.snap]"
+					+ " [-bisect label=value] [-trace file.trace [-ring kb]] image.mc [image.dat]");
+			return;
+		}
+
+		try {
+			Program program = Program.load(textFile, dataFile, symbolFile);
+			Simulator sim = new Simulator(program);
+			if (loadFile != null)
+				sim.restore(Snapshot.read(loadFile));
+
+			// With -ring only the ring buffer is kept, and written at the
+			// end.  Without it the whole trace is spilled to the file.
+			TraceRecorder trace = null;
+			if (traceFile != null) {
+				if (ringKb > 0)
+					trace = new TraceRecorder(program, ringKb * 1024, null);
+				else
+					trace = new TraceRecorder(program, 1 << 20, traceFile);
+				sim.setTrace(trace);
+			}
+
+			int[] at = new int[labels.length];
+			for (int i = 0; i < labels.length; i++) {
+				at[i] = program.addressOf(labels[i]);
+				if (at[i] < 0)
+					throw new AssemblerException("Label " + labels[i] + " not found");
+			}
+			// bisect needs snapshots to search
+			if (bisect != null && interval == 0 && at.length == 0)
+				interval = Math.max(1, maxCycles / keep);
+
+			CheckpointLog log = new CheckpointLog(keep);
+			long start = System.nanoTime();
+			long n;
+			if (interval > 0 || at.length > 0)
+				n = sim.runWithCheckpoints(maxCycles, interval, at, log);
+			else
+				n = sim.run(maxCycles);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			if (trace != null) {
+				sim.setTrace(null);
+				trace.close();
+				if (ringKb > 0)
+					trace.writeRing(traceFile);
+				System.out.println(trace.getRecords() + " instructions traced to " + traceFile);
+			}
+
+			System.out.println((sim.isHalted() ? "Halted" : "Stopped") + " after " + sim.getCycles()
+					+ " cycles: PC = " + sim.getPc() + ", AC = " + Alu.toSigned(sim.getAc()));
+			System.out.printf("%d cycles in %.3f s, %.1f million cycles/s%n", n, seconds, n / seconds / 1e6);
+			if (log.size() > 0)
+				System.out.println(log.size() + " snapshots kept");
+			if (saveFile != null)
+				sim.snapshot().write(saveFile);
+
+			if (bisect != null) {
+				int eq = bisect.indexOf('=');
+				final int address = (eq < 0) ? -1 : program.addressOf(bisect.substring(0, eq));
+				if (address < 0)
+					throw new AssemblerException("Syntax is -bisect label=value, with a data label");
+				final int value = Integer.parseInt(bisect.substring(eq + 1)) & 0xFFFF;
+				long cycle = sim.bisect(log, new Condition() {
+					public boolean holds(Simulator s) {
+						return s.read(address) == value;
+					}
+				});
+				if (cycle < 0)
+					System.out.println(bisect + " does not hold at the end of the run");
+				else
+					System.out.println(bisect + " first holds at cycle " + cycle
+							+ ", PC = " + sim.getPc() + ", AC = " + Alu.toSigned(sim.getAc()));
+			}
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
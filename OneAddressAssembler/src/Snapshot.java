@@ -0,0 +1,155 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * purpose This class is the state of a Simulator at one cycle: the PC, the
+ *         accumulator, the cycle count and the memories.  A Snapshot is
+ *         not changed after it is made, so it can be restored any number
+ *         of times.
+ *
+ *         The data memory is held in pages of 16 words.  Taking a snapshot
+ *         does not copy the pages, the snapshot and the simulator share
+ *         them, and the simulator copies a page the first time it stores
+ *         to it.  So taking or restoring a snapshot costs the same for any
+ *         program, and a snapshot only holds the pages that changed since
+ *         the last one.  The text memory is never written, so it is shared
+ *         with the Program.
+ *
+ *         Snapshots can be written to a file in a compact binary form:
+ *
+ *             int    magic number 0x4F415331 ("OAS1")
+ *             byte   PC
+ *             short  accumulator
+ *             long   cycles
+ *             text memory, then data memory, each written as
+ *                 short  a bit for each page, set if the page is not all 0
+ *                 short  the 16 words of each page with its bit set
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public final class Snapshot {
+
+	static final int MAGIC = 0x4F415331;
+
+	final int pc;
+	final int ac;
+	final long cycles;
+	final int[] text;        // shared with the Program, never written
+	final int[][] pages;     // shared with the Simulator until it writes them
+
+	Snapshot(int pc, int ac, long cycles, int[] text, int[][] pages) {
+		this.pc = pc;
+		this.ac = ac;
+		this.cycles = cycles;
+		this.text = text;
+		this.pages = pages;
+	}
+
+	public int getPc() {
+		return pc;
+	}
+
+	public int getAc() {
+		return ac;
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Returns a word of the data memory.
+	 */
+	public int read(int address) {
+		return pages[address >> Simulator.PAGE_BITS][address & Simulator.PAGE_MASK];
+	}
+
+	/**
+	 * Writes the snapshot to a file.
+	 *
+	 * @param fileName the file to write
+	 * @throws IOException error writing the file
+	 */
+	public void write(String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a stream.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(pc);
+		out.writeShort(ac);
+		out.writeLong(cycles);
+		writePages(out, Simulator.toPages(text));
+		writePages(out, pages);
+	}
+
+	/**
+	 * Reads a snapshot from a file.
+	 *
+	 * @param fileName the file to read
+	 * @return the snapshot
+	 * @throws IOException error reading the file, or it is not a snapshot
+	 */
+	public static Snapshot read(String fileName) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a snapshot from a stream.
+	 */
+	public static Snapshot read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a simulator snapshot");
+		int pc = in.readUnsignedByte();
+		int ac = in.readUnsignedShort();
+		long cycles = in.readLong();
+		int[][] textPages = readPages(in);
+		int[][] dataPages = readPages(in);
+		int[] text = new int[Program.MEMORY_SIZE];
+		for (int p = 0; p < textPages.length; p++)
+			System.arraycopy(textPages[p], 0, text, p << Simulator.PAGE_BITS, Simulator.PAGE_SIZE);
+		return new Snapshot(pc, ac, cycles, text, dataPages);
+	}
+
+	private static void writePages(DataOutputStream out, int[][] pages) throws IOException {
+		int mask = 0;
+		for (int p = 0; p < pages.length; p++)
+			for (int word : pages[p])
+				if (word != 0)
+					mask |= 1 << p;
+		out.writeShort(mask);
+		for (int p = 0; p < pages.length; p++)
+			if ((mask & (1 << p)) != 0)
+				for (int word : pages[p])
+					out.writeShort(word);
+	}
+
+	private static int[][] readPages(DataInputStream in) throws IOException {
+		int mask = in.readUnsignedShort();
+		int[][] pages = new int[Simulator.PAGES][Simulator.PAGE_SIZE];
+		for (int p = 0; p < pages.length; p++)
+			if ((mask & (1 << p)) != 0)
+				for (int i = 0; i < Simulator.PAGE_SIZE; i++)
+					pages[p][i] = in.readUnsignedShort();
+		return pages;
+	}
+}
@@ -0,0 +1,586 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * purpose This program replaces multiply, divide and remainder by a
+ *         constant with cheaper instructions, when a table of costs for
+ *         each operator says the new code is faster.  For example
+ *
+ *             remi 8     becomes   andi 7
+ *             muli 4     becomes   shift srConst2__     (a word holding 2)
+ *             muli 10    becomes   shift srConst1__
+ *                                  stor srTemp__
+ *                                  shift srConst2__
+ *                                  add srTemp__
+ *
+ * Procedure
+ *          1 - Read the program through the MacroExpander, and build the
+ *              symbol table with the FirstPassParser.  The constant is the
+ *              immediate of muli, divi and remi, or for mul, div and rem
+ *              the .number of the data word used, if no stor writes it.
+ *          2 - Make the candidate sequences for each constant.  The
+ *              Divider is unsigned, so rem by 2^k is an and with 2^k - 1
+ *              for every value of the accumulator, and div and rem by 0
+ *              act as by 1.  The ALU has no right shift, so div is only
+ *              removed when it divides by 0 or 1.  mul by +-(2^a +- 2^b)
+ *              uses shift, add and sub.  A negative constant is done as
+ *              2^b - 2^a or -2^b - 2^a, with the negate of 2^b times the
+ *              accumulator in the middle, or with a negate at the end.
+ *          3 - Each candidate is run with the Alu for all 65536 values of
+ *              the accumulator, and is only used if it gives the same
+ *              result as the original instruction for all of them, so the
+ *              16 bit wrap around and the sign of the constant are kept.
+ *          4 - The cheapest candidate is used if it costs less than the
+ *              original instruction.  Sequences longer or shorter than one
+ *              instruction move the text addresses after them, so they
+ *              are only used when every branch target is a label and no
+ *              other expression uses a text label.  The new constant words
+ *              and srTemp__ are added at the end of the data segment, and
+ *              must have addresses an operand can hold.
+ *          5 - Write the new program, assemble it, and report each
+ *              rewrite with the cycles it saves each time it runs.
+ *
+ *         The default costs are for an ALU with an iterative 16 bit
+ *         multiplier and divider, taking one cycle for each bit, and one
+ *         cycle for every other instruction.  OneAddress.circ runs every
+ *         instruction in one cycle, so with its costs only the rewrites
+ *         that remove instructions pay off.  Other costs are read from a
+ *         file with lines of the form "operator cycles".
+ *
+ *         Usage: java StrengthReducer [-costs file] input.asm output
+ *         writes output.asm, output.mc and output.dat.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ *     10/18/2026  - The operand of .line is checked
+ *     10/18/2026  - Negative multipliers also try 2^b - 2^a, which is two
+ *                   instructions shorter than a negate at the end
+ */
+public class StrengthReducer {
+
+	static final String TEMP_LABEL = "srTemp__";
+	static final String CONST_LABEL = "srConst";
+
+	// cycles for each operator, unless a cost file is given
+	static final HashMap<String, Integer> DEFAULT_COSTS = new HashMap<String, Integer>();
+
+	static {
+		for (String op : InstructionParser.parsers.keySet())
+			DEFAULT_COSTS.put(op, 1);
+		for (String op : new String[] {"mul", "muli", "div", "divi", "rem", "remi"})
+			DEFAULT_COSTS.put(op, 16);
+	}
+
+	// kinds of operand in a candidate step
+	static final int NONE = 0;
+	static final int IMMEDIATE = 1;
+	static final int CONSTANT = 2;   // a data word holding value
+	static final int TEMP = 3;       // srTemp__
+
+	/**
+	 * One instruction of a candidate sequence.
+	 */
+	static class Step {
+		final String op;
+		final int kind;
+		final int value;
+
+		Step(String op, int kind, int value) {
+			this.op = op;
+			this.kind = kind;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * A rewrite that was made.
+	 */
+	public static class Rewrite {
+		final int lineNumber;
+		final String before;
+		final List<String> after;
+		final int oldCost;
+		final int newCost;
+
+		Rewrite(int lineNumber, String before, List<String> after, int oldCost, int newCost) {
+			this.lineNumber = lineNumber;
+			this.before = before;
+			this.after = after;
+			this.oldCost = oldCost;
+			this.newCost = newCost;
+		}
+
+		public int getSavings() {
+			return oldCost - newCost;
+		}
+
+		@Override
+		public String toString() {
+			return "line " + lineNumber + ": " + before + " -> "
+					+ (after.isEmpty() ? "(removed)" : String.join("; ", after))
+					+ "  (" + oldCost + " -> " + newCost + " cycles, saves " + getSavings() + ")";
+		}
+	}
+
+	private final HashMap<String, Integer> costs;
+	private final ArrayList<String> lines = new ArrayList<String>();
+	private final ArrayList<Integer> lineNumbers = new ArrayList<Integer>();
+	private final ArrayList<Rewrite> rewrites = new ArrayList<Rewrite>();
+	private final LinkedHashMap<Integer, String> newConstants = new LinkedHashMap<Integer, String>();
+	private final HashSet<String> verified = new HashSet<String>();   // candidates that passed verify
+	private boolean tempUsed = false;
+	private int dataWords = 0;
+
+	public StrengthReducer(HashMap<String, Integer> costs) {
+		this.costs = costs;
+	}
+
+	/**
+	 * Reads a table of costs.  Operators not in the file cost 1 cycle.
+	 *
+	 * @param br the cost file
+	 * @return the costs
+	 * @throws IOException error reading the file
+	 * @throws AssemblerException error in the file
+	 */
+	public static HashMap<String, Integer> readCosts(BufferedReader br) throws IOException, AssemblerException {
+		HashMap<String, Integer> costs = new HashMap<String, Integer>();
+		for (String op : InstructionParser.parsers.keySet())
+			costs.put(op, 1);
+		int lineNumber = 1;
+		String s = br.readLine();
+		while (s != null) {
+			String[] tokens = s.trim().split("\\s+");
+			if (tokens[0].startsWith("#") || tokens[0].equals(""))
+				; // Skip comments and blank lines
+			else if (tokens.length < 2 || !costs.containsKey(tokens[0]))
+				throw new AssemblerException("Invalid cost line: " + lineNumber);
+			else {
+				try {
+					costs.put(tokens[0], Integer.parseInt(tokens[1]));
+				} catch (NumberFormatException nfe) {
+					throw new AssemblerException("Invalid cost " + tokens[1] + " - cost line: " + lineNumber);
+				}
+			}
+			lineNumber = lineNumber + 1;
+			s = br.readLine();
+		}
+		return costs;
+	}
+
+	/**
+	 * Reads the program, and makes the rewrites.
+	 *
+	 * @param br the assembly program
+	 * @throws IOException error reading the program
+	 * @throws AssemblerException error in the program
+	 */
+	public void readProgram(BufferedReader br) throws IOException, AssemblerException {
+		StringBuilder source = new StringBuilder();
+		int lineNumber = 1;
+		String s = br.readLine();
+		while (s != null) {
+			source.append(s).append('\n');
+			String s1 = s.trim();
+			String[] tokens = s1.split("\\s+");
+			if (tokens[0].equals(".line"))
+				lineNumber = MacroExpander.lineDirective(tokens, lineNumber) - 1;
+			else if (tokens[0].equals(".error"))
+				throw new AssemblerException(s1.substring(6).trim());
+			else if (!tokens[0].equals("#") && !tokens[0].equals("")) {
+				lines.add(s1);
+				lineNumbers.add(lineNumber);
+			}
+			lineNumber = lineNumber + 1;
+			s = br.readLine();
+		}
+		HashMap<String, Label> st = FirstPassParser.parseFile(new BufferedReader(new StringReader(source.toString())));
+
+		// Find the data values, the words written by stor, and whether
+		// the text can move.
+		ArrayList<Integer> data = new ArrayList<Integer>();
+		HashSet<Long> stored = new HashSet<Long>();
+		boolean relocatable = true;
+		boolean processingText = true;
+		for (int i = 0; i < lines.size(); i++) {
+			String[] tokens = lines.get(i).split("\\s+");
+			if (tokens[0].equals(".text") || tokens[0].equals(".data"))
+				processingText = tokens[0].equals(".text");
+			else if (tokens[0].equals(".label"))
+				; // labels are in st
+			else if (tokens[0].equals(".equ"))
+				relocatable &= !usesTextLabel(tokens[2], st);
+			else if (tokens.length < 2 || tokens[1].startsWith("#"))
+				; // clac, and instructions the Assembler reports
+			else if (!processingText) {
+				data.add((int) InstructionParser.evaluate(tokens[1], st, ".number", lineNumbers.get(i)) & 0xFFFF);
+				relocatable &= !usesTextLabel(tokens[1], st);
+			}
+			else if (tokens[0].equals("br") || tokens[0].equals("beqz")) {
+				Label l = st.get(tokens[1]);
+				relocatable &= (l != null && l.getSegment() == 'c');
+			}
+			else {
+				if (tokens[0].equals("stor"))
+					stored.add(InstructionParser.evaluate(tokens[1], st, "stor", lineNumbers.get(i)));
+				relocatable &= !usesTextLabel(tokens[1], st);
+			}
+		}
+		dataWords = data.size();
+
+		// Rewrite the instructions.
+		processingText = true;
+		for (int i = 0; i < lines.size(); i++) {
+			String[] tokens = lines.get(i).split("\\s+");
+			if (tokens[0].equals(".text") || tokens[0].equals(".data"))
+				processingText = tokens[0].equals(".text");
+			if (!processingText || tokens.length < 2 || !costs.containsKey(tokens[0]))
+				continue;
+			int aluOp = aluOp(tokens[0]);
+			if (aluOp < 0)
+				continue;
+
+			// find the constant
+			int y;
+			long value = InstructionParser.evaluate(tokens[1], st, tokens[0], lineNumbers.get(i));
+			if (tokens[0].endsWith("i"))
+				y = Alu.signExtend((int) value);
+			else if (value >= 0 && value < data.size() && !stored.contains(value))
+				y = data.get((int) value);
+			else
+				continue;
+
+			List<Step> best = null;
+			int bestCost = costs.get(tokens[0]);
+			for (List<Step> candidate : candidates(aluOp, y)) {
+				if (candidate.size() != 1 && !relocatable)
+					continue;
+				int cost = cost(candidate);
+				if (cost < bestCost && fits(candidate) && verify(aluOp, y, candidate)) {
+					best = candidate;
+					bestCost = cost;
+				}
+			}
+			if (best == null)
+				continue;
+
+			ArrayList<String> after = new ArrayList<String>();
+			for (Step step : best)
+				after.add(instruction(step));
+			rewrites.add(new Rewrite(lineNumbers.get(i), tokens[0] + " " + tokens[1], after,
+					costs.get(tokens[0]), bestCost));
+			lines.set(i, String.join("\n", after));
+		}
+	}
+
+	private static int aluOp(String op) {
+		if (op.startsWith("mul"))
+			return Alu.MUL;
+		if (op.startsWith("div"))
+			return Alu.DIV;
+		if (op.startsWith("rem"))
+			return Alu.REM;
+		return -1;
+	}
+
+	private static boolean usesTextLabel(String s, HashMap<String, Label> st) throws AssemblerException {
+		Label l = st.get(s);
+		if (l != null)
+			return l.getSegment() == 'c';
+		ConstantExpression x = ConstantExpression.compile(s, 0);
+		for (Label label : st.values())
+			if (label.getSegment() == 'c' && x.uses(label.name))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Makes the candidate sequences for an ALU operation with the 16 bit
+	 * constant y.  They are checked by verify before they are used.
+	 */
+	static List<List<Step>> candidates(int aluOp, int y) {
+		ArrayList<List<Step>> list = new ArrayList<List<Step>>();
+		if (aluOp == Alu.MUL) {
+			if (y == 0)
+				list.add(steps(new Step("clac", NONE, 0)));
+			boolean negative = y >= 0x8000;
+			int m = negative ? 0x10000 - y : y;
+			if (negative)
+				list.addAll(negativeMultiply(m));
+			for (List<Step> s : positiveMultiply(m)) {
+				if (negative) {
+					s.add(new Step("stor", TEMP, 0));
+					s.add(new Step("clac", NONE, 0));
+					s.add(new Step("sub", TEMP, 0));
+				}
+				list.add(s);
+			}
+		}
+		else if (aluOp == Alu.DIV) {
+			if (y == 0 || y == 1)
+				list.add(steps());
+		}
+		else if (aluOp == Alu.REM) {
+			if (y == 0 || y == 1)
+				list.add(steps(new Step("clac", NONE, 0)));
+			else if (Integer.bitCount(y) == 1) {
+				int mask = y - 1;
+				list.add(steps((mask <= 127) ? new Step("andi", IMMEDIATE, mask)
+						: new Step("and", CONSTANT, mask)));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Sequences for a multiply by m = 2^a + 2^b or 2^a - 2^b, a > b,
+	 * which includes m = 2^a as 2^(a-1) + 2^(a-1).
+	 */
+	private static List<List<Step>> positiveMultiply(int m) {
+		ArrayList<List<Step>> list = new ArrayList<List<Step>>();
+		if (m == 1) {
+			list.add(steps());
+			return list;
+		}
+		if (Integer.bitCount(m) == 1) {
+			list.add(steps(new Step("shift", CONSTANT, Integer.numberOfTrailingZeros(m))));
+			return list;
+		}
+		for (int b = 0; b < 16; b++) {
+			for (int a = b + 1; a < 16; a++) {
+				String op = null;
+				if ((1 << a) + (1 << b) == m)
+					op = "add";
+				else if ((1 << a) - (1 << b) == m)
+					op = "sub";
+				if (op == null)
+					continue;
+				List<Step> s = steps();
+				if (b > 0)
+					s.add(new Step("shift", CONSTANT, b));
+				s.add(new Step("stor", TEMP, 0));
+				s.add(new Step("shift", CONSTANT, a - b));
+				s.add(new Step(op, TEMP, 0));
+				list.add(s);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Sequences for a multiply by -m, with m = 2^a - 2^b or 2^a + 2^b,
+	 * a > b.  -m is 2^b - 2^a or -2^b - 2^a, so 2^b times the accumulator
+	 * is saved and negated, shifted to -2^a times the accumulator, and
+	 * the saved word is added or subtracted.
+	 */
+	private static List<List<Step>> negativeMultiply(int m) {
+		ArrayList<List<Step>> list = new ArrayList<List<Step>>();
+		for (int b = 0; b < 16; b++) {
+			for (int a = b + 1; a < 16; a++) {
+				String op = null;
+				if ((1 << a) - (1 << b) == m)
+					op = "add";
+				else if ((1 << a) + (1 << b) == m)
+					op = "sub";
+				if (op == null)
+					continue;
+				List<Step> s = steps();
+				if (b > 0)
+					s.add(new Step("shift", CONSTANT, b));
+				s.add(new Step("stor", TEMP, 0));
+				s.add(new Step("clac", NONE, 0));
+				s.add(new Step("sub", TEMP, 0));
+				s.add(new Step("shift", CONSTANT, a - b));
+				s.add(new Step(op, TEMP, 0));
+				list.add(s);
+			}
+		}
+		return list;
+	}
+
+	private static List<Step> steps(Step... steps) {
+		ArrayList<Step> list = new ArrayList<Step>();
+		for (Step step : steps)
+			list.add(step);
+		return list;
+	}
+
+	private int cost(List<Step> candidate) {
+		int cost = 0;
+		for (Step step : candidate)
+			cost = cost + costs.get(step.op);
+		return cost;
+	}
+
+	/**
+	 * Returns true if the data words the candidate needs still have
+	 * addresses that fit in an operand.
+	 */
+	private boolean fits(List<Step> candidate) {
+		int words = dataWords + newConstants.size() + (tempUsed ? 1 : 0);
+		HashSet<Integer> added = new HashSet<Integer>();
+		boolean temp = tempUsed;
+		for (Step step : candidate) {
+			if (step.kind == CONSTANT && !newConstants.containsKey(step.value) && added.add(step.value))
+				words = words + 1;
+			else if (step.kind == TEMP && !temp) {
+				temp = true;
+				words = words + 1;
+			}
+		}
+		return words <= 128;
+	}
+
+	/**
+	 * Runs the candidate for every value of the accumulator, and returns
+	 * true if it always gives the result of the ALU operation with y.
+	 */
+	private boolean verify(int aluOp, int y, List<Step> candidate) {
+		StringBuilder key = new StringBuilder(aluOp + " " + y);
+		int[] ops = new int[candidate.size()];
+		for (int i = 0; i < ops.length; i++) {
+			Step step = candidate.get(i);
+			key.append(';').append(step.op).append(' ').append(step.kind).append(' ').append(step.value);
+			String name = step.op.endsWith("i") ? step.op.substring(0, step.op.length() - 1) : step.op;
+			ops[i] = -1;
+			for (int op = 0; op < Alu.NAMES.length; op++)
+				if (Alu.NAMES[op].equals(name))
+					ops[i] = op;
+		}
+		if (verified.contains(key.toString()))
+			return true;
+
+		for (int ac = 0; ac <= 0xFFFF; ac++) {
+			int a = ac;
+			int temp = 0;
+			for (int i = 0; i < ops.length; i++) {
+				Step step = candidate.get(i);
+				if (step.op.equals("clac"))
+					a = 0;
+				else if (step.op.equals("stor"))
+					temp = a;
+				else if (step.kind == IMMEDIATE)
+					a = Alu.compute(ops[i], a, Alu.signExtend(step.value));
+				else
+					a = Alu.compute(ops[i], a, (step.kind == TEMP) ? temp : step.value);
+			}
+			if (a != Alu.compute(aluOp, ac, y))
+				return false;
+		}
+		verified.add(key.toString());
+		return true;
+	}
+
+	/**
+	 * Returns the assembly instruction for a step, and adds the data
+	 * words it uses.
+	 */
+	private String instruction(Step step) {
+		switch (step.kind) {
+		case IMMEDIATE:
+			return step.op + " " + step.value;
+		case CONSTANT: {
+			String label = newConstants.get(step.value);
+			if (label == null) {
+				label = CONST_LABEL + step.value + "__";
+				newConstants.put(step.value, label);
+			}
+			return step.op + " " + label;
+		}
+		case TEMP:
+			tempUsed = true;
+			return step.op + " " + TEMP_LABEL;
+		default:
+			return step.op;
+		}
+	}
+
+	/**
+	 * Writes the program with the rewrites.
+	 *
+	 * @param out the stream to write the assembly program to
+	 */
+	public void write(PrintStream out) {
+		out.println("# Rewritten by StrengthReducer");
+		for (String line : lines)
+			if (line.length() > 0)
+				out.println(line);
+		if (newConstants.isEmpty() && !tempUsed)
+			return;
+		out.println(".data");
+		for (Map.Entry<Integer, String> e : newConstants.entrySet()) {
+			out.println(".label " + e.getValue());
+			out.println(".number " + e.getKey());
+		}
+		if (tempUsed) {
+			out.println(".label " + TEMP_LABEL);
+			out.println(".number 0");
+		}
+	}
+
+	/**
+	 * Returns the rewrites made, in the order of the program.
+	 */
+	public List<Rewrite> getRewrites() {
+		return rewrites;
+	}
+
+	public static void main(String[] args) {
+		String costFile = null;
+		ArrayList<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-costs") && i + 1 < args.length)
+				costFile = args[++i];
+			else
+				files.add(args[i]);
+		}
+		if (files.size() != 2) {
+			System.out.println("Usage: java StrengthReducer [-costs file] input.asm output");
+			return;
+		}
+		try {
+			HashMap<String, Integer> costs = DEFAULT_COSTS;
+			if (costFile != null) {
+				BufferedReader br = new BufferedReader(new FileReader(costFile));
+				try {
+					costs = readCosts(br);
+				} finally {
+					br.close();
+				}
+			}
+
+			StrengthReducer reducer = new StrengthReducer(costs);
+			BufferedReader br = new MacroExpander(new FileReader(files.get(0)));
+			try {
+				reducer.readProgram(br);
+			} finally {
+				br.close();
+			}
+			PrintStream out = new PrintStream(files.get(1) + ".asm");
+			reducer.write(out);
+			out.close();
+			Assembler.assemble(files.get(1) + ".asm", files.get(1));
+
+			long saved = 0;
+			for (Rewrite r : reducer.getRewrites()) {
+				System.out.println(r);
+				saved = saved + r.getSavings();
+			}
+			System.out.println(reducer.getRewrites().size() + " rewrites, " + saved
+					+ " cycles saved for one run of each rewritten instruction.");
+		} catch (AssemblerException ae) {
+			System.out.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
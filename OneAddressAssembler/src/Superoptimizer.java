@@ -0,0 +1,489 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * purpose This program searches for the shortest sequence of instructions
+ *         that computes a function of the accumulator and memory cells.
+ *         It is used to find the best code for short, often used routines,
+ *         such as a multiply by a constant.
+ *
+ * Procedure
+ *          1 - Build the list of candidate instructions.  These are the
+ *              immediate ALU instructions with a small set of constants,
+ *              the memory ALU instructions on the input cells (m0, m1, ...)
+ *              and scratch cells (t0, t1, ...), shift by a constant cell,
+ *              clac, and stor to a scratch cell.  Branches are not used.
+ *          2 - For each length, starting at 1, try every sequence of that
+ *              length.  The sequences are first run on a small set of test
+ *              vectors, and only those giving the right answer for all of
+ *              them are checked against every 16 bit accumulator value.
+ *              The search of each length is split on the first instruction,
+ *              and run as a fork-join task on all processors.
+ *          3 - The first sequence found, in the order of the candidate list,
+ *              is written out as a macro for the MacroExpander.  The cells
+ *              are the parameters of the macro, and constant cells use .const.
+ *
+ *         Usage: java Superoptimizer target [value] [-max length] [-avoid ops] [-o file]
+ *         where target is one of mul, divu, rem, and, neg, abs, square, add2m,
+ *         and ops is a comma separated list of ALU operations not to use,
+ *         e.g. "-avoid mul,div,rem" to find code without the Multiplier
+ *         and Divider.
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public class Superoptimizer {
+
+	// kinds of candidate instruction
+	static final int IMMEDIATE = 1;
+	static final int MEMORY = 2;
+	static final int CLAC = 3;
+	static final int STOR = 4;
+
+	static final int SCRATCH_CELLS = 2;
+	static final int TEST_VECTORS = 16;
+	static final int VERIFY_CELL_VECTORS = 32;
+
+	// the immediate values tried.  Values that do nothing, like addi 0 or
+	// muli 1, are removed when the candidates are built.
+	static final int[] IMMEDIATES = {-128, -16, -8, -4, -3, -2, -1, 0, 1, 2, 3, 4, 5,
+		6, 7, 8, 9, 15, 16, 31, 32, 63, 64, 127};
+
+	/**
+	 * The function to find code for.  It is given the accumulator and
+	 * the input cells, and returns the value the accumulator should have.
+	 */
+	public interface Target {
+		public String name();
+		public int inputCells();
+		public int apply(int ac, int[] cells);
+	}
+
+	/**
+	 * A candidate instruction.
+	 */
+	static class Instruction {
+		final int kind;
+		final int aluOp;
+		final int operand;   // immediate value, or index of the cell used
+		final String text;
+
+		Instruction(int kind, int aluOp, int operand, String text) {
+			this.kind = kind;
+			this.aluOp = aluOp;
+			this.operand = operand;
+			this.text = text;
+		}
+	}
+
+	private final Target target;
+	private final Instruction[] candidates;
+	private final String[] cellNames;
+	private final int[] constantCells;    // value of each constant cell, by shift amount
+	private final int firstScratch;
+	private final int firstConstant;
+	private final int cellCount;
+	private final int[] testAc;
+	private final int[][] testCells;
+	private final int[] testExpected;
+	private final int[][] verifyCells;
+
+	public Superoptimizer(Target target, int[] extraImmediates, boolean[] avoid) {
+		this.target = target;
+
+		// cells are the inputs, then the scratch cells, then the shift amounts
+		firstScratch = target.inputCells();
+		firstConstant = firstScratch + SCRATCH_CELLS;
+		cellCount = firstConstant + 15;
+		cellNames = new String[cellCount];
+		constantCells = new int[cellCount];
+		for (int i = 0; i < firstScratch; i++)
+			cellNames[i] = "\\m" + i;
+		for (int i = 0; i < SCRATCH_CELLS; i++)
+			cellNames[firstScratch + i] = "\\t" + i;
+		for (int i = 0; i < 15; i++) {
+			cellNames[firstConstant + i] = "shiftBy" + (i + 1) + "__";
+			constantCells[firstConstant + i] = i + 1;
+		}
+
+		candidates = buildCandidates(extraImmediates, avoid);
+
+		Random r = new Random(0x1add);
+		testAc = new int[TEST_VECTORS];
+		testCells = new int[TEST_VECTORS][];
+		testExpected = new int[TEST_VECTORS];
+		int[] edges = {0, 1, 2, 3, 0xFFFF, 0xFFFE, 7, 127, 128, 0xFF80, 0x7FFF, 0x8000};
+		for (int i = 0; i < TEST_VECTORS; i++) {
+			testAc[i] = (i < edges.length) ? edges[i] : r.nextInt(0x10000);
+			testCells[i] = randomCells(r);
+			testExpected[i] = target.apply(testAc[i], inputsOf(testCells[i])) & 0xFFFF;
+		}
+		verifyCells = new int[target.inputCells() == 0 ? 1 : VERIFY_CELL_VECTORS][];
+		for (int i = 0; i < verifyCells.length; i++)
+			verifyCells[i] = randomCells(r);
+	}
+
+	/**
+	 * Builds the list of candidate instructions, cheapest kinds first so
+	 * simple sequences are found first.
+	 *
+	 * @param extraImmediates more immediate values to try
+	 * @param avoid the ALU operations not to use, indexed by ALU operation
+	 */
+	private Instruction[] buildCandidates(int[] extraImmediates, boolean[] avoid) {
+		ArrayList<Instruction> list = new ArrayList<Instruction>();
+		list.add(new Instruction(CLAC, 0, 0, "clac"));
+
+		ArrayList<Integer> immediates = new ArrayList<Integer>();
+		for (int v : IMMEDIATES)
+			immediates.add(v);
+		for (int v : extraImmediates)
+			if (v >= -128 && v <= 127 && !immediates.contains(v))
+				immediates.add(v);
+
+		for (int op = Alu.ADD; op <= Alu.AND; op++) {
+			for (int v : immediates) {
+				if (avoid[op] || isIdentity(op, v))
+					continue;
+				list.add(new Instruction(IMMEDIATE, op, v, Alu.NAMES[op] + "i " + v));
+			}
+		}
+		for (int op = Alu.ADD; op <= Alu.SHIFT; op++)
+			for (int c = 0; c < firstConstant && !avoid[op]; c++)
+				list.add(new Instruction(MEMORY, op, c, Alu.NAMES[op] + " " + cellNames[c]));
+		for (int c = firstConstant; c < cellCount && !avoid[Alu.SHIFT]; c++)
+			list.add(new Instruction(MEMORY, Alu.SHIFT, c, "shift " + cellNames[c]));
+		for (int c = firstScratch; c < firstConstant; c++)
+			list.add(new Instruction(STOR, 0, c, "stor " + cellNames[c]));
+		return list.toArray(new Instruction[list.size()]);
+	}
+
+	/**
+	 * Returns true if an immediate instruction leaves AC unchanged.
+	 */
+	private static boolean isIdentity(int op, int v) {
+		return (v == 0 && (op == Alu.ADD || op == Alu.SUB))
+				|| (v == 1 && (op == Alu.MUL || op == Alu.DIV))
+				|| (v == -1 && op == Alu.AND);
+	}
+
+	private int[] randomCells(Random r) {
+		int[] cells = new int[cellCount];
+		for (int i = 0; i < firstScratch; i++)
+			cells[i] = r.nextInt(0x10000);
+		System.arraycopy(constantCells, firstConstant, cells, firstConstant, 15);
+		return cells;
+	}
+
+	private int[] inputsOf(int[] cells) {
+		int[] inputs = new int[firstScratch];
+		System.arraycopy(cells, 0, inputs, 0, firstScratch);
+		return inputs;
+	}
+
+	/**
+	 * Runs one instruction.  The cells array is changed by stor.
+	 *
+	 * @return the new value of AC
+	 */
+	private static int step(Instruction in, int ac, int[] cells) {
+		switch (in.kind) {
+		case IMMEDIATE:
+			return Alu.compute(in.aluOp, ac, in.operand);
+		case MEMORY:
+			return Alu.compute(in.aluOp, ac, cells[in.operand]);
+		case CLAC:
+			return 0;
+		default:
+			cells[in.operand] = ac;
+			return ac;
+		}
+	}
+
+	/**
+	 * Finds the shortest sequence for the target.
+	 *
+	 * @param maxLength the longest sequence to try
+	 * @return the sequence, or null if there is none of maxLength or less
+	 */
+	public Instruction[] search(int maxLength) {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (int length = 1; length <= maxLength; length++) {
+			AtomicInteger best = new AtomicInteger(Integer.MAX_VALUE);
+			ArrayList<SearchTask> tasks = new ArrayList<SearchTask>();
+			for (int first = 0; first < candidates.length; first++) {
+				SearchTask t = new SearchTask(first, length, best);
+				tasks.add(t);
+				pool.execute(t);
+			}
+			Instruction[] found = null;
+			for (SearchTask t : tasks) {
+				int[] result = t.join();
+				if (result != null && found == null) {
+					found = new Instruction[length];
+					for (int i = 0; i < length; i++)
+						found[i] = candidates[result[i]];
+				}
+			}
+			if (found != null)
+				return found;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks a sequence against every 16 bit accumulator value, for each
+	 * of the cell vectors.
+	 */
+	private boolean verify(int[] sequence) {
+		int[] cells = new int[cellCount];
+		for (int[] start : verifyCells) {
+			int[] inputs = inputsOf(start);
+			for (int ac = 0; ac <= 0xFFFF; ac++) {
+				System.arraycopy(start, 0, cells, 0, cellCount);
+				int v = ac;
+				for (int i : sequence)
+					v = step(candidates[i], v, cells);
+				if (v != (target.apply(ac, inputs) & 0xFFFF))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Searches all sequences of one length that start with one instruction.
+	 * The state after each instruction is kept for all the test vectors,
+	 * so each prefix is only run once.
+	 */
+	private class SearchTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+		private final int first;
+		private final int length;
+		private final AtomicInteger best;   // lowest first instruction with a solution
+		private int[] sequence;
+		private int[][] acs;
+		private int[][][] cells;
+
+		SearchTask(int first, int length, AtomicInteger best) {
+			this.first = first;
+			this.length = length;
+			this.best = best;
+		}
+
+		@Override
+		protected int[] compute() {
+			sequence = new int[length];
+			acs = new int[length + 1][TEST_VECTORS];
+			cells = new int[length + 1][TEST_VECTORS][];
+			for (int v = 0; v < TEST_VECTORS; v++) {
+				acs[0][v] = testAc[v];
+				for (int d = 0; d <= length; d++)
+					cells[d][v] = new int[cellCount];
+				System.arraycopy(testCells[v], 0, cells[0][v], 0, cellCount);
+			}
+			if (search(0, first))
+				return sequence;
+			return null;
+		}
+
+		/**
+		 * Tries each candidate at position depth, or only the candidate
+		 * first for position 0.
+		 *
+		 * @return true if a solution was found
+		 */
+		private boolean search(int depth, int only) {
+			int from = (depth == 0) ? only : 0;
+			int to = (depth == 0) ? only + 1 : candidates.length;
+			for (int c = from; c < to; c++) {
+				if (best.get() < first)
+					return false;   // a solution earlier in the order was found
+				if (redundant(depth, c))
+					continue;
+
+				sequence[depth] = c;
+				Instruction in = candidates[c];
+				boolean pass = true;
+				for (int v = 0; v < TEST_VECTORS; v++) {
+					System.arraycopy(cells[depth][v], 0, cells[depth + 1][v], 0, cellCount);
+					acs[depth + 1][v] = step(in, acs[depth][v], cells[depth + 1][v]);
+					if (depth + 1 == length && acs[depth + 1][v] != testExpected[v]) {
+						pass = false;
+						break;
+					}
+				}
+
+				if (depth + 1 < length) {
+					if (search(depth + 1, 0))
+						return true;
+				}
+				else if (pass && verify(sequence)) {
+					best.accumulateAndGet(first, Math::min);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Skips sequences that cannot be the shortest: a stor as the last
+		 * instruction, a clac with no stor before it, and two stors in a row.
+		 */
+		private boolean redundant(int depth, int c) {
+			Instruction in = candidates[c];
+			if (in.kind == STOR && depth == length - 1)
+				return true;
+			if (depth > 0 && in.kind == STOR && candidates[sequence[depth - 1]].kind == STOR)
+				return true;
+			if (in.kind == CLAC && depth > 0) {
+				for (int i = 0; i < depth; i++)
+					if (candidates[sequence[i]].kind == STOR)
+						return false;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the sequence as a macro.  The input and scratch cells are
+	 * parameters, and the shift amounts are constant cells.
+	 *
+	 * @param sequence the instructions found by search
+	 * @param out the stream to write the macro to
+	 */
+	public void writeMacro(Instruction[] sequence, PrintStream out) {
+		StringBuilder header = new StringBuilder(".macro " + target.name());
+		for (int i = 0; i < firstScratch; i++)
+			header.append(" m").append(i);
+		boolean[] used = new boolean[cellCount];
+		for (Instruction in : sequence)
+			if (in.kind == MEMORY || in.kind == STOR)
+				used[in.operand] = true;
+		for (int i = firstScratch; i < firstConstant; i++)
+			if (used[i])
+				header.append(" t").append(i - firstScratch);
+
+		out.println("# " + target.name() + " - " + sequence.length + " instructions, found by Superoptimizer");
+		out.println(header);
+		for (int i = firstConstant; i < cellCount; i++)
+			if (used[i])
+				out.println(".const " + cellNames[i] + " " + constantCells[i]);
+		for (Instruction in : sequence)
+			out.println(in.text);
+		out.println(".endm");
+	}
+
+	/**
+	 * Returns the built in target named name.
+	 *
+	 * @param name the name of the target
+	 * @param k the constant used by the target, if it has one
+	 * @return the target, or null if there is no target with that name
+	 */
+	public static Target getTarget(final String name, final int k) {
+		HashMap<String, Target> targets = new HashMap<String, Target>();
+		targets.put("mul", new SimpleTarget("mul" + k, 0) {
+			public int apply(int ac, int[] m) { return ac * k; }
+		});
+		targets.put("divu", new SimpleTarget("divu" + k, 0) {
+			public int apply(int ac, int[] m) { return Alu.compute(Alu.DIV, ac, k); }
+		});
+		targets.put("rem", new SimpleTarget("rem" + k, 0) {
+			public int apply(int ac, int[] m) { return Alu.compute(Alu.REM, ac, k); }
+		});
+		targets.put("and", new SimpleTarget("and" + k, 0) {
+			public int apply(int ac, int[] m) { return ac & k; }
+		});
+		targets.put("neg", new SimpleTarget("neg", 0) {
+			public int apply(int ac, int[] m) { return -ac; }
+		});
+		targets.put("abs", new SimpleTarget("abs", 0) {
+			public int apply(int ac, int[] m) { return Math.abs((int) (short) ac); }
+		});
+		targets.put("square", new SimpleTarget("square", 0) {
+			public int apply(int ac, int[] m) { return ac * ac; }
+		});
+		targets.put("add2m", new SimpleTarget("add2m", 1) {
+			public int apply(int ac, int[] m) { return ac + 2 * m[0]; }
+		});
+		return targets.get(name);
+	}
+
+	private static abstract class SimpleTarget implements Target {
+		private final String name;
+		private final int inputCells;
+
+		SimpleTarget(String name, int inputCells) {
+			this.name = name;
+			this.inputCells = inputCells;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public int inputCells() {
+			return inputCells;
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: java Superoptimizer target [value] [-max length] [-avoid ops] [-o file]");
+			return;
+		}
+
+		int k = 0;
+		int maxLength = 4;
+		String outputFileName = null;
+		boolean[] avoid = new boolean[Alu.NAMES.length];
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-max"))
+				maxLength = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-avoid")) {
+				for (String op : args[++i].split(","))
+					for (int j = 0; j < Alu.NAMES.length; j++)
+						if (Alu.NAMES[j].equals(op))
+							avoid[j] = true;
+			}
+			else if (args[i].equals("-o"))
+				outputFileName = args[++i];
+			else
+				k = Integer.parseInt(args[i]);
+		}
+
+		Target target = getTarget(args[0], k);
+		if (target == null) {
+			System.out.println("Unknown target " + args[0]);
+			return;
+		}
+
+		Superoptimizer so = new Superoptimizer(target, new int[] {k, k - 1, k + 1, -k}, avoid);
+		long start = System.nanoTime();
+		Instruction[] sequence = so.search(maxLength);
+		long ms = (System.nanoTime() - start) / 1000000;
+		if (sequence == null) {
+			System.out.println("No sequence of " + maxLength + " or fewer instructions found for "
+					+ target.name() + " (" + ms + " ms)");
+			return;
+		}
+
+		try {
+			PrintStream out = (outputFileName == null) ? System.out : new PrintStream(outputFileName);
+			so.writeMacro(sequence, out);
+			if (out != System.out)
+				out.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		System.err.println("Found in " + ms + " ms");
+	}
+}
@@ -0,0 +1,422 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * purpose This class records the instructions a Simulator runs, in a
+ *         compact binary trace, so a wrong result can be followed back
+ *         through the instructions that made it.  Writing a line of text
+ *         for each instruction would slow the simulator down too much.
+ *
+ * Procedure
+ *          1 - For each instruction, the PC and the accumulator after it
+ *              are recorded as changes from the last record.  The record is
+ *              one varint holding the change of PC from PC+1 (zig-zag coded)
+ *              and a bit saying if the accumulator changed, followed by a
+ *              varint of the change of the accumulator when it did.  Most
+ *              instructions take 1 or 2 bytes.  The op code and operand are
+ *              not repeated in each record, the text memory is written once
+ *              at the start of the trace, and the decoder reads them from it.
+ *          2 - The records are written in blocks of 4096 bytes.  Each block
+ *              starts with the cycle, PC and accumulator, so a block can be
+ *              decoded without the blocks before it.
+ *          3 - The blocks are kept in a ring buffer outside the Java heap,
+ *              which holds the last blocks written.  When the ring is full
+ *              the oldest block is written over, so a trace of any length
+ *              keeps only the most recent instructions.
+ *          4 - If a spill file is given, each block is also copied to a
+ *              memory mapped file as it is finished, so the whole trace is
+ *              kept on disk.
+ *
+ *         The trace file is
+ *             int    magic number 0x4F415431 ("OAT1")
+ *             short  the 256 words of the text memory
+ *             blocks, each
+ *                 long   cycle of the first record
+ *                 short  PC expected for the first record
+ *                 short  accumulator before the first record
+ *                 int    number of records
+ *                 the records
+ *         A block with no records ends the trace.
+ *
+ *         Usage: java TraceRecorder [-s program.asm] [-tail n] file.trace
+ *         prints a trace, with the instructions disassembled and the
+ *         .label names of the program.  The Simulator writes traces with
+ *         -trace file.trace [-ring kb].
+ *
+ * Program History:
+ *     10/18/2026  - Initial release
+ */
+public final class TraceRecorder {
+
+	static final int MAGIC = 0x4F415431;
+	static final int BLOCK_SIZE = 4096;
+	static final int HEADER_SIZE = 16;
+	static final int MAX_RECORD = 5;           // the longest a record can be
+	static final int SPILL_WINDOW = 1 << 26;   // size of each mapping of the spill file
+
+	private final int[] text;
+	private final ByteBuffer ring;     // off heap
+	private final int blocks;          // number of blocks in the ring
+	private long blockNumber = 0;      // blocks started, the current one is blockNumber-1
+	private int blockStart;            // offset of the current block in the ring
+	private int position;              // where the next record goes
+	private int blockEnd;              // last offset a record can start at
+	private int count;                 // records in the current block
+
+	private int expectedPc;
+	private int lastAc;
+	private long cycle;
+	private long records = 0;          // records in the finished blocks
+	private boolean closed = false;
+
+	// The spill file, or null if there is none.
+	private FileChannel spill;
+	private MappedByteBuffer spillMap;
+	private long spillBase;            // offset of spillMap in the file
+
+	/**
+	 * Creates a recorder.
+	 *
+	 * @param program the program being traced
+	 * @param ringBytes the size of the ring buffer, at least 2 blocks
+	 * @param spillFile the file to write the whole trace to, or null
+	 * @throws IOException error creating the spill file
+	 */
+	public TraceRecorder(Program program, int ringBytes, String spillFile) throws IOException {
+		this.text = program.text;
+		this.blocks = Math.max(2, ringBytes / BLOCK_SIZE);
+		this.ring = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE);
+		if (spillFile != null) {
+			spill = FileChannel.open(Paths.get(spillFile), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			spillBase = 0;
+			spillMap = spill.map(FileChannel.MapMode.READ_WRITE, 0, SPILL_WINDOW);
+			writeFileHeader(spillMap);
+		}
+	}
+
+	/**
+	 * Starts a new block from the state of a simulator.  The Simulator
+	 * calls this when tracing starts, and when it is restored from a
+	 * snapshot.
+	 */
+	void begin(int pc, int ac, long cycles) {
+		// An empty block would end the trace, so it is used again.
+		if (blockNumber > 0 && count == 0)
+			blockNumber--;
+		else if (blockNumber > 0)
+			endBlock();
+		expectedPc = pc;
+		lastAc = ac;
+		cycle = cycles;
+		startBlock();
+	}
+
+	/**
+	 * Records one instruction.
+	 *
+	 * @param pc the address of the instruction
+	 * @param ac the accumulator after the instruction
+	 */
+	void record(int pc, int ac) {
+		int pcDelta = (byte) (pc - expectedPc);
+		int acDelta = (short) (ac - lastAc);
+		expectedPc = (pc + 1) & 0xFF;
+		lastAc = ac;
+
+		int head = (zigzag(pcDelta) << 1) | ((acDelta != 0) ? 1 : 0);
+		putVarint(head);
+		if (acDelta != 0)
+			putVarint(zigzag(acDelta));
+		count++;
+		if (position > blockEnd) {
+			cycle += count;
+			endBlock();
+			startBlock();
+		}
+	}
+
+	private static int zigzag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	private void putVarint(int n) {
+		while ((n & ~0x7F) != 0) {
+			ring.put(position++, (byte) ((n & 0x7F) | 0x80));
+			n >>>= 7;
+		}
+		ring.put(position++, (byte) n);
+	}
+
+	private void startBlock() {
+		blockStart = (int) (blockNumber % blocks) * BLOCK_SIZE;
+		blockNumber++;
+		ring.putLong(blockStart, cycle);
+		ring.putShort(blockStart + 8, (short) expectedPc);
+		ring.putShort(blockStart + 10, (short) lastAc);
+		ring.putInt(blockStart + 12, 0);
+		position = blockStart + HEADER_SIZE;
+		blockEnd = blockStart + BLOCK_SIZE - MAX_RECORD;
+		count = 0;
+	}
+
+	/**
+	 * Finishes the current block, and copies it to the spill file.
+	 */
+	private void endBlock() {
+		ring.putInt(blockStart + 12, count);
+		records += count;
+		if (spill != null && count > 0) {
+			try {
+				spillBlock(blockStart, position - blockStart);
+			} catch (IOException ioe) {
+				throw new IllegalStateException("Error writing trace spill file", ioe);
+			}
+		}
+	}
+
+	private void spillBlock(int offset, int length) throws IOException {
+		if (spillMap.remaining() < length) {
+			spillBase += spillMap.position();
+			spillMap = spill.map(FileChannel.MapMode.READ_WRITE, spillBase, SPILL_WINDOW);
+		}
+		ByteBuffer block = ring.duplicate();
+		block.limit(offset + length).position(offset);
+		spillMap.put(block);
+	}
+
+	/**
+	 * Returns the number of instructions recorded.
+	 */
+	public long getRecords() {
+		return closed ? records : records + count;
+	}
+
+	/**
+	 * Finishes the trace, and closes the spill file.
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		endBlock();
+		closed = true;
+		if (spill != null) {
+			long size = spillBase + spillMap.position();
+			spillMap.force();
+			spillMap = null;
+			try {
+				spill.truncate(size);
+			} catch (IOException ioe) {
+				// Some systems cannot truncate a mapped file.  The rest of
+				// the file is 0, which reads as the end of the trace.
+			}
+			spill.close();
+			spill = null;
+		}
+	}
+
+	/**
+	 * Writes the blocks in the ring buffer, the most recent instructions,
+	 * to a trace file.
+	 *
+	 * @param fileName the file to write
+	 * @throws IOException error writing the file
+	 */
+	public void writeRing(String fileName) throws IOException {
+		if (!closed)
+			ring.putInt(blockStart + 12, count);
+		FileOutputStream out = new FileOutputStream(fileName);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(4 + 2 * Program.MEMORY_SIZE);
+			writeFileHeader(header);
+			header.flip();
+			channel.write(header);
+			long first = Math.max(0, blockNumber - blocks);
+			for (long b = first; b < blockNumber; b++) {
+				int offset = (int) (b % blocks) * BLOCK_SIZE;
+				int length = (b == blockNumber - 1) ? position - offset : blockLength(ring, offset);
+				ByteBuffer block = ring.duplicate();
+				block.limit(offset + length).position(offset);
+				channel.write(block);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeFileHeader(ByteBuffer b) {
+		b.putInt(MAGIC);
+		for (int word : text)
+			b.putShort((short) word);
+	}
+
+	/**
+	 * Returns the length of a finished block, by skipping its records.
+	 */
+	private static int blockLength(ByteBuffer b, int offset) {
+		int records = b.getInt(offset + 12);
+		int p = offset + HEADER_SIZE;
+		for (int i = 0; i < records; i++) {
+			boolean acChanged = (b.get(p) & 1) != 0;
+			while ((b.get(p++) & 0x80) != 0)
+				;
+			if (acChanged)
+				while ((b.get(p++) & 0x80) != 0)
+					;
+		}
+		return p - offset;
+	}
+
+	/**
+	 * Receives the instructions of a trace as it is decoded.
+	 */
+	public interface Visitor {
+		void instruction(long cycle, int pc, int word, int ac);
+	}
+
+	/**
+	 * Decodes a trace file.
+	 *
+	 * @param fileName the trace file
+	 * @param visitor is given each instruction, in order
+	 * @return the text memory of the traced program
+	 * @throws IOException error reading the file, or it is not a trace
+	 */
+	public static int[] decode(String fileName, Visitor visitor) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			long offset = 4 + 2 * Program.MEMORY_SIZE;
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, offset));
+			if (size < offset || header.getInt() != MAGIC)
+				throw new IOException(fileName + " is not a trace file");
+			int[] text = new int[Program.MEMORY_SIZE];
+			for (int i = 0; i < text.length; i++)
+				text[i] = header.getShort() & 0xFFFF;
+
+			// Map the blocks a window at a time.  A window always holds
+			// whole blocks, because no block is longer than BLOCK_SIZE.
+			while (offset + HEADER_SIZE <= size) {
+				long length = Math.min(SPILL_WINDOW, size - offset);
+				ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				int p = 0;
+				while (p + HEADER_SIZE <= length) {
+					int records = b.getInt(p + 12);
+					if (records == 0)
+						return text;
+					if (p + BLOCK_SIZE > length && offset + length < size)
+						break;   // the block may run past the window
+					p = decodeBlock(b, p, text, visitor);
+				}
+				offset += p;
+			}
+			return text;
+		} finally {
+			file.close();
+		}
+	}
+
+	private static int decodeBlock(ByteBuffer b, int p, int[] text, Visitor visitor) {
+		long cycle = b.getLong(p);
+		int pc = b.getShort(p + 8) & 0xFF;
+		int ac = b.getShort(p + 10) & 0xFFFF;
+		int records = b.getInt(p + 12);
+		p += HEADER_SIZE;
+		for (int i = 0; i < records; i++) {
+			int head = 0;
+			int shift = 0;
+			int c;
+			do {
+				c = b.get(p++);
+				head |= (c & 0x7F) << shift;
+				shift += 7;
+			} while ((c & 0x80) != 0);
+			int pcDelta = unzigzag(head >>> 1);
+			pc = (pc + pcDelta) & 0xFF;
+			if ((head & 1) != 0) {
+				int delta = 0;
+				shift = 0;
+				do {
+					c = b.get(p++);
+					delta |= (c & 0x7F) << shift;
+					shift += 7;
+				} while ((c & 0x80) != 0);
+				ac = (ac + unzigzag(delta)) & 0xFFFF;
+			}
+			visitor.instruction(cycle, pc, text[pc], ac);
+			cycle++;
+			pc = (pc + 1) & 0xFF;
+		}
+		return p;
+	}
+
+	private static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	/**
+	 * main - Prints a trace file.
+	 */
+	public static void main(String[] args) {
+		String symbolFile = null;
+		String traceFile = null;
+		long tail = -1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length)
+				symbolFile = args[++i];
+			else if (args[i].equals("-tail") && i + 1 < args.length)
+				tail = Long.parseLong(args[++i]);
+			else
+				traceFile = args[i];
+		}
+		if (traceFile == null) {
+			System.err.println("Usage: java TraceRecorder [-s program.asm] [-tail n] file.trace");
+			return;
+		}
+
+		try {
+			HashMap<String, Label> st = (symbolFile == null) ? null : Program.readSymbols(symbolFile);
+			final Disassembler disassembler = new Disassembler(st, false);
+
+			// Count the instructions, to know where the tail starts.
+			final long[] total = new long[1];
+			if (tail >= 0)
+				decode(traceFile, new Visitor() {
+					public void instruction(long cycle, int pc, int word, int ac) {
+						total[0]++;
+					}
+				});
+			final long first = (tail >= 0) ? total[0] - tail : 0;
+
+			final PrintStream out = new PrintStream(
+					new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+			final long[] n = new long[1];
+			decode(traceFile, new Visitor() {
+				public void instruction(long cycle, int pc, int word, int ac) {
+					if (n[0]++ < first)
+						return;
+					String label = disassembler.textLabel(pc);
+					out.printf("%12d  %02x %-12s %-18s AC = %d%n", cycle, pc,
+							(label == null) ? "" : label, disassembler.decode(word, true), (short) ac);
+				}
+			});
+			out.flush();
+		} catch (AssemblerException ae) {
+			System.err.println(ae.getMessage());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}